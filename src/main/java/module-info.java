@@ -15,4 +15,7 @@ module uk.ac.soton.comp1206 {
     exports uk.ac.soton.comp1206.component;
     exports uk.ac.soton.comp1206.game;
     exports uk.ac.soton.comp1206.media;
+    exports uk.ac.soton.comp1206.ai;
+    exports uk.ac.soton.comp1206.replay;
+    exports uk.ac.soton.comp1206.puzzle;
 }
\ No newline at end of file
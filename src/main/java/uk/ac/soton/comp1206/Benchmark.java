@@ -0,0 +1,576 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.ExpectimaxPlayer;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.ai.TranspositionTable;
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.HashedWheelTimer;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+import uk.ac.soton.comp1206.game.PieceShape;
+import uk.ac.soton.comp1206.game.PlacementMap;
+import uk.ac.soton.comp1206.game.SeededPieceSource;
+import uk.ac.soton.comp1206.game.VirtualGameClock;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
+import uk.ac.soton.comp1206.replay.ReplayVerifier;
+import uk.ac.soton.comp1206.replay.Replayer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Benchmark class measures the speed of the headless parts of the game from the command line. It does not start
+ * JavaFX, and only prints timings: whether the code is correct is checked by the tests.
+ *
+ * Run with the name of the benchmark as the first argument.
+ */
+public class Benchmark {
+
+    /**
+     * Run the benchmark named by the first commandline argument
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        String name = args.length > 0 ? args[0] : "placement";
+        switch (name) {
+            case "placement" -> placement();
+            case "moves" -> moves();
+            case "autoplayer" -> autoplayer();
+            case "expectimax" -> expectimax();
+            case "table" -> table();
+            case "survival" -> survival();
+            case "clock" -> clock();
+            case "wheel" -> wheel();
+            case "replay" -> replay();
+            case "verify" -> verify();
+            case "heatmap" -> heatmap();
+            default -> System.err.println("Unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * Measure how long it takes to check, play and clear lines for a piece on boards of increasing size. The time per
+     * move should stay flat, as it only depends on the size of the piece and the lines it passes through.
+     */
+    private static void placement() {
+        int[] sizes = {5, 16, 32, 64, 128, 256};
+        int moves = 2_000_000;
+
+        //Warm up every size first, so the JIT has compiled everything before timing
+        for(int size : sizes) {
+            placementLatency(size, moves, 1);
+        }
+
+        System.out.println("size\tns/move");
+        for(int size : sizes) {
+            System.out.printf("%dx%d\t%.1f%n", size, size, placementLatency(size, moves, 2));
+        }
+    }
+
+    /**
+     * Time random moves on a half filled board of the given size. Each move that fits is played, checked for cleared
+     * lines and then taken back, so the board stays half filled.
+     * @param size number of rows and columns
+     * @param moves number of moves to time
+     * @param seed seed for the board and moves
+     * @return average time per move in nanoseconds
+     */
+    private static double placementLatency(int size, int moves, long seed) {
+        var random = new SplittableRandom(seed);
+        var grid = halfFilled(size, random);
+        int[] shapes = new int[moves];
+        int[] positions = new int[moves];
+        for(int i = 0; i < moves; i++) {
+            shapes[i] = random.nextInt(GamePiece.PIECES * PieceShape.ROTATIONS);
+            positions[i] = random.nextInt(size * size);
+        }
+
+        var clearMask = new BitSet();
+        long played = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < moves; i++) {
+            var shape = PieceShape.get(shapes[i]);
+            int x = positions[i] % size;
+            int y = positions[i] / size;
+            if(grid.canPlayShape(shape, x, y)) {
+                grid.playShape(shape, x, y);
+                played += grid.clearLines(shape, x, y, clearMask) + 1;
+                for(int cell = 0; cell < shape.getCellCount(); cell++) {
+                    grid.set(x + shape.getCellX(cell), y + shape.getCellY(cell), 0);
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        consume(played);
+        return (double) elapsed / moves;
+    }
+
+    /**
+     * Fill half a board, leaving two gaps three apart in every row and column so lines are rarely completed
+     * @param size number of rows and columns
+     * @param random source of the blocks
+     * @return the grid
+     */
+    private static BitGrid halfFilled(int size, SplittableRandom random) {
+        var grid = new BitGrid(size, size);
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(x != y && x != (y + 3) % size && random.nextBoolean()) {
+                    grid.set(x, y, 1);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Measure generating every move of both pieces on roughly 40% filled 5x5 boards
+     */
+    private static void moves() {
+        var generator = new MoveGenerator(5, 5);
+        var random = new SplittableRandom(1);
+        int positions = 1 << 16;
+        long[] boards = new long[positions];
+        int[] pieces = new int[positions * 2];
+        for(int i = 0; i < positions; i++) {
+            long quarter = random.nextLong() & random.nextLong();
+            long eighth = random.nextLong() & random.nextLong() & random.nextLong();
+            boards[i] = (quarter | eighth) & (1L << 25) - 1;
+        }
+        new SeededPieceSource(1).fill(pieces);
+
+        int[] buffer = new int[generator.maxMoves()];
+        long total = 0;
+        int rounds = 200;
+        long start = 0;
+        for(int round = -rounds; round < rounds; round++) {
+            //The first half of the rounds are warm up
+            if(round == 0) {
+                start = System.nanoTime();
+                total = 0;
+            }
+            for(int i = 0; i < positions; i++) {
+                total += generator.generate(boards[i], pieces[i * 2], pieces[i * 2 + 1], buffer);
+            }
+        }
+        long calls = (long) rounds * positions;
+        System.out.printf("%.1f ns per position, %.1f moves per position%n", (double) (System.nanoTime() - start) / calls,
+                (double) total / calls);
+    }
+
+    /**
+     * Let the autoplayer play whole games on a 5x5 board, and measure how long each move takes and how well it plays.
+     * There is no timer, so a life is only lost when no piece can be played.
+     */
+    private static void autoplayer() {
+        int games = 50;
+        var player = new AutoPlayer(5, 5);
+        long moves = 0;
+        long totalScore = 0;
+        long searchTime = 0;
+        for(int seed = 0; seed < games; seed++) {
+            var engine = new GameEngine(5, 5, seed);
+            engine.initialise();
+            for(int piece = 0; piece < 2000 && !engine.isGameOver(); piece++) {
+                long start = System.nanoTime();
+                int move = player.bestMove(engine);
+                searchTime += System.nanoTime() - start;
+                moves++;
+                play(engine, move);
+            }
+            totalScore += engine.getScore();
+        }
+        System.out.printf("%d games, %.1f pieces per game, mean score %.0f, %.1f us per move%n", games,
+                (double) moves / games, (double) totalScore / games, searchTime / 1000.0 / moves);
+    }
+
+    /**
+     * Measure the nodes per second of the expectimax search with an increasing number of threads, up to the number of
+     * cores
+     */
+    private static void expectimax() {
+        var positions = positions(40);
+        int cores = Runtime.getRuntime().availableProcessors();
+        var evaluator = new Evaluator(new MoveGenerator(5, 5));
+        double baseline = 0;
+        System.out.println("threads\tnodes/s\tspeedup");
+        for(int threads = 1; threads <= cores; threads = threads == cores ? cores + 1 : Math.min(threads * 2, cores)) {
+            var pool = new ForkJoinPool(threads);
+            var search = new ExpectimaxPlayer(evaluator, 2, pool);
+            //Warm up
+            for(var engine : positions) {
+                search.bestMove(engine);
+            }
+            long nodes = search.getNodes();
+            long start = System.nanoTime();
+            for(var engine : positions) {
+                search.bestMove(engine);
+            }
+            long elapsed = System.nanoTime() - start;
+            pool.shutdown();
+
+            double rate = (search.getNodes() - nodes) * 1e9 / elapsed;
+            if(threads == 1) {
+                baseline = rate;
+            }
+            System.out.printf("%d\t%.0f\t%.2f%n", threads, rate, rate / baseline);
+        }
+    }
+
+    /**
+     * Compare a depth 3 expectimax search with and without its transposition table
+     */
+    private static void table() {
+        var positions = positions(8);
+        var evaluator = new Evaluator(new MoveGenerator(5, 5));
+        System.out.println("table\tnodes\tms");
+        for(boolean cached : new boolean[]{false, true}) {
+            var search = new ExpectimaxPlayer(evaluator, 3, ForkJoinPool.commonPool(), cached
+                    ? new TranspositionTable(ExpectimaxPlayer.DEFAULT_TABLE_BITS) : null);
+            long start = System.nanoTime();
+            for(var engine : positions) {
+                search.bestMove(engine);
+            }
+            System.out.printf("%s\t%d\t%.0f%n", cached ? "on" : "off", search.getNodes(),
+                    (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    /**
+     * Generate the 5x5 survival table if it does not exist yet, then compare evaluating boards with and without it
+     */
+    private static void survival() {
+        var file = Path.of(SurvivalTable.DEFAULT_FILE);
+        SurvivalTable table;
+        try {
+            if(!Files.exists(file)) {
+                long start = System.nanoTime();
+                SurvivalTable.generate(file, 5, 5);
+                System.out.printf("Generated %s in %.1f s%n", file, (System.nanoTime() - start) / 1e9);
+            }
+            table = SurvivalTable.open(file);
+        } catch (IOException e) {
+            System.err.println("Unable to create survival table: " + e.getMessage());
+            return;
+        }
+
+        var generator = new MoveGenerator(5, 5);
+        var computed = new Evaluator(generator);
+        var lookedUp = new Evaluator(generator, Evaluator.defaultWeights(), table);
+        var random = new SplittableRandom(1);
+        long[] boards = new long[1 << 20];
+        for(int i = 0; i < boards.length; i++) {
+            boards[i] = random.nextLong() & random.nextLong() & (1L << 25) - 1;
+        }
+        //Each evaluator twice, so the second of each is warmed up
+        for(var evaluator : new Evaluator[]{computed, lookedUp, computed, lookedUp}) {
+            double total = 0;
+            long start = System.nanoTime();
+            for(long board : boards) {
+                total += evaluator.evaluate(board);
+            }
+            long elapsed = System.nanoTime() - start;
+            consume((long) total);
+            System.out.printf("%s\t%.1f ns per board%n", evaluator == lookedUp ? "table" : "computed",
+                    (double) elapsed / boards.length);
+        }
+    }
+
+    /**
+     * Run games where nobody plays, on virtual clocks, so every turn times out until the game is lost. Each game spends
+     * several minutes of game time losing its lives, which a virtual clock skips straight through.
+     */
+    private static void clock() {
+        int games = 20_000;
+        long gameTime = 0;
+        long start = System.nanoTime();
+        for(int seed = 0; seed < games; seed++) {
+            var clock = new VirtualGameClock();
+            var game = new Game(5, 5, new SeededPieceSource(seed), clock);
+            game.getEngine().setSoundListener(null);
+            game.start();
+            while(!game.getEngine().isGameOver() && clock.runNext()) {
+                //Each step is one timeout
+            }
+            game.endGame();
+            gameTime += clock.now();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%.2f us per game, %.0fx faster than real time%n", elapsed / 1000.0 / games,
+                gameTime * 1e6 / elapsed);
+    }
+
+    /**
+     * Run 10,000 games in real time on one shared timer, each played by a random player every 100 to 500 ms, and
+     * report how many threads the JVM needs and how late the moves run
+     */
+    private static void wheel() {
+        int games = 10_000;
+        long duration = 15_000;
+        var timer = new HashedWheelTimer();
+        var generator = new MoveGenerator(5, 5);
+        int[] moves = new int[generator.maxMoves()];
+        var random = new SplittableRandom(0);
+        var played = new AtomicLong();
+        var runs = new AtomicLong();
+        var lateness = new AtomicLong();
+        var latest = new AtomicLong();
+
+        //Every task runs on the timer thread, so the games and the shared buffers are only used by one thread
+        for(int seed = 0; seed < games; seed++) {
+            var game = new Game(5, 5, new SeededPieceSource(seed), timer);
+            game.getEngine().setSoundListener(null);
+            game.start();
+            var player = new Runnable() {
+                long due;
+
+                @Override
+                public void run() {
+                    long late = timer.now() - due;
+                    runs.incrementAndGet();
+                    lateness.addAndGet(late);
+                    latest.accumulateAndGet(late, Math::max);
+                    var engine = game.getEngine();
+                    if(engine.isGameOver()) {
+                        return;
+                    }
+                    int count = generator.generate(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                            engine.getFollowingPiece().getPiece(), moves);
+                    if(count > 0 && play(game, moves[random.nextInt(count)])) {
+                        played.incrementAndGet();
+                    }
+                    long delay = 100 + random.nextInt(400);
+                    due = timer.now() + delay;
+                    timer.schedule(this, delay);
+                }
+            };
+            long delay = random.nextInt(500);
+            player.due = timer.now() + delay;
+            timer.schedule(player, delay);
+        }
+
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timer.shutdown();
+        System.out.printf("%d games for %d s, %d threads in the JVM%n", games, duration / 1000, Thread.activeCount());
+        System.out.printf("%d moves, %.0f per second, each restarting a turn timeout%n", played.get(),
+                played.get() * 1000.0 / duration);
+        System.out.printf("Moves ran %.1f ms late on average, at most %d ms, with %d ms ticks%n",
+                lateness.get() / (double) Math.max(1, runs.get()), latest.get(), timer.getTick());
+    }
+
+    /**
+     * Measure replaying recorded games at full speed, and what recording adds to each action, alternating rounds with
+     * and without a recorder so both are measured equally warmed up
+     */
+    private static void replay() {
+        var replays = record(500);
+        long events = events(replays);
+        long plain = 0;
+        long recording = 0;
+        for(int round = 0; round < 10; round++) {
+            for(boolean record : new boolean[]{false, true}) {
+                long start = System.nanoTime();
+                for(var replay : replays) {
+                    var engine = new GameEngine(new BitGrid(5, 5), Replayer.pieces(replay));
+                    if(record) {
+                        ReplayRecorder.record(engine, System::currentTimeMillis);
+                    }
+                    engine.initialise();
+                    var cursor = replay.cursor();
+                    while(cursor.next()) {
+                        Replayer.apply(engine, cursor);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                if(round > 0 && record) {
+                    recording += elapsed;
+                } else if(round > 0) {
+                    plain += elapsed;
+                }
+            }
+        }
+        double perEvent = 9.0 * events;
+        System.out.printf("Replaying %.0f ns per event, %.0f replays per second%n", plain / perEvent,
+                9.0 * replays.size() * 1e9 / plain);
+        System.out.printf("Recording adds %.0f ns per event%n", (recording - plain) / perEvent);
+    }
+
+    /**
+     * Measure how many games a single thread verifies per second, against replaying them on a GameEngine, skipping
+     * the rounds where the JIT is still compiling
+     */
+    private static void verify() {
+        var replays = record(2000);
+        long events = events(replays);
+        var verifier = new ReplayVerifier(5, 5);
+        int rounds = 30;
+        int warmup = 10;
+        long verifying = 0;
+        long replaying = 0;
+        for(int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            for(int seed = 0; seed < replays.size(); seed++) {
+                verifier.verify(replays.get(seed), seed, 0);
+            }
+            long middle = System.nanoTime();
+            for(var replay : replays) {
+                Replayer.replay(replay);
+            }
+            long end = System.nanoTime();
+            if(round >= warmup) {
+                verifying += middle - start;
+                replaying += end - middle;
+            }
+        }
+        double timed = rounds - warmup;
+        System.out.printf("Verifying %.0f ns per event, %.0f games per second on one thread%n",
+                verifying / (timed * events), timed * replays.size() * 1e9 / verifying);
+        System.out.printf("Replaying on a GameEngine %.0f ns per event, %.0f games per second%n",
+                replaying / (timed * events), timed * replays.size() * 1e9 / replaying);
+    }
+
+    /**
+     * Measure building a placement heatmap on half filled boards of increasing size. The build should stay well under
+     * a millisecond even on the largest marathon board.
+     */
+    private static void heatmap() {
+        var random = new SplittableRandom(1);
+        System.out.println("size\tus/map\tcentres");
+        for(int size : new int[]{5, 16, 32, 64, 128, 256}) {
+            var grid = halfFilled(size, random);
+            int rounds = 20_000;
+            long centres = 0;
+            long start = 0;
+            for(int round = -rounds; round < rounds; round++) {
+                //The first half of the rounds are warm up
+                if(round == 0) {
+                    start = System.nanoTime();
+                    centres = 0;
+                }
+                var shape = PieceShape.get(Math.floorMod(round, GamePiece.PIECES * PieceShape.ROTATIONS));
+                centres += new PlacementMap(grid, shape).getCount();
+            }
+            System.out.printf("%dx%d\t%.1f\t%d%n", size, size, (System.nanoTime() - start) / 1e3 / rounds,
+                    centres / rounds);
+        }
+    }
+
+    /**
+     * Play the autoplayer for 60 pieces in seeded games, to get positions that look like real games
+     * @param count number of positions
+     * @return engines holding each position
+     */
+    private static List<GameEngine> positions(int count) {
+        var positions = new ArrayList<GameEngine>();
+        var player = new AutoPlayer(5, 5);
+        for(int seed = 0; positions.size() < count; seed++) {
+            var engine = new GameEngine(5, 5, seed);
+            engine.initialise();
+            for(int piece = 0; piece < 60 && !engine.isGameOver(); piece++) {
+                play(engine, player.bestMove(engine));
+            }
+            if(!engine.isGameOver()) {
+                positions.add(engine);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Record whole games played by the quickest autoplayer, one for each seed from 0, each move taking half a second
+     * @param games number of games
+     * @return the replays
+     */
+    private static List<Replay> record(int games) {
+        var player = new AutoPlayer(5, 5);
+        player.setBudget(0);
+        var replays = new ArrayList<Replay>();
+        for(int seed = 0; seed < games; seed++) {
+            var engine = new GameEngine(5, 5, seed);
+            long[] time = {0};
+            var recorder = ReplayRecorder.record(engine, () -> time[0]);
+            engine.initialise();
+            while(!engine.isGameOver()) {
+                time[0] += 500;
+                play(engine, player.bestMove(engine));
+            }
+            recorder.end(engine.getScore());
+            replays.add(recorder.toReplay());
+        }
+        return replays;
+    }
+
+    /**
+     * Count the events of some replays
+     * @param replays the replays
+     * @return total events
+     */
+    private static long events(List<Replay> replays) {
+        long events = 0;
+        for(var replay : replays) {
+            var cursor = replay.cursor();
+            while(cursor.next()) {
+                events++;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Play a move chosen by the autoplayer, or let the turn time out if there was none
+     * @param engine the game
+     * @param move the move, or AutoPlayer.NO_MOVE
+     */
+    private static void play(GameEngine engine, int move) {
+        if(move == AutoPlayer.NO_MOVE) {
+            engine.timeout();
+        } else {
+            AutoPlayer.play(engine, move);
+        }
+    }
+
+    /**
+     * Play a packed move through a game, as a player would: swap and rotate to the piece, click, and restart the turn
+     * timer if the piece was played
+     * @param game the game
+     * @param move the move
+     * @return whether the piece was played
+     */
+    private static boolean play(Game game, int move) {
+        if(MoveGenerator.slot(move) == MoveGenerator.FOLLOWING) {
+            game.swapCurrentPiece();
+        }
+        game.rotateCurrentPiece(MoveGenerator.rotation(move) - game.getCurrentPiece().getRotation());
+        if(!game.play(MoveGenerator.x(move), MoveGenerator.y(move))) {
+            return false;
+        }
+        game.restartLoop();
+        return true;
+    }
+
+    /**
+     * Use a result, so the loop computing it cannot be optimised away
+     * @param result the result
+     */
+    private static void consume(long result) {
+        if(result == Long.MIN_VALUE) {
+            System.out.println(result);
+        }
+    }
+}
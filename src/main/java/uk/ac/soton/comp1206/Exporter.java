@@ -0,0 +1,208 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.PositionDataset;
+import uk.ac.soton.comp1206.ai.PositionWriter;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Exporter plays headless games from the command line and records every move chosen as a position dataset, for
+ * training models offline. It does not start JavaFX.
+ *
+ * Each thread writes a shard of its own, so threads never wait for each other to write. Games are handed out to the
+ * threads one at a time from a shared counter, and game N is played on the seed plus N, so a position can be traced
+ * back to its game whichever shard it was written to. Turns which time out, with no move chosen, are not recorded.
+ *
+ * Once written, the dataset is opened again and sampled as a check, and the rate of reading it is shown.
+ *
+ * Options, all optional:
+ * --games N, --seed S, --policy random|greedy|lookahead|expectimax, --threads N, --max-pieces N, --size N and
+ * --out DIRECTORY, which must not already hold shards
+ */
+public class Exporter {
+
+    private int games = 10000;
+    private long seed = 0;
+    private Simulator.Policy policy = Simulator.Policy.GREEDY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxPieces = 2000;
+    private int size = 5;
+    private Path out = Path.of("positions");
+
+    /**
+     * Run the exporter with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var exporter = new Exporter();
+        try {
+            exporter.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            exporter.run();
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read the options from the commandline arguments
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--games" -> games = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--policy" -> policy = Simulator.Policy.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                    case "--max-pieces" -> maxPieces = Integer.parseInt(value);
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--out" -> out = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size * size > 64) {
+            throw new IllegalArgumentException("Board too large for the computer players: " + size);
+        }
+    }
+
+    /**
+     * Play and record the games on every thread, then read the dataset back
+     * @throws IOException if a shard cannot be written or read
+     */
+    private void run() throws IOException {
+        Files.createDirectories(out);
+        try(var listing = Files.list(out)) {
+            if(listing.anyMatch(file -> file.getFileName().toString().endsWith(PositionDataset.EXTENSION))) {
+                throw new IOException(out + " already holds a position dataset");
+            }
+        }
+        var evaluator = new Evaluator(new MoveGenerator(size, size), Evaluator.loadWeights(),
+                SurvivalTable.load(size, size));
+        System.out.printf("Exporting %d games with the %s policy on %d threads to %s%n", games, policy, threads, out);
+
+        var next = new AtomicInteger();
+        var executor = Executors.newFixedThreadPool(threads);
+        var search = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        long positions = 0;
+        try {
+            var shards = new ArrayList<Future<Long>>();
+            for(int shard = 0; shard < threads; shard++) {
+                var file = out.resolve(String.format("shard-%03d%s", shard, PositionDataset.EXTENSION));
+                shards.add(executor.submit(exportShard(file, evaluator, search, next)));
+            }
+            for(var shard : shards) {
+                positions += shard.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+            search.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Wrote %d positions in %.1f s: %.0f games/s, %.0f positions/s%n", positions, seconds,
+                games / seconds, positions / seconds);
+
+        check();
+    }
+
+    /**
+     * Create the task writing one shard, which takes games until every game has been played
+     * @param file the shard file
+     * @param evaluator judges boards, shared by every thread
+     * @param search runs the searches of expectimax players, shared by every thread
+     * @param next the number of the next game to be played
+     * @return the task, returning the number of positions it wrote
+     */
+    private Callable<Long> exportShard(Path file, Evaluator evaluator, ForkJoinPool search, AtomicInteger next) {
+        return () -> {
+            var player = policy.create(evaluator, search);
+            try(var writer = new PositionWriter(file, size, size, seed)) {
+                for(int game = next.getAndIncrement(); game < games; game = next.getAndIncrement()) {
+                    player.newGame(seed + game);
+                    var engine = new GameEngine(size, size, seed + game);
+                    engine.initialise();
+                    writer.newGame(game);
+                    while(!engine.isGameOver() && engine.getPiecesPlayed() < maxPieces) {
+                        int move = player.bestMove(engine);
+                        if(move == AutoPlayer.NO_MOVE) {
+                            engine.timeout();
+                        } else {
+                            writer.record(engine, move);
+                            AutoPlayer.play(engine, move);
+                        }
+                    }
+                    writer.finishGame(engine.getScore());
+                }
+                return writer.size();
+            }
+        };
+    }
+
+    /**
+     * Open the dataset just written, and read a sample of it and then all of it
+     * @throws IOException if the dataset cannot be read
+     */
+    private void check() throws IOException {
+        var dataset = PositionDataset.open(out);
+        if(dataset.size() == 0) {
+            System.out.println("No positions were recorded");
+            return;
+        }
+        var random = new SplittableRandom(seed);
+        long start = System.nanoTime();
+        long finalScores = 0;
+        int samples = 1_000_000;
+        for(int i = 0; i < samples; i++) {
+            finalScores += PositionDataset.getFinalScore(dataset.sample(random));
+        }
+        double sampled = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        long filled = dataset.stream().mapToLong(record -> Long.bitCount(PositionDataset.getBoard(record))).sum();
+        double streamed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("Read %d positions from %d shards: mean final score %.1f, mean filled %.2f%n",
+                dataset.size(), dataset.getShards(), finalScores / (double) samples,
+                filled / (double) dataset.size());
+        System.out.printf("Sampled at %.0f records/s, streamed at %.0f records/s%n", samples / sampled,
+                dataset.size() / streamed);
+    }
+}
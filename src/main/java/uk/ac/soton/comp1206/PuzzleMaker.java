@@ -0,0 +1,116 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.puzzle.Puzzle;
+import uk.ac.soton.comp1206.puzzle.PuzzleGenerator;
+import uk.ac.soton.comp1206.puzzle.PuzzlePack;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The PuzzleMaker generates a pack of verified puzzles from the command line, for the puzzle mode to play. It does not
+ * start JavaFX.
+ *
+ * Puzzles are generated for each number of moves in turn, easiest first, and every one has been solved by the
+ * PuzzleSolver and needs all of its pieces. The game generates a default pack by itself the first time the puzzle mode
+ * is played; this makes larger packs, or packs of harder or unique puzzles.
+ *
+ * Options, all optional:
+ * --size N, --min-moves N, --max-moves N, --count N puzzles of each number of moves, --unique true|false, --seed S,
+ * --threads N and --out FILE
+ */
+public class PuzzleMaker {
+
+    private int size = PuzzlePack.DEFAULT_SIZE;
+    private int minMoves = PuzzlePack.DEFAULT_MIN_MOVES;
+    private int maxMoves = PuzzlePack.DEFAULT_MAX_MOVES;
+    private int count = PuzzlePack.DEFAULT_PER_LEVEL;
+    private boolean unique = false;
+    private long seed = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path out = Path.of(PuzzlePack.DEFAULT_FILE);
+
+    /**
+     * Run the puzzle maker with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var maker = new PuzzleMaker();
+        try {
+            maker.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            maker.run();
+        } catch (IOException e) {
+            System.err.println("Unable to write the puzzle pack: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read the options from the commandline arguments
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--min-moves" -> minMoves = Integer.parseInt(value);
+                    case "--max-moves" -> maxMoves = Integer.parseInt(value);
+                    case "--count" -> count = Integer.parseInt(value);
+                    case "--unique" -> unique = Boolean.parseBoolean(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                    case "--out" -> out = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size * size > 64) {
+            throw new IllegalArgumentException("Board too large for puzzles: " + size);
+        }
+        if(minMoves < 1 || maxMoves < minMoves) {
+            throw new IllegalArgumentException("The moves must be at least 1, and the most at least the fewest");
+        }
+    }
+
+    /**
+     * Generate each number of moves, then write the pack
+     * @throws IOException if the pack cannot be written
+     */
+    private void run() throws IOException {
+        var generator = new PuzzleGenerator(size, size, unique);
+        var pool = new ForkJoinPool(threads);
+        System.out.printf("Generating %d puzzles of each of %d to %d moves on a %dx%d board, on %d threads%n", count,
+                minMoves, maxMoves, size, size, threads);
+        try {
+            long start = System.nanoTime();
+            var puzzles = generator.generate(count, minMoves, maxMoves, seed, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            for(int moves = minMoves; moves <= maxMoves; moves++) {
+                int level = moves;
+                var found = puzzles.stream().filter(puzzle -> puzzle.getMoves() == level).toList();
+                System.out.printf("%d moves: %d puzzles, %d unique, difficulty %d to %d%n", moves, found.size(),
+                        found.stream().filter(Puzzle::isUnique).count(),
+                        found.stream().mapToInt(Puzzle::getDifficulty).min().orElse(0),
+                        found.stream().mapToInt(Puzzle::getDifficulty).max().orElse(0));
+            }
+            PuzzlePack.write(out, puzzles);
+            System.out.printf("Wrote %d puzzles to %s in %.1f s%n", puzzles.size(), out, seconds);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
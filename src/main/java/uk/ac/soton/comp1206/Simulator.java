@@ -0,0 +1,306 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.ExpectimaxPlayer;
+import uk.ac.soton.comp1206.ai.PlacementPolicy;
+import uk.ac.soton.comp1206.ai.RandomPolicy;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Simulator plays complete games headlessly from the command line, with a computer player, to balance the timer
+ * and the score curve. It does not start JavaFX.
+ *
+ * Every game runs on a GameEngine with the real scoring, level and lives rules, and draws its pieces from its own seed,
+ * so a game can be replayed from its seed. Instead of a real timer, each game keeps a simulated clock: every move takes
+ * the chosen thinking time, and if there is no move, or thinking takes longer than the timer delay, the turn times
+ * out and a life is lost.
+ *
+ * Games are shared out between threads, and each result is streamed to the output file as a CSV row of the seed,
+ * score, level, pieces played, lines cleared and simulated length in ms. In the binary format each result is a 32 byte
+ * big endian record with the same fields: a long, four ints and a long.
+ *
+ * Options, all optional:
+ * --games N, --seed FIRST, --policy random|greedy|lookahead|expectimax, --threads N, --think MS, --max-pieces N,
+ * --size N, --format csv|binary and --out FILE
+ */
+public class Simulator {
+
+    /**
+     * The computer players the simulator can use
+     */
+    public enum Policy {
+        /**
+         * Plays a random legal move
+         */
+        RANDOM,
+        /**
+         * Plays the move which leaves the best board, without looking ahead
+         */
+        GREEDY,
+        /**
+         * The autoplayer used for hints, looking ahead to the following piece
+         */
+        LOOKAHEAD,
+        /**
+         * The strong expectimax player, searching on the given pool
+         */
+        EXPECTIMAX;
+
+        /**
+         * Create a player of this policy. Each thread needs its own.
+         * @param evaluator judges boards, and may be shared
+         * @param pool runs the expectimax search, and may be shared. The player does not shut it down.
+         * @return a new player
+         */
+        public PlacementPolicy create(Evaluator evaluator, ForkJoinPool pool) {
+            return switch (this) {
+                case RANDOM -> new RandomPolicy(evaluator.getGenerator());
+                case GREEDY -> {
+                    //With no time budget the autoplayer stops after scoring single moves
+                    var player = new AutoPlayer(evaluator);
+                    player.setBudget(0);
+                    yield player;
+                }
+                case LOOKAHEAD -> {
+                    var player = new AutoPlayer(evaluator);
+                    player.setBudget(Long.MAX_VALUE / 2);
+                    yield player;
+                }
+                case EXPECTIMAX -> new ExpectimaxPlayer(evaluator, ExpectimaxPlayer.DEFAULT_DEPTH, pool);
+            };
+        }
+    }
+
+    /**
+     * Size of a binary record in bytes
+     */
+    private static final int RECORD = 32;
+
+    /**
+     * Results are written to the file in batches of this many games
+     */
+    private static final int BATCH = 256;
+
+    private int games = 100_000;
+    private long firstSeed = 0;
+    private Policy policy = Policy.GREEDY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int thinkTime = 0;
+    private int maxPieces = 10_000;
+    private int size = 5;
+    private boolean binary = false;
+    private String out = "simulation.csv";
+
+    /**
+     * Judges boards for the players that need it, shared by every thread
+     */
+    private Evaluator evaluator;
+
+    /**
+     * Runs the searches of the expectimax players, shared by every thread
+     */
+    private ForkJoinPool search;
+
+    //Totals over every game, for the summary
+    private final LongAdder totalScore = new LongAdder();
+    private final LongAdder totalLevel = new LongAdder();
+    private final LongAdder totalPieces = new LongAdder();
+
+    /**
+     * Run the simulator with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var simulator = new Simulator();
+        try {
+            simulator.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            simulator.run();
+        } catch (IOException e) {
+            System.err.println("Unable to write results: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read the options from the commandline arguments
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--games" -> games = Integer.parseInt(value);
+                    case "--seed" -> firstSeed = Long.parseLong(value);
+                    case "--policy" -> policy = Policy.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                    case "--think" -> thinkTime = Integer.parseInt(value);
+                    case "--max-pieces" -> maxPieces = Integer.parseInt(value);
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--format" -> binary = value.equalsIgnoreCase("binary");
+                    case "--out" -> out = value;
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size * size > 64) {
+            throw new IllegalArgumentException("Board too large for the computer players: " + size);
+        }
+    }
+
+    /**
+     * Play every game and write the results
+     * @throws IOException if the results cannot be written
+     * @throws InterruptedException if interrupted while waiting for the games to finish
+     * @throws IllegalStateException if a game fails
+     */
+    private void run() throws IOException, InterruptedException {
+        var survival = SurvivalTable.load(size, size);
+        evaluator = new Evaluator(new MoveGenerator(size, size), Evaluator.loadWeights(), survival);
+        System.out.printf("Playing %d games with the %s policy on %d threads%s%n", games, policy, threads,
+                survival != null ? ", using the survival table" : "");
+
+        var next = new AtomicLong(firstSeed);
+        long end = firstSeed + games;
+        long start = System.nanoTime();
+        try(var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out), 1 << 16))) {
+            if(!binary) {
+                output.write("seed,score,level,pieces,lines,length_ms\n".getBytes(StandardCharsets.US_ASCII));
+            }
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            search = new ForkJoinPool(threads);
+            try {
+                var results = new ArrayList<Future<?>>();
+                for(int i = 0; i < threads; i++) {
+                    results.add(workers.submit(() -> {
+                        work(next, end, output);
+                        return null;
+                    }));
+                }
+                for(var result : results) {
+                    result.get();
+                }
+            } catch (ExecutionException e) {
+                //Stop the other threads taking new games, rather than writing a run with some games missing
+                next.set(end);
+                if(e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("A game failed", e.getCause());
+            } finally {
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                search.shutdown();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games in %.1f s, %.0f games per minute%n", games, seconds, games / seconds * 60);
+        System.out.printf("Mean score %.0f, level %.2f, pieces %.1f%n", totalScore.sum() / (double) games,
+                totalLevel.sum() / (double) games, totalPieces.sum() / (double) games);
+        System.out.println("Results written to " + out);
+    }
+
+    /**
+     * Play games on one thread, taking seeds until they run out, and write the results in batches
+     * @param next the next seed to play
+     * @param end the seed after the last to play
+     * @param output where to write the results
+     * @throws IOException if the results cannot be written
+     */
+    private void work(AtomicLong next, long end, OutputStream output) throws IOException {
+        var player = policy.create(evaluator, search);
+        var batch = ByteBuffer.allocate(BATCH * (binary ? RECORD : 64));
+        int count = 0;
+        for(long seed = next.getAndIncrement(); seed < end; seed = next.getAndIncrement()) {
+            player.newGame(seed);
+            var engine = new GameEngine(size, size, seed);
+            long length = play(engine, player);
+            totalScore.add(engine.getScore());
+            totalLevel.add(engine.getLevel());
+            totalPieces.add(engine.getPiecesPlayed());
+
+            if(binary) {
+                batch.putLong(seed).putInt(engine.getScore()).putInt(engine.getLevel())
+                        .putInt(engine.getPiecesPlayed()).putInt(engine.getLinesCleared()).putLong(length);
+            } else {
+                String row = seed + "," + engine.getScore() + "," + engine.getLevel() + "," + engine.getPiecesPlayed()
+                        + "," + engine.getLinesCleared() + "," + length + "\n";
+                batch.put(row.getBytes(StandardCharsets.US_ASCII));
+            }
+            if(++count == BATCH) {
+                flush(batch, output);
+                count = 0;
+            }
+        }
+        flush(batch, output);
+    }
+
+    /**
+     * Play one game to the end, or until the piece limit
+     * @param engine a new game
+     * @param player chooses each move
+     * @return the simulated length of the game in ms
+     */
+    private long play(GameEngine engine, PlacementPolicy player) {
+        engine.initialise();
+        long clock = 0;
+        while(!engine.isGameOver() && engine.getPiecesPlayed() < maxPieces) {
+            int move = player.bestMove(engine);
+            if(move == AutoPlayer.NO_MOVE || thinkTime >= engine.getTimerDelay()) {
+                clock += engine.getTimerDelay();
+                engine.timeout();
+            } else {
+                clock += thinkTime;
+                AutoPlayer.play(engine, move);
+            }
+        }
+        return clock;
+    }
+
+    /**
+     * Write a batch of results to the output, and empty the batch
+     * @param batch the results
+     * @param output where to write them
+     * @throws IOException if the results cannot be written
+     */
+    private static void flush(ByteBuffer batch, OutputStream output) throws IOException {
+        synchronized(output) {
+            output.write(batch.array(), 0, batch.position());
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,82 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The SurvivalMaker generates the survival table from the command line, for the computer players to look boards up
+ * in. It does not start JavaFX.
+ *
+ * The table holds a byte for every board, so it can only be built for boards of at most 25 blocks. The players load
+ * the table from the default file when it matches their board size, and judge boards without it otherwise.
+ *
+ * Options, all optional:
+ * --size N and --out FILE
+ */
+public class SurvivalMaker {
+
+    private int size = 5;
+    private Path out = Path.of(SurvivalTable.DEFAULT_FILE);
+
+    /**
+     * Run the survival maker with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var maker = new SurvivalMaker();
+        try {
+            maker.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            maker.run();
+        } catch (IOException e) {
+            System.err.println("Unable to write the survival table: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read the options from the commandline arguments
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--out" -> out = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size < 1 || size * size > SurvivalTable.MAX_BLOCKS) {
+            throw new IllegalArgumentException("No survival table for a board of size " + size);
+        }
+    }
+
+    /**
+     * Generate the table, then open it again as a check
+     * @throws IOException if the table cannot be written or read
+     */
+    private void run() throws IOException {
+        System.out.printf("Generating the survival table for a %dx%d board%n", size, size);
+        long start = System.nanoTime();
+        SurvivalTable.generate(out, size, size);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        var table = SurvivalTable.open(out);
+        System.out.printf("Wrote %d boards to %s in %.1f s, %d pieces fit on an empty board%n",
+                1L << (size * size), out, seconds, table.playable(0));
+    }
+}
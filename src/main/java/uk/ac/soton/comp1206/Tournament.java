@@ -0,0 +1,433 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.PlacementPolicy;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The Tournament plays computer players against each other from the command line, to compare a new heuristic against
+ * the existing ones. It does not start JavaFX.
+ *
+ * A match is one seed: every entrant plays a full game with the same pieces, and each pair of entrants is compared on
+ * their scores, so the luck of the pieces cancels out. Matches are split into ranges of seeds on a ForkJoinPool. Each
+ * task adds up its own results, then adds them to the shared LongAdder, DoubleAdder and AtomicLongArray totals once at
+ * the end, so the threads never wait for each other.
+ *
+ * At the end it prints, for each entrant, the score distribution with its percentiles and an Elo-style rating fitted
+ * to every pairwise result, and for each pair the mean difference in score with its 95% confidence interval.
+ *
+ * Options, all optional:
+ * --matches N, --seed FIRST, --policies NAME,NAME,... from random|greedy|lookahead|expectimax, --threads N,
+ * --max-pieces N and --size N
+ */
+public class Tournament {
+
+    /**
+     * Seeds played by one task before it is split no further
+     */
+    private static final int LEAF = 256;
+
+    /**
+     * Scores are counted in buckets spanning a 32nd of a power of two, so percentiles are within about 3%
+     */
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (32 - SUB_BITS) * SUB;
+
+    /**
+     * A policy taking part in the tournament, and its totals so far
+     */
+    public static class Entrant {
+        private final String name;
+        private final Supplier<PlacementPolicy> factory;
+
+        private final LongAdder games = new LongAdder();
+        private final LongAdder totalScore = new LongAdder();
+        private final DoubleAdder squaredScores = new DoubleAdder();
+        private final LongAdder totalPieces = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        /**
+         * Create an entrant
+         * @param name name shown in the results
+         * @param factory creates a player of the policy, called once for each thread
+         */
+        public Entrant(String name, Supplier<PlacementPolicy> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getGames() {
+            return games.sum();
+        }
+
+        /**
+         * Get the mean score
+         * @return mean score
+         */
+        public double getMean() {
+            return totalScore.sum() / (double) Math.max(1, games.sum());
+        }
+
+        /**
+         * Get the standard deviation of the scores
+         * @return standard deviation
+         */
+        public double getDeviation() {
+            double mean = getMean();
+            return Math.sqrt(Math.max(0, squaredScores.sum() / Math.max(1, games.sum()) - mean * mean));
+        }
+
+        /**
+         * Get a percentile of the scores
+         * @param percent percentage of games scoring at most the result, from 0 to 100
+         * @return the lowest score of the bucket holding the percentile
+         */
+        public int getPercentile(double percent) {
+            long target = (long) Math.ceil(games.sum() * percent / 100);
+            long seen = 0;
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += histogram.get(bucket);
+                if(seen >= Math.max(1, target)) {
+                    return lowest(bucket);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private int matches = 100_000;
+    private long firstSeed = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxPieces = 10_000;
+    private int size = 5;
+    private final List<Entrant> entrants = new ArrayList<>();
+
+    /**
+     * Runs the matches, and the searches of any expectimax players within them
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Each thread's players, in the same order as the entrants
+     */
+    private final ThreadLocal<PlacementPolicy[]> players = ThreadLocal.withInitial(() -> {
+        var created = new PlacementPolicy[entrants.size()];
+        for(int i = 0; i < created.length; i++) {
+            created[i] = entrants.get(i).factory.get();
+        }
+        return created;
+    });
+
+    //Pairwise totals, indexed by i * entrants + j for entrants i and j
+    private LongAdder[] wins;
+    private LongAdder[] draws;
+    private LongAdder[] difference;
+    private DoubleAdder[] squaredDifference;
+
+    /**
+     * Run a tournament with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var tournament = new Tournament();
+        try {
+            tournament.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        tournament.run();
+        tournament.report();
+    }
+
+    /**
+     * Read the options from the commandline arguments, and enter the chosen policies
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        String policies = "random,greedy";
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--matches" -> matches = Integer.parseInt(value);
+                    case "--seed" -> firstSeed = Long.parseLong(value);
+                    case "--policies" -> policies = value;
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                    case "--max-pieces" -> maxPieces = Integer.parseInt(value);
+                    case "--size" -> size = Integer.parseInt(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size * size > 64) {
+            throw new IllegalArgumentException("Board too large for the computer players: " + size);
+        }
+
+        var evaluator = new Evaluator(new MoveGenerator(size, size), Evaluator.loadWeights(),
+                SurvivalTable.load(size, size));
+        for(String name : policies.split(",")) {
+            Simulator.Policy policy;
+            try {
+                policy = Simulator.Policy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown policy: " + name);
+            }
+            enter(policy.name().toLowerCase(Locale.ROOT), () -> policy.create(evaluator, pool));
+        }
+    }
+
+    /**
+     * Enter a policy into the tournament. Must be called before it runs.
+     * @param name name shown in the results
+     * @param factory creates a player of the policy, called once for each thread
+     * @return the entrant
+     */
+    public Entrant enter(String name, Supplier<PlacementPolicy> factory) {
+        var entrant = new Entrant(name, factory);
+        entrants.add(entrant);
+        return entrant;
+    }
+
+    /**
+     * Play every match
+     */
+    public void run() {
+        int count = entrants.size();
+        wins = adders(count * count);
+        draws = adders(count * count);
+        difference = adders(count * count);
+        squaredDifference = new DoubleAdder[count * count];
+        for(int i = 0; i < squaredDifference.length; i++) {
+            squaredDifference[i] = new DoubleAdder();
+        }
+
+        System.out.printf("Playing %d matches between %d policies on %d threads%n", matches, count, threads);
+        long start = System.nanoTime();
+        pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Matches(firstSeed, firstSeed + matches));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games in %.1f s, %.0f games per minute%n", (long) matches * count, seconds,
+                matches * count / seconds * 60);
+    }
+
+    /**
+     * Print the results of every entrant and every pair
+     */
+    public void report() {
+        int count = entrants.size();
+        double[] ratings = ratings();
+        System.out.printf("%-12s %9s %9s %9s %8s %8s %8s %8s %7s%n", "Policy", "Mean", "SD", "Pieces", "p10", "p50",
+                "p90", "p99", "Rating");
+        for(int i = 0; i < count; i++) {
+            var entrant = entrants.get(i);
+            System.out.printf("%-12s %9.1f %9.1f %9.1f %8d %8d %8d %8d %7.0f%n", entrant.name, entrant.getMean(),
+                    entrant.getDeviation(), entrant.totalPieces.sum() / (double) Math.max(1, entrant.getGames()),
+                    entrant.getPercentile(10), entrant.getPercentile(50), entrant.getPercentile(90),
+                    entrant.getPercentile(99), ratings[i]);
+        }
+        for(int i = 0; i < count; i++) {
+            for(int j = i + 1; j < count; j++) {
+                int pair = i * count + j;
+                double mean = difference[pair].sum() / (double) matches;
+                double variance = Math.max(0, squaredDifference[pair].sum() / matches - mean * mean);
+                double error = Math.sqrt(variance / matches);
+                double z = error == 0 ? 0 : mean / error;
+                System.out.printf("%s vs %s: won %d, lost %d, drew %d, score %+.1f +/- %.1f (z = %.1f%s)%n",
+                        entrants.get(i).name, entrants.get(j).name, wins[pair].sum(), wins[j * count + i].sum(),
+                        draws[pair].sum(), mean, 1.96 * error, z, Math.abs(z) >= 1.96 ? ", significant" : "");
+            }
+        }
+    }
+
+    /**
+     * Fit an Elo-style rating to every pairwise result, as a Bradley-Terry model. Each pair also gets one virtual
+     * draw, so an entrant which never wins or never loses still gets a finite rating.
+     * @return the rating of each entrant, averaging 1500
+     */
+    public double[] ratings() {
+        int count = entrants.size();
+        double[] strength = new double[count];
+        Arrays.fill(strength, 1);
+        //A lone entrant has nobody to be rated against, and keeps the average rating
+        for(int iteration = 0; count > 1 && iteration < 1000; iteration++) {
+            double[] next = new double[count];
+            for(int i = 0; i < count; i++) {
+                double won = 0;
+                double expected = 0;
+                for(int j = 0; j < count; j++) {
+                    if(i == j) {
+                        continue;
+                    }
+                    int pair = Math.min(i, j) * count + Math.max(i, j);
+                    double drawn = draws[pair].sum() + 1;
+                    double played = wins[i * count + j].sum() + wins[j * count + i].sum() + drawn;
+                    won += wins[i * count + j].sum() + drawn / 2;
+                    expected += played / (strength[i] + strength[j]);
+                }
+                next[i] = won / expected;
+            }
+            strength = next;
+        }
+        double mean = 0;
+        double[] ratings = new double[count];
+        for(int i = 0; i < count; i++) {
+            ratings[i] = 400 * Math.log10(strength[i]);
+            mean += ratings[i] / count;
+        }
+        for(int i = 0; i < count; i++) {
+            ratings[i] += 1500 - mean;
+        }
+        return ratings;
+    }
+
+    /**
+     * Plays a range of seeds, splitting it in half until it is small enough to play on one thread
+     */
+    @SuppressWarnings("serial")
+    private class Matches extends RecursiveAction {
+        private final long from;
+        private final long to;
+
+        Matches(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > LEAF) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new Matches(from, middle), new Matches(middle, to));
+                return;
+            }
+            int count = entrants.size();
+            var policies = players.get();
+            int[] scores = new int[count];
+
+            //This task's totals, added to the shared ones at the end
+            long[] totals = new long[count];
+            double[] squares = new double[count];
+            long[] pieces = new long[count];
+            long[][] histograms = new long[count][BUCKETS];
+            long[] won = new long[count * count];
+            long[] drawn = new long[count * count];
+            long[] differences = new long[count * count];
+            double[] squaredDifferences = new double[count * count];
+
+            for(long seed = from; seed < to; seed++) {
+                for(int i = 0; i < count; i++) {
+                    policies[i].newGame(seed);
+                    var engine = new GameEngine(size, size, seed);
+                    policies[i].playGame(engine, maxPieces);
+                    int score = engine.getScore();
+                    scores[i] = score;
+                    totals[i] += score;
+                    squares[i] += (double) score * score;
+                    pieces[i] += engine.getPiecesPlayed();
+                    histograms[i][bucket(score)]++;
+                }
+                for(int i = 0; i < count; i++) {
+                    for(int j = i + 1; j < count; j++) {
+                        int pair = i * count + j;
+                        long diff = scores[i] - scores[j];
+                        if(diff > 0) {
+                            won[pair]++;
+                        } else if(diff < 0) {
+                            won[j * count + i]++;
+                        } else {
+                            drawn[pair]++;
+                        }
+                        differences[pair] += diff;
+                        squaredDifferences[pair] += (double) diff * diff;
+                    }
+                }
+            }
+
+            for(int i = 0; i < count; i++) {
+                var entrant = entrants.get(i);
+                entrant.games.add(to - from);
+                entrant.totalScore.add(totals[i]);
+                entrant.squaredScores.add(squares[i]);
+                entrant.totalPieces.add(pieces[i]);
+                for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                    if(histograms[i][bucket] != 0) {
+                        entrant.histogram.addAndGet(bucket, histograms[i][bucket]);
+                    }
+                }
+            }
+            for(int pair = 0; pair < count * count; pair++) {
+                wins[pair].add(won[pair]);
+                draws[pair].add(drawn[pair]);
+                difference[pair].add(differences[pair]);
+                squaredDifference[pair].add(squaredDifferences[pair]);
+            }
+        }
+    }
+
+    /**
+     * Get the histogram bucket of a score
+     * @param score score, not negative
+     * @return bucket
+     */
+    private static int bucket(int score) {
+        if(score < SUB) {
+            return score;
+        }
+        int shift = 31 - Integer.numberOfLeadingZeros(score) - SUB_BITS;
+        return (shift + 1) * SUB + (score >>> shift) - SUB;
+    }
+
+    /**
+     * Get the lowest score counted in a histogram bucket
+     * @param bucket bucket
+     * @return lowest score
+     */
+    private static int lowest(int bucket) {
+        if(bucket < SUB) {
+            return bucket;
+        }
+        int shift = bucket / SUB - 1;
+        return (bucket % SUB + SUB) << shift;
+    }
+
+    /**
+     * Create an array of new adders
+     * @param length number of adders
+     * @return adders
+     */
+    private static LongAdder[] adders(int length) {
+        var adders = new LongAdder[length];
+        for(int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
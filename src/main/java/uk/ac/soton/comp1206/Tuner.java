@@ -0,0 +1,396 @@
+package uk.ac.soton.comp1206;
+
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Tuner searches for better Evaluator weights from the command line with a genetic algorithm, and saves the best
+ * to the weights file the computer players load at startup. It does not start JavaFX.
+ *
+ * Each generation, every candidate weight vector plays the same fresh set of seeded games with the chosen policy, and
+ * its fitness is its mean score under the real scoring rules. The best candidates are kept as they are, and the rest
+ * of the next generation are children of two of the better half, mixing their weights and adding Gaussian noise
+ * scaled to each weight. The noise shrinks every generation. Kept candidates play new seeds each generation, so a
+ * candidate that was only lucky does not stay on top.
+ *
+ * Only the ordering of moves matters to the players, so scaling every weight gives the same play; the points weight is
+ * fixed at 1 and the others are tuned relative to it.
+ *
+ * Games are split into tasks of a candidate and a run of seeds on a ForkJoinPool, each adding its scores to the
+ * candidate's LongAdder. After every generation the population is checkpointed to disk, replacing the previous
+ * checkpoint atomically, and a run started again with the same checkpoint carries on from where it stopped.
+ *
+ * At the end, the best candidate and the default weights both play a separate set of validation seeds, and the best
+ * weights are saved only if they scored higher.
+ *
+ * Options, all optional:
+ * --generations N, --population N, --elite N, --games N, --seed S, --policy greedy|lookahead, --threads N,
+ * --max-pieces N, --size N, --validate N, --checkpoint FILE and --out FILE
+ */
+public class Tuner {
+
+    /**
+     * Games played by one task
+     */
+    private static final int CHUNK = 50;
+
+    /**
+     * Validation games are played on seeds from here, far from any seed used for tuning
+     */
+    private static final long VALIDATION_SEEDS = 1L << 48;
+
+    /**
+     * How much the mutation noise shrinks each generation, and the smallest it gets
+     */
+    private static final double DECAY = 0.93;
+    private static final double MIN_SIGMA = 0.02;
+
+    private static final int MAGIC = 0x544E5231;
+    private static final int VERSION = 1;
+
+    private int generations = 40;
+    private int populationSize = 24;
+    private int elite = 4;
+    private int games = 400;
+    private long seed = 0;
+    private Simulator.Policy policy = Simulator.Policy.GREEDY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxPieces = 2000;
+    private int size = 5;
+    private int validate = 4000;
+    private Path checkpoint = Path.of("tuner.checkpoint");
+    private Path out = Path.of(Evaluator.WEIGHTS_FILE);
+
+    private MoveGenerator generator;
+    private SurvivalTable survival;
+    private ForkJoinPool pool;
+
+    //The state saved in a checkpoint
+    private int generation = 0;
+    private double sigma = 0.5;
+    private double[][] population;
+
+    /**
+     * Run the tuner with the given commandline arguments
+     * @param args commandline arguments
+     */
+    public static void main(String[] args) {
+        var tuner = new Tuner();
+        try {
+            tuner.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        try {
+            tuner.run();
+        } catch (IOException e) {
+            System.err.println("Tuning failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read the options from the commandline arguments
+     * @param args commandline arguments
+     */
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            if(i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "--generations" -> generations = Integer.parseInt(value);
+                    case "--population" -> populationSize = Integer.parseInt(value);
+                    case "--elite" -> elite = Integer.parseInt(value);
+                    case "--games" -> games = Integer.parseInt(value);
+                    case "--seed" -> seed = Long.parseLong(value);
+                    case "--policy" -> policy = Simulator.Policy.valueOf(value.toUpperCase(Locale.ROOT));
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(value));
+                    case "--max-pieces" -> maxPieces = Integer.parseInt(value);
+                    case "--size" -> size = Integer.parseInt(value);
+                    case "--validate" -> validate = Integer.parseInt(value);
+                    case "--checkpoint" -> checkpoint = Path.of(value);
+                    case "--out" -> out = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+            }
+        }
+        if(size * size > 64) {
+            throw new IllegalArgumentException("Board too large for the computer players: " + size);
+        }
+        if(elite < 1 || elite >= populationSize) {
+            throw new IllegalArgumentException("The elite must be at least 1 and smaller than the population");
+        }
+    }
+
+    /**
+     * Tune the weights, checkpointing every generation, then validate and save the best
+     * @throws IOException if the checkpoint or weights cannot be written
+     */
+    private void run() throws IOException {
+        generator = new MoveGenerator(size, size);
+        survival = SurvivalTable.load(size, size);
+        pool = new ForkJoinPool(threads);
+        try {
+            if(Files.exists(checkpoint)) {
+                readCheckpoint();
+                System.out.printf("Resuming from generation %d of %d%n", generation, generations);
+            } else {
+                population = initialPopulation();
+            }
+            System.out.printf("Tuning %d candidates over %d games each with the %s policy on %d threads%n",
+                    populationSize, games, policy, threads);
+
+            double[] best = population[0];
+            while(generation < generations) {
+                long start = System.nanoTime();
+                long first = seed + (long) generation * games;
+                double[] fitness = evaluate(population, first);
+
+                Integer[] order = new Integer[populationSize];
+                for(int i = 0; i < populationSize; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparingDouble(i -> -fitness[i]));
+                best = population[order[0]];
+                System.out.printf("Generation %d: best %.1f, median %.1f, sigma %.3f, %.1f s%n  %s%n", generation,
+                        fitness[order[0]], fitness[order[populationSize / 2]], sigma,
+                        (System.nanoTime() - start) / 1e9, describe(best));
+
+                population = breed(population, order, new SplittableRandom(seed ^ generation * 0x9E3779B97F4A7C15L));
+                sigma = Math.max(MIN_SIGMA, sigma * DECAY);
+                generation++;
+                writeCheckpoint();
+            }
+
+            //The top of the last generation may have been lucky, so compare it with the defaults on unseen seeds
+            double[] defaults = Evaluator.defaultWeights();
+            double[] validation = evaluate(new double[][]{best, defaults}, VALIDATION_SEEDS, validate);
+            System.out.printf("Validation over %d games: tuned %.1f, default %.1f%n", validate, validation[0],
+                    validation[1]);
+            if(validation[0] > validation[1]) {
+                Evaluator.writeWeights(out, best, String.format(Locale.ROOT,
+                        "Tuned with the %s policy: mean %.1f against %.1f for the defaults over %d games",
+                        policy.name().toLowerCase(Locale.ROOT), validation[0], validation[1], validate));
+                System.out.println("Weights written to " + out);
+            } else {
+                System.out.println("The tuned weights did not beat the defaults, so they were not saved");
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Create the first generation: the default weights, and noisy copies of them
+     * @return population
+     */
+    private double[][] initialPopulation() {
+        var random = new SplittableRandom(seed);
+        double[][] created = new double[populationSize][];
+        created[0] = Evaluator.defaultWeights();
+        for(int i = 1; i < populationSize; i++) {
+            created[i] = mutate(Evaluator.defaultWeights(), random);
+        }
+        return created;
+    }
+
+    /**
+     * Play every candidate on the same run of seeds
+     * @param candidates weights of each candidate
+     * @param first the first seed
+     * @return the mean score of each candidate
+     */
+    private double[] evaluate(double[][] candidates, long first) {
+        return evaluate(candidates, first, games);
+    }
+
+    /**
+     * Play every candidate on the same run of seeds, in parallel
+     * @param candidates weights of each candidate
+     * @param first the first seed
+     * @param count the number of seeds
+     * @return the mean score of each candidate
+     */
+    private double[] evaluate(double[][] candidates, long first, int count) {
+        var totals = new LongAdder[candidates.length];
+        var tasks = new ArrayList<ForkJoinTask<?>>();
+        for(int i = 0; i < candidates.length; i++) {
+            var total = new LongAdder();
+            totals[i] = total;
+            var evaluator = new Evaluator(generator, candidates[i], survival);
+            for(int from = 0; from < count; from += CHUNK) {
+                long start = first + from;
+                long end = first + Math.min(from + CHUNK, count);
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    var player = policy.create(evaluator, pool);
+                    for(long game = start; game < end; game++) {
+                        player.newGame(game);
+                        var engine = new GameEngine(size, size, game);
+                        player.playGame(engine, maxPieces);
+                        total.add(engine.getScore());
+                    }
+                }));
+            }
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        double[] means = new double[candidates.length];
+        for(int i = 0; i < candidates.length; i++) {
+            means[i] = totals[i].sum() / (double) count;
+        }
+        return means;
+    }
+
+    /**
+     * Create the next generation, keeping the elite and filling the rest with children of the better half
+     * @param current this generation
+     * @param order indexes of this generation, fittest first
+     * @param random chooses parents and noise
+     * @return the next generation
+     */
+    private double[][] breed(double[][] current, Integer[] order, SplittableRandom random) {
+        double[][] next = new double[populationSize][];
+        for(int i = 0; i < elite; i++) {
+            next[i] = current[order[i]].clone();
+        }
+        int parents = Math.max(2, populationSize / 2);
+        for(int i = elite; i < populationSize; i++) {
+            double[] mother = current[order[select(parents, random)]];
+            double[] father = current[order[select(parents, random)]];
+            double[] child = new double[Evaluator.WEIGHTS];
+            for(int feature = 0; feature < Evaluator.WEIGHTS; feature++) {
+                child[feature] = random.nextBoolean() ? mother[feature] : father[feature];
+            }
+            next[i] = mutate(child, random);
+        }
+        return next;
+    }
+
+    /**
+     * Pick a parent by a tournament of three, favouring the fitter
+     * @param parents the number of candidates that can be parents, fittest first
+     * @param random chooses the candidates
+     * @return rank of the parent
+     */
+    private static int select(int parents, SplittableRandom random) {
+        int best = random.nextInt(parents);
+        for(int i = 0; i < 2; i++) {
+            best = Math.min(best, random.nextInt(parents));
+        }
+        return best;
+    }
+
+    /**
+     * Add Gaussian noise to every weight but the points weight, in proportion to its size
+     * @param weights weights to change
+     * @param random the noise
+     * @return the same array
+     */
+    private double[] mutate(double[] weights, SplittableRandom random) {
+        for(int feature = 0; feature < Evaluator.WEIGHTS; feature++) {
+            if(feature != Evaluator.POINTS) {
+                weights[feature] += gaussian(random) * sigma * (Math.abs(weights[feature]) + 1);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Draw from the standard normal distribution
+     * @param random source of randomness
+     * @return normally distributed value
+     */
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    /**
+     * Describe a set of weights by name
+     * @param weights weights
+     * @return description
+     */
+    private static String describe(double[] weights) {
+        var builder = new StringBuilder();
+        for(int feature = 0; feature < Evaluator.WEIGHTS; feature++) {
+            builder.append(feature == 0 ? "" : ", ").append(Evaluator.getName(feature)).append(' ')
+                    .append(String.format(Locale.ROOT, "%.2f", weights[feature]));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Save the generation number, noise and population, replacing the old checkpoint only once the new one is
+     * complete
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void writeCheckpoint() throws IOException {
+        var temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try(var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(generation);
+            output.writeDouble(sigma);
+            output.writeInt(populationSize);
+            output.writeInt(Evaluator.WEIGHTS);
+            for(double[] weights : population) {
+                for(double weight : weights) {
+                    output.writeDouble(weight);
+                }
+            }
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the generation number, noise and population from the checkpoint
+     * @throws IOException if the checkpoint cannot be read, or does not match the options
+     */
+    private void readCheckpoint() throws IOException {
+        try(var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpoint)))) {
+            if(input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a tuner checkpoint: " + checkpoint);
+            }
+            generation = input.readInt();
+            sigma = input.readDouble();
+            int size = input.readInt();
+            int weights = input.readInt();
+            if(size != populationSize || weights != Evaluator.WEIGHTS) {
+                throw new IOException("Checkpoint has " + size + " candidates of " + weights + " weights, expected "
+                        + populationSize + " of " + Evaluator.WEIGHTS);
+            }
+            population = new double[size][weights];
+            for(double[] candidate : population) {
+                for(int feature = 0; feature < weights; feature++) {
+                    candidate[feature] = input.readDouble();
+                }
+            }
+        }
+    }
+}
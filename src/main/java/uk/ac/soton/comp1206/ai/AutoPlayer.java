@@ -0,0 +1,251 @@
+package uk.ac.soton.comp1206.ai;
+
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+/**
+ * The AutoPlayer picks the best move for the current and following pieces, for showing hints and for letting the
+ * computer play. A move may swap to the following piece and rotate it before it is placed.
+ *
+ * The search is anytime: it first scores every move on its own, then looks ahead to playing the other known piece
+ * afterwards, trying the best moves first. When the time budget runs out it returns the best move it has fully
+ * searched so far, so it can be called on the JavaFX thread without stalling a frame.
+ *
+ * Only boards of up to 64 blocks are supported. An AutoPlayer holds buffers for its search, so each thread should
+ * have its own.
+ */
+public class AutoPlayer implements PlacementPolicy {
+
+    /**
+     * The default time budget for a search, in ns
+     */
+    public static final long DEFAULT_BUDGET = 4_000_000;
+
+    /**
+     * Returned when there is no legal move
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Generates the legal moves
+     */
+    protected final MoveGenerator generator;
+
+    /**
+     * Judges the boards left after each move
+     */
+    protected final Evaluator evaluator;
+
+    /**
+     * How long a search may take, in ns
+     */
+    protected long budget = DEFAULT_BUDGET;
+
+    /**
+     * The moves at the first ply
+     */
+    private final int[] moves;
+
+    /**
+     * The value of each first move on its own, used to order the deeper search
+     */
+    private final double[] values;
+
+    /**
+     * The replies at the second ply
+     */
+    private final int[] replies;
+
+    /**
+     * The depth reached by the last search
+     */
+    private int depth;
+
+    /**
+     * Create an autoplayer for a board of the given size, with the default weights
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public AutoPlayer(int cols, int rows) {
+        this(new Evaluator(new MoveGenerator(cols, rows)));
+    }
+
+    /**
+     * Create an autoplayer which judges boards with the given evaluator
+     * @param evaluator evaluator for the board size
+     */
+    public AutoPlayer(Evaluator evaluator) {
+        this.evaluator = evaluator;
+        this.generator = evaluator.getGenerator();
+        moves = new int[generator.maxMoves()];
+        values = new double[generator.maxMoves()];
+        replies = new int[generator.maxMoves()];
+    }
+
+    /**
+     * Set how long a search may take
+     * @param budget time budget in ns
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Get the evaluator this autoplayer judges boards with
+     * @return evaluator
+     */
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Get the depth the last search finished, 1 if only single moves were scored and 2 if it looked ahead to the
+     * following piece
+     * @return depth reached
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Find the best move in a game
+     * @param engine the game engine
+     * @return the best packed move, or NO_MOVE
+     */
+    @Override
+    public int bestMove(GameEngine engine) {
+        if(engine.isGameOver() || engine.getCurrentPiece() == null) {
+            return NO_MOVE;
+        }
+        return bestMove(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                engine.getFollowingPiece().getPiece(), engine.getMultiplier());
+    }
+
+    /**
+     * Find the best move for the given board and pieces, within the time budget
+     * @param board board mask
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the current multiplier
+     * @return the best packed move, or NO_MOVE
+     */
+    public int bestMove(long board, int current, int following, int multiplier) {
+        long deadline = System.nanoTime() + budget;
+        int count = generator.generate(board, current, following, moves);
+        depth = 0;
+        if(count == 0) {
+            return NO_MOVE;
+        }
+
+        //Depth 1: score every move on its own
+        for(int i = 0; i < count; i++) {
+            long after = board | generator.mask(moves[i]);
+            long cleared = generator.fullLines(after);
+            values[i] = gain(after, cleared, multiplier) + evaluator.evaluate(after & ~cleared);
+        }
+        sort(count);
+        depth = 1;
+
+        //Depth 2: play the other known piece after each move, best first, until the time runs out
+        int best = 0;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        long previous = System.nanoTime();
+        for(int i = 0; i < count; i++) {
+            //Stop if the next move would most likely not finish in time, judging by how long the last one took
+            long now = System.nanoTime();
+            if(now + (now - previous) > deadline) {
+                break;
+            }
+            previous = now;
+            int move = moves[i];
+            int other = MoveGenerator.slot(move) == MoveGenerator.CURRENT ? following : current;
+            long after = board | generator.mask(move);
+            long cleared = generator.fullLines(after);
+            double value = gain(after, cleared, multiplier) + reply(after & ~cleared, other,
+                    cleared != 0 ? multiplier + 1 : 1);
+            if(value > bestValue) {
+                bestValue = value;
+                best = i;
+            }
+            if(i == count - 1) {
+                depth = 2;
+            }
+        }
+        return moves[best];
+    }
+
+    /**
+     * Find the value of the best placement of a piece
+     * @param board board mask
+     * @param piece piece number
+     * @param multiplier the multiplier
+     * @return value of the best placement, or the stuck penalty if it cannot be played
+     */
+    private double reply(long board, int piece, int multiplier) {
+        int count = generator.generate(board, piece, MoveGenerator.CURRENT, replies, 0);
+        if(count == 0) {
+            return evaluator.stuck() + evaluator.evaluate(board);
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            long after = board | generator.mask(replies[i]);
+            long cleared = generator.fullLines(after);
+            best = Math.max(best, gain(after, cleared, multiplier) + evaluator.evaluate(after & ~cleared));
+        }
+        return best;
+    }
+
+    /**
+     * Get the weighted points scored by clearing lines
+     * @param after the board after a piece was played
+     * @param cleared the blocks in full lines
+     * @param multiplier the multiplier
+     * @return weighted points, or 0 if no lines were cleared
+     */
+    private double gain(long after, long cleared, int multiplier) {
+        if(cleared == 0) {
+            return 0;
+        }
+        int lines = generator.countFullLines(after);
+        return evaluator.gain(lines, Long.bitCount(cleared), multiplier);
+    }
+
+    /**
+     * Sort the first moves by their value, best first, so the deeper search sees the most promising moves first
+     * @param count number of moves
+     */
+    private void sort(int count) {
+        for(int i = 1; i < count; i++) {
+            int move = moves[i];
+            double value = values[i];
+            int j = i - 1;
+            while(j >= 0 && values[j] < value) {
+                moves[j + 1] = moves[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * Make a move in a game engine, swapping and rotating the pieces as needed
+     * @param engine the game engine
+     * @param move packed move
+     * @return whether the piece was played
+     */
+    public static boolean play(GameEngine engine, int move) {
+        if(MoveGenerator.slot(move) == MoveGenerator.FOLLOWING) {
+            engine.swapCurrentPiece();
+        }
+        GamePiece piece = engine.getCurrentPiece();
+        engine.rotateCurrentPiece(MoveGenerator.rotation(move) - piece.getRotation());
+        return engine.play(MoveGenerator.x(move), MoveGenerator.y(move));
+    }
+}
@@ -0,0 +1,373 @@
+package uk.ac.soton.comp1206.ai;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+import uk.ac.soton.comp1206.game.PieceShape;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * The Evaluator judges how good a board is to keep playing on, from its board mask. It adds up a weighted set of
+ * features: how many blocks are filled, how many empty blocks no piece bigger than a Dot can reach (holes), how many
+ * empty blocks have no empty neighbour (isolated), how many lines are one or two blocks from being cleared, and how
+ * many of the 15 pieces could still be played somewhere.
+ *
+ * The points scored by a move are weighted too, so that the search can trade points now against a better board, as is
+ * keeping the multiplier streak going by clearing lines again.
+ *
+ * Finding the playable pieces and holes is the slowest part, so on a 5x5 board they can be looked up in a precomputed
+ * SurvivalTable instead. Holes are counted up to 15.
+ *
+ * The weights can be tuned and saved to a weights file, which the computer players load at startup in place of the
+ * hand picked defaults.
+ *
+ * An Evaluator never changes after it is created, so it can be shared between threads.
+ */
+public class Evaluator {
+
+    private static final Logger logger = LogManager.getLogger(Evaluator.class);
+
+    /**
+     * Weight of each point scored
+     */
+    public static final int POINTS = 0;
+
+    /**
+     * Weight of each filled block
+     */
+    public static final int FILLED = 1;
+
+    /**
+     * Weight of each hole, an empty block only a Dot can fill
+     */
+    public static final int HOLES = 2;
+
+    /**
+     * Weight of each isolated block, an empty block with no empty neighbours
+     */
+    public static final int ISOLATED = 3;
+
+    /**
+     * Weight of each line that is one or two blocks from being cleared
+     */
+    public static final int NEAR_LINES = 4;
+
+    /**
+     * Weight of each piece that can still be played somewhere
+     */
+    public static final int PLAYABLE = 5;
+
+    /**
+     * Weight of being left unable to play the piece that is known to come next
+     */
+    public static final int STUCK = 6;
+
+    /**
+     * Weight of the multiplier a move which clears lines carries into the next move
+     */
+    public static final int STREAK = 7;
+
+    /**
+     * The number of weights
+     */
+    public static final int WEIGHTS = 8;
+
+    /**
+     * The name of each weight in a weights file
+     */
+    private static final String[] NAMES = {"points", "filled", "holes", "isolated", "near_lines", "playable", "stuck",
+            "streak"};
+
+    /**
+     * The file tuned weights are saved in
+     */
+    public static final String WEIGHTS_FILE = "weights.txt";
+
+    /**
+     * Hand picked weights which play a reasonable game on the standard 5x5 board
+     */
+    private static final double[] DEFAULT_WEIGHTS = {1, -4, -30, -12, 8, 6, -400, 0};
+
+    /**
+     * The move generator for the board size being evaluated
+     */
+    private final MoveGenerator generator;
+
+    /**
+     * The weight of each feature
+     */
+    private final double[] weights;
+
+    /**
+     * Every block on the board
+     */
+    private final long full;
+
+    /**
+     * Every block except those in the first column
+     */
+    private final long notFirstColumn;
+
+    /**
+     * Every block except those in the last column
+     */
+    private final long notLastColumn;
+
+    /**
+     * Whether each piece has more than one block
+     */
+    private final boolean[] large = new boolean[GamePiece.PIECES];
+
+    /**
+     * Precomputed playable pieces and holes of every board, or null to compute them for each board
+     */
+    private final SurvivalTable survival;
+
+    /**
+     * Create an evaluator with the default weights
+     * @param generator move generator for the board size
+     */
+    public Evaluator(MoveGenerator generator) {
+        this(generator, DEFAULT_WEIGHTS);
+    }
+
+    /**
+     * Create an evaluator with the given weights
+     * @param generator move generator for the board size
+     * @param weights the weight of each feature, indexed by the constants of this class
+     */
+    public Evaluator(MoveGenerator generator, double[] weights) {
+        this(generator, weights, null);
+    }
+
+    /**
+     * Create an evaluator with the given weights, which looks up the playable pieces and holes of each board in a
+     * survival table instead of computing them
+     * @param generator move generator for the board size
+     * @param weights the weight of each feature, indexed by the constants of this class
+     * @param survival survival table for the board size, or null to compute every board
+     */
+    public Evaluator(MoveGenerator generator, double[] weights, SurvivalTable survival) {
+        if(weights.length != WEIGHTS) {
+            throw new IllegalArgumentException("Expected " + WEIGHTS + " weights, got " + weights.length);
+        }
+        if(survival != null
+                && (survival.getCols() != generator.getCols() || survival.getRows() != generator.getRows())) {
+            throw new IllegalArgumentException("Survival table is for a different board size");
+        }
+        this.generator = generator;
+        this.weights = weights.clone();
+        this.survival = survival;
+
+        int cols = generator.getCols();
+        int rows = generator.getRows();
+        int blocks = cols * rows;
+        full = blocks == 64 ? -1L : (1L << blocks) - 1;
+        notFirstColumn = full & ~generator.lineMask(rows);
+        notLastColumn = full & ~generator.lineMask(rows + cols - 1);
+
+        for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+            large[piece] = PieceShape.get(piece, 0).getCellCount() > 1;
+        }
+    }
+
+    /**
+     * Get the default weights
+     * @return a copy of the default weights
+     */
+    public static double[] defaultWeights() {
+        return DEFAULT_WEIGHTS.clone();
+    }
+
+    /**
+     * Get the name of a weight, as used in a weights file
+     * @param feature feature number
+     * @return name
+     */
+    public static String getName(int feature) {
+        return NAMES[feature];
+    }
+
+    /**
+     * Read weights from a weights file. Each line holds a name and its weight, as name=value, and any weight not in
+     * the file keeps its default.
+     * @param file file to read
+     * @return the weights
+     * @throws IOException if the file cannot be read, or a weight is not a number
+     */
+    public static double[] readWeights(Path file) throws IOException {
+        var properties = new Properties();
+        try(Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        }
+        double[] weights = defaultWeights();
+        for(int feature = 0; feature < WEIGHTS; feature++) {
+            String value = properties.getProperty(NAMES[feature]);
+            if(value != null) {
+                try {
+                    weights[feature] = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Weight " + NAMES[feature] + " is not a number: " + value);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Write weights to a weights file
+     * @param file file to write
+     * @param weights the weights, indexed by the constants of this class
+     * @param comment written at the top of the file
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeWeights(Path file, double[] weights, String comment) throws IOException {
+        try(Writer writer = Files.newBufferedWriter(file)) {
+            writer.write("# " + comment + "\n");
+            for(int feature = 0; feature < WEIGHTS; feature++) {
+                writer.write(NAMES[feature] + "=" + String.format(Locale.ROOT, "%.6g", weights[feature]) + "\n");
+            }
+        }
+    }
+
+    /**
+     * Load the weights the computer players use: the tuned weights from the default weights file if there is one,
+     * otherwise the defaults
+     * @return the weights
+     */
+    public static double[] loadWeights() {
+        var file = Path.of(WEIGHTS_FILE);
+        if(!Files.exists(file)) {
+            return defaultWeights();
+        }
+        try {
+            double[] weights = readWeights(file);
+            logger.info("Loaded weights {}", file);
+            return weights;
+        } catch (IOException e) {
+            logger.error("Unable to load weights: {}", e.getMessage());
+            return defaultWeights();
+        }
+    }
+
+    /**
+     * Get the weights of this evaluator
+     * @return a copy of the weights
+     */
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Get the weight of one feature
+     * @param feature feature number
+     * @return weight
+     */
+    public double getWeight(int feature) {
+        return weights[feature];
+    }
+
+    /**
+     * Get the move generator this evaluator was created for
+     * @return move generator
+     */
+    public MoveGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Evaluate a board, after any full lines have been cleared
+     * @param board board mask
+     * @return how good the board is, higher is better
+     */
+    public double evaluate(long board) {
+        long empty = ~board & full;
+
+        int features = survival != null ? survival.get(board) : survivalFeatures(board);
+        int playable = features & 0xF;
+        int holes = features >>> 4;
+
+        //Empty blocks with an empty block to the left, right, above or below
+        int cols = generator.getCols();
+        long neighbours = (empty << 1 & notFirstColumn) | (empty >>> 1 & notLastColumn)
+                | (empty << cols & full) | (empty >>> cols);
+        int isolated = Long.bitCount(empty & ~neighbours);
+
+        int nearLines = 0;
+        int lines = generator.getRows() + cols;
+        for(int line = 0; line < lines; line++) {
+            int missing = Long.bitCount(empty & generator.lineMask(line));
+            if(missing > 0 && missing <= 2) {
+                nearLines++;
+            }
+        }
+
+        return weights[FILLED] * Long.bitCount(board)
+                + weights[HOLES] * holes
+                + weights[ISOLATED] * isolated
+                + weights[NEAR_LINES] * nearLines
+                + weights[PLAYABLE] * playable;
+    }
+
+    /**
+     * Work out how many pieces can be played on a board, and how many holes it has, which are the slowest features
+     * to find
+     * @param board board mask
+     * @return the number of pieces that can be played in the low 4 bits, and the number of holes, at most 15, in the
+     * next 4 bits
+     */
+    public int survivalFeatures(long board) {
+        //Every block a piece bigger than a Dot could fill, and how many pieces can be played at all
+        long covered = 0;
+        int playable = 0;
+        for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+            long coverage = generator.coverage(board, piece);
+            if(coverage != 0) {
+                playable++;
+                if(large[piece]) {
+                    covered |= coverage;
+                }
+            }
+        }
+        int holes = Long.bitCount(~board & full & ~covered);
+        return playable | Math.min(holes, 15) << 4;
+    }
+
+    /**
+     * Get the value of clearing lines: the points scored, and the multiplier kept going for the next move
+     * @param lines number of lines cleared
+     * @param blocks number of blocks cleared
+     * @param multiplier the multiplier the lines are scored with
+     * @return weighted gain
+     */
+    public double gain(int lines, int blocks, int multiplier) {
+        return weights[POINTS] * GameEngine.scoreFor(lines, blocks, multiplier) + weights[STREAK] * (multiplier + 1);
+    }
+
+    /**
+     * Get the value of being unable to play the next known piece
+     * @return weighted penalty
+     */
+    public double stuck() {
+        return weights[STUCK];
+    }
+
+    /**
+     * Return a string representation of this evaluator
+     * @return the weights
+     */
+    @Override
+    public String toString() {
+        return "Evaluator " + Arrays.toString(weights);
+    }
+}
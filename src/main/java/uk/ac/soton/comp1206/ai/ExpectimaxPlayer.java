@@ -0,0 +1,506 @@
+package uk.ac.soton.comp1206.ai;
+
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+import uk.ac.soton.comp1206.game.Zobrist;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ExpectimaxPlayer is the strong computer player. Only the current and following pieces are known, and every new
+ * piece is drawn evenly from the 15 pieces, so it searches a fixed number of placements ahead and averages over each
+ * piece that could be drawn next.
+ *
+ * After any move the piece that was not played becomes the current piece, and a new unknown piece becomes the
+ * following piece. A max node picks the best move for a board and two pieces; a chance node averages the max nodes
+ * for each of the 15 pieces that could follow.
+ *
+ * The search is split into tasks on a ForkJoinPool: every move at the root is its own task, and when at least
+ * SPLIT_PLIES placements are left after it, so is every piece that could be drawn next. Below that, subtrees are
+ * searched on the thread that reached them. The number of nodes searched is counted so the search speed can be
+ * reported.
+ *
+ * Chance nodes are cached in a transposition table shared by every thread, keyed by the Zobrist hash of the board, the
+ * piece which will be current and the multiplier. The hash is updated from the move's own hash as the search goes, so
+ * boards are never hashed from scratch except when lines are cleared.
+ *
+ * Only boards of up to 64 blocks are supported. A player can be used by several threads at once.
+ */
+public class ExpectimaxPlayer implements PlacementPolicy {
+
+    /**
+     * The default number of placements to search ahead
+     */
+    public static final int DEFAULT_DEPTH = 2;
+
+    /**
+     * The chance node after a root move is split into a task for each piece if at least this many placements are left
+     */
+    private static final int SPLIT_PLIES = 2;
+
+    /**
+     * The default transposition table has 2^DEFAULT_TABLE_BITS buckets
+     */
+    public static final int DEFAULT_TABLE_BITS = 18;
+
+    /**
+     * Generates the legal moves
+     */
+    protected final MoveGenerator generator;
+
+    /**
+     * Judges the boards at the leaves of the search
+     */
+    protected final Evaluator evaluator;
+
+    /**
+     * The pool the search runs on
+     */
+    protected final ForkJoinPool pool;
+
+    /**
+     * Number of placements to search ahead
+     */
+    protected final int depth;
+
+    /**
+     * Caches the values of chance nodes, or null for no caching
+     */
+    protected final TranspositionTable table;
+
+    /**
+     * Number of nodes searched since the player was created
+     */
+    private final LongAdder nodes = new LongAdder();
+
+    /**
+     * Create a player for a board of the given size, searching the default depth on the common pool
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public ExpectimaxPlayer(int cols, int rows) {
+        this(new Evaluator(new MoveGenerator(cols, rows)), DEFAULT_DEPTH, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a player with a transposition table of the default size
+     * @param evaluator evaluator for the board size
+     * @param depth number of placements to search ahead, at least 1
+     * @param pool the pool to run the search on
+     */
+    public ExpectimaxPlayer(Evaluator evaluator, int depth, ForkJoinPool pool) {
+        this(evaluator, depth, pool, new TranspositionTable(DEFAULT_TABLE_BITS));
+    }
+
+    /**
+     * Create a player
+     * @param evaluator evaluator for the board size
+     * @param depth number of placements to search ahead, at least 1
+     * @param pool the pool to run the search on
+     * @param table transposition table to cache results in, or null for none
+     */
+    public ExpectimaxPlayer(Evaluator evaluator, int depth, ForkJoinPool pool, TranspositionTable table) {
+        if(depth < 1) {
+            throw new IllegalArgumentException("Depth must be at least 1: " + depth);
+        }
+        this.evaluator = evaluator;
+        this.generator = evaluator.getGenerator();
+        this.depth = depth;
+        this.pool = pool;
+        this.table = table;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the number of nodes searched by this player so far
+     * @return number of nodes
+     */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * Find the best move in a game
+     * @param engine the game engine
+     * @return the best packed move, or AutoPlayer.NO_MOVE
+     */
+    @Override
+    public int bestMove(GameEngine engine) {
+        if(engine.isGameOver() || engine.getCurrentPiece() == null) {
+            return AutoPlayer.NO_MOVE;
+        }
+        return bestMove(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                engine.getFollowingPiece().getPiece(), engine.getMultiplier());
+    }
+
+    /**
+     * Find the move with the best expected value for the given board and pieces
+     * @param board board mask
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the current multiplier
+     * @return the best packed move, or AutoPlayer.NO_MOVE
+     */
+    public int bestMove(long board, int current, int following, int multiplier) {
+        var tasks = search(board, current, following, multiplier);
+        int best = best(tasks);
+        return best < 0 ? AutoPlayer.NO_MOVE : tasks[best].move;
+    }
+
+    /**
+     * Find the expected value of the best move for the given board and pieces
+     * @param board board mask
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the current multiplier
+     * @return value of the best move, or negative infinity if no move can be played
+     */
+    public double value(long board, int current, int following, int multiplier) {
+        var tasks = search(board, current, following, multiplier);
+        int best = best(tasks);
+        return best < 0 ? Double.NEGATIVE_INFINITY : tasks[best].value;
+    }
+
+    /**
+     * Find the expected value of one move for the given board and pieces
+     * @param board board mask
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the current multiplier
+     * @param move the packed move
+     * @return value of the move, or negative infinity if it cannot be played
+     */
+    public double value(long board, int current, int following, int multiplier, int move) {
+        for(var task : search(board, current, following, multiplier)) {
+            if(task.move == move) {
+                return task.value;
+            }
+        }
+        return Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Search every move at the root on the pool
+     * @param board board mask
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the current multiplier
+     * @return the finished task of each move
+     */
+    private MoveTask[] search(long board, int current, int following, int multiplier) {
+        int[] moves = new int[generator.maxMoves()];
+        int count = generator.generate(board, current, following, moves);
+        long hash = Zobrist.hash(board);
+        var tasks = new MoveTask[count];
+        for(int i = 0; i < count; i++) {
+            tasks[i] = new MoveTask(board, hash, moves[i], MoveGenerator.slot(moves[i]) == MoveGenerator.CURRENT
+                    ? following : current, multiplier);
+        }
+        if(count > 0) {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+        return tasks;
+    }
+
+    /**
+     * Get the index of the move with the highest value, the first of any ties
+     * @param tasks the finished root tasks
+     * @return index of the best, or -1 if there are none
+     */
+    private static int best(MoveTask[] tasks) {
+        if(tasks.length == 0) {
+            return -1;
+        }
+        int best = 0;
+        for(int i = 1; i < tasks.length; i++) {
+            if(tasks[i].value > tasks[best].value) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get the value of a max node: the best move for a board and two pieces
+     * @param board board mask
+     * @param hash Zobrist hash of the board
+     * @param current current piece number
+     * @param following following piece number
+     * @param multiplier the multiplier
+     * @param plies placements left to search, at least 1
+     * @param buffers a move buffer for each ply
+     * @return value of the best move
+     */
+    private double max(long board, long hash, int current, int following, int multiplier, int plies,
+                       int[][] buffers) {
+        nodes.increment();
+        int[] moves = buffers[plies];
+        int count = generator.generate(board, current, following, moves);
+        if(count == 0) {
+            return evaluator.stuck() + evaluator.evaluate(board);
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            int move = moves[i];
+            long after = board | generator.mask(move);
+            long cleared = generator.fullLines(after);
+            int other = MoveGenerator.slot(move) == MoveGenerator.CURRENT ? following : current;
+            double value = gain(after, cleared, multiplier) + chance(after & ~cleared,
+                    hashAfter(hash, move, cleared), other, cleared != 0 ? multiplier + 1 : 1, plies - 1, buffers);
+            best = Math.max(best, value);
+        }
+        return best;
+    }
+
+    /**
+     * Get the value of a chance node: the average over every piece that could be drawn next
+     * @param board board mask
+     * @param hash Zobrist hash of the board
+     * @param current the piece which will be current
+     * @param multiplier the multiplier
+     * @param plies placements left to search
+     * @param buffers a move buffer for each ply
+     * @return expected value
+     */
+    private double chance(long board, long hash, int current, int multiplier, int plies, int[][] buffers) {
+        if(plies == 0) {
+            nodes.increment();
+            return evaluator.evaluate(board);
+        }
+        long key = key(hash, current, multiplier);
+        double cached = probe(key, plies);
+        if(!Double.isNaN(cached)) {
+            return cached;
+        }
+        double total = 0;
+        if(plies == 1) {
+            //At the last placement, the piece left over does not matter, so each piece only needs searching once
+            nodes.add(GamePiece.PIECES);
+            double currentBest = lastPlacement(board, current, multiplier, buffers[1]);
+            double stuck = Double.NaN;
+            for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+                double best = piece == current ? currentBest
+                        : Math.max(currentBest, lastPlacement(board, piece, multiplier, buffers[1]));
+                if(best == Double.NEGATIVE_INFINITY) {
+                    if(Double.isNaN(stuck)) {
+                        stuck = evaluator.stuck() + evaluator.evaluate(board);
+                    }
+                    best = stuck;
+                }
+                total += best;
+            }
+        } else {
+            for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+                total += max(board, hash, current, piece, multiplier, plies, buffers);
+            }
+        }
+        double value = total / GamePiece.PIECES;
+        store(key, plies, value);
+        return value;
+    }
+
+    /**
+     * Get the transposition table key of a chance node
+     * @param hash Zobrist hash of the board
+     * @param current the piece which will be current
+     * @param multiplier the multiplier
+     * @return key
+     */
+    private static long key(long hash, int current, int multiplier) {
+        return hash ^ Zobrist.piece(MoveGenerator.CURRENT, current) ^ Zobrist.multiplier(multiplier);
+    }
+
+    /**
+     * Look up a chance node in the transposition table
+     * @param key key of the node
+     * @param plies placements left to search
+     * @return the cached value, or NaN if there is none
+     */
+    private double probe(long key, int plies) {
+        return table == null ? Double.NaN : table.probe(key, plies);
+    }
+
+    /**
+     * Store a chance node in the transposition table
+     * @param key key of the node
+     * @param plies placements searched below it
+     * @param value its value
+     */
+    private void store(long key, int plies, double value) {
+        if(table != null) {
+            table.store(key, plies, value);
+        }
+    }
+
+    /**
+     * Get the Zobrist hash of the board after a move
+     * @param hash hash of the board before the move
+     * @param move packed move
+     * @param cleared the blocks cleared by the move
+     * @return hash of the board after the move and any clear
+     */
+    private long hashAfter(long hash, int move, long cleared) {
+        hash ^= generator.hash(move);
+        return cleared == 0 ? hash : hash ^ Zobrist.hash(cleared);
+    }
+
+    /**
+     * Get the value of the best placement of one piece, when it is the last placement searched
+     * @param board board mask
+     * @param piece piece number
+     * @param multiplier the multiplier
+     * @param moves buffer for the moves
+     * @return value of the best placement, or negative infinity if the piece cannot be played
+     */
+    private double lastPlacement(long board, int piece, int multiplier, int[] moves) {
+        int count = generator.generate(board, piece, MoveGenerator.CURRENT, moves, 0);
+        nodes.add(count);
+        double best = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            long after = board | generator.mask(moves[i]);
+            long cleared = generator.fullLines(after);
+            best = Math.max(best, gain(after, cleared, multiplier) + evaluator.evaluate(after & ~cleared));
+        }
+        return best;
+    }
+
+    /**
+     * Get the weighted points scored by clearing lines
+     * @param after the board after a piece was played
+     * @param cleared the blocks in full lines
+     * @param multiplier the multiplier
+     * @return weighted points, or 0 if no lines were cleared
+     */
+    private double gain(long after, long cleared, int multiplier) {
+        if(cleared == 0) {
+            return 0;
+        }
+        int lines = generator.countFullLines(after);
+        return evaluator.gain(lines, Long.bitCount(cleared), multiplier);
+    }
+
+    /**
+     * Create the move buffers for a search of the given number of plies
+     * @param plies placements left to search
+     * @return a buffer for each ply
+     */
+    private int[][] buffers(int plies) {
+        return new int[plies + 1][generator.maxMoves()];
+    }
+
+    /**
+     * Finds the value of one move at the root, storing it in the task
+     */
+    @SuppressWarnings("serial")
+    private class MoveTask extends RecursiveTask<Double> {
+
+        private final long board;
+        private final long hash;
+        private final int move;
+        private final int other;
+        private final int multiplier;
+
+        /**
+         * The value of the move, once the task is done
+         */
+        private double value;
+
+        MoveTask(long board, long hash, int move, int other, int multiplier) {
+            this.board = board;
+            this.hash = hash;
+            this.move = move;
+            this.other = other;
+            this.multiplier = multiplier;
+        }
+
+        @Override
+        protected Double compute() {
+            nodes.increment();
+            long after = board | generator.mask(move);
+            long cleared = generator.fullLines(after);
+            value = gain(after, cleared, multiplier) + new ChanceTask(after & ~cleared,
+                    hashAfter(hash, move, cleared), other, cleared != 0 ? multiplier + 1 : 1, depth - 1).compute();
+            return value;
+        }
+    }
+
+    /**
+     * Finds the value of a chance node, splitting it into a task for each piece if there is enough work below it
+     */
+    @SuppressWarnings("serial")
+    private class ChanceTask extends RecursiveTask<Double> {
+
+        private final long board;
+        private final long hash;
+        private final int current;
+        private final int multiplier;
+        private final int plies;
+
+        ChanceTask(long board, long hash, int current, int multiplier, int plies) {
+            this.board = board;
+            this.hash = hash;
+            this.current = current;
+            this.multiplier = multiplier;
+            this.plies = plies;
+        }
+
+        @Override
+        protected Double compute() {
+            if(plies < SPLIT_PLIES) {
+                return chance(board, hash, current, multiplier, plies, buffers(plies));
+            }
+            long key = key(hash, current, multiplier);
+            double cached = probe(key, plies);
+            if(!Double.isNaN(cached)) {
+                return cached;
+            }
+            var tasks = new PieceTask[GamePiece.PIECES];
+            for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+                tasks[piece] = new PieceTask(board, hash, current, piece, multiplier, plies);
+            }
+            invokeAll(tasks);
+            double total = 0;
+            for(var task : tasks) {
+                total += task.join();
+            }
+            double value = total / GamePiece.PIECES;
+            store(key, plies, value);
+            return value;
+        }
+    }
+
+    /**
+     * Finds the value of the max node for one piece that could be drawn
+     */
+    @SuppressWarnings("serial")
+    private class PieceTask extends RecursiveTask<Double> {
+
+        private final long board;
+        private final long hash;
+        private final int current;
+        private final int following;
+        private final int multiplier;
+        private final int plies;
+
+        PieceTask(long board, long hash, int current, int following, int multiplier, int plies) {
+            this.board = board;
+            this.hash = hash;
+            this.current = current;
+            this.following = following;
+            this.multiplier = multiplier;
+            this.plies = plies;
+        }
+
+        @Override
+        protected Double compute() {
+            return max(board, hash, current, following, multiplier, plies, buffers(plies));
+        }
+    }
+}
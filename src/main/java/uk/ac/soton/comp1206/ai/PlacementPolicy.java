@@ -0,0 +1,44 @@
+package uk.ac.soton.comp1206.ai;
+
+import uk.ac.soton.comp1206.game.GameEngine;
+
+/**
+ * A PlacementPolicy is a computer player for the headless engine: given a game, it chooses the move to play next.
+ * Simulations and tournaments play any policy the same way, so a new heuristic only needs to implement this.
+ *
+ * Moves are packed as by MoveGenerator, and played with AutoPlayer.play. A policy may keep buffers between moves, so
+ * each thread should have its own unless the policy says otherwise.
+ */
+public interface PlacementPolicy {
+
+    /**
+     * Called before each game starts
+     * @param seed the seed of the game's pieces
+     */
+    default void newGame(long seed) {
+    }
+
+    /**
+     * Choose the move to play in a game
+     * @param engine the game
+     * @return packed move, or AutoPlayer.NO_MOVE to let the turn time out
+     */
+    int bestMove(GameEngine engine);
+
+    /**
+     * Play a new game to the end, or until the piece limit, moving as soon as a move is chosen
+     * @param engine a new game, which is initialised first
+     * @param maxPieces the most pieces to play
+     */
+    default void playGame(GameEngine engine, int maxPieces) {
+        engine.initialise();
+        while(!engine.isGameOver() && engine.getPiecesPlayed() < maxPieces) {
+            int move = bestMove(engine);
+            if(move == AutoPlayer.NO_MOVE) {
+                engine.timeout();
+            } else {
+                AutoPlayer.play(engine, move);
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A PositionDataset reads the positions recorded from headless games, for training models offline. A dataset is a
+ * directory of shard files, one written by each exporting thread, and every shard is a 64 byte header followed by
+ * fixed size records, all little endian so they can be read directly by other tools.
+ *
+ * The header holds the magic number, version, record size, board columns and rows, the seed of game 0, and the
+ * number of records and games written. The games are shared out between the shards as they are played, so
+ * each record also says which game it came from. Each 32 byte record holds:
+ * <ul>
+ *     <li>0: the board mask before the move, one bit per block as in BitGrid</li>
+ *     <li>8: the move chosen, packed as by MoveGenerator</li>
+ *     <li>12, 13: the current and following piece numbers</li>
+ *     <li>14, 15: the lives and multiplier, the multiplier capped at 255</li>
+ *     <li>16: the score before the move</li>
+ *     <li>20: the final score of the game</li>
+ *     <li>24: the number of pieces played before the move</li>
+ *     <li>28: the number of the game, which was played on the header seed plus the number</li>
+ * </ul>
+ *
+ * Every shard is memory mapped read only when the dataset is opened, and a record is returned as a view of the mapped
+ * file, so reading never copies. The dataset can be read from any number of threads.
+ */
+public class PositionDataset {
+
+    /**
+     * The extension of shard files in a dataset directory
+     */
+    public static final String EXTENSION = ".positions";
+
+    static final int MAGIC = 0x31535054;
+    static final int VERSION = 1;
+
+    /**
+     * Size of the header at the start of each shard
+     */
+    public static final int HEADER = 64;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int RECORD_OFFSET = 8;
+    static final int COLS_OFFSET = 12;
+    static final int ROWS_OFFSET = 16;
+    static final int GAMES_OFFSET = 20;
+    static final int SEED_OFFSET = 24;
+    static final int COUNT_OFFSET = 32;
+
+    /**
+     * Size of a record, and the offset of each field in it
+     */
+    public static final int RECORD = 32;
+    public static final int BOARD = 0;
+    public static final int MOVE = 8;
+    public static final int CURRENT = 12;
+    public static final int FOLLOWING = 13;
+    public static final int LIVES = 14;
+    public static final int MULTIPLIER = 15;
+    public static final int SCORE = 16;
+    public static final int FINAL_SCORE = 20;
+    public static final int TURN = 24;
+    public static final int GAME = 28;
+
+    /**
+     * Records mapped by one buffer. A mapping cannot be larger than 2GB, so a large shard takes several.
+     */
+    private static final int SEGMENT = 1 << 25;
+
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The mapped records, and the number of the first record in each
+     */
+    private final ByteBuffer[] segments;
+    private final long[] starts;
+    private final long size;
+    private final int shards;
+
+    private PositionDataset(int cols, int rows, List<ByteBuffer> segments, List<Long> starts, long size, int shards) {
+        this.cols = cols;
+        this.rows = rows;
+        this.segments = segments.toArray(new ByteBuffer[0]);
+        this.starts = starts.stream().mapToLong(Long::longValue).toArray();
+        this.size = size;
+        this.shards = shards;
+    }
+
+    /**
+     * Open every shard in a dataset directory
+     * @param directory the dataset directory
+     * @return the dataset
+     * @throws IOException if a shard cannot be read, or the shards do not match
+     */
+    public static PositionDataset open(Path directory) throws IOException {
+        List<Path> files;
+        try(var listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+        }
+        if(files.isEmpty()) {
+            throw new IOException("No position shards in " + directory);
+        }
+
+        int cols = 0;
+        int rows = 0;
+        long size = 0;
+        var segments = new ArrayList<ByteBuffer>();
+        var starts = new ArrayList<Long>();
+        for(Path file : files) {
+            try(var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                while(header.hasRemaining() && channel.read(header) >= 0) {
+                }
+                if(header.hasRemaining() || header.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException("Not a position shard: " + file);
+                }
+                if(header.getInt(VERSION_OFFSET) != VERSION || header.getInt(RECORD_OFFSET) != RECORD) {
+                    throw new IOException("Unsupported position shard version: " + file);
+                }
+                if(cols == 0) {
+                    cols = header.getInt(COLS_OFFSET);
+                    rows = header.getInt(ROWS_OFFSET);
+                } else if(cols != header.getInt(COLS_OFFSET) || rows != header.getInt(ROWS_OFFSET)) {
+                    throw new IOException("Shard " + file + " is for a different board size");
+                }
+                long count = header.getLong(COUNT_OFFSET);
+                if(HEADER + count * RECORD > channel.size()) {
+                    throw new IOException("Position shard truncated: " + file);
+                }
+
+                //The mapping stays valid once the channel is closed
+                for(long first = 0; first < count; first += SEGMENT) {
+                    long records = Math.min(SEGMENT, count - first);
+                    var segment = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + first * RECORD,
+                            records * RECORD);
+                    segments.add(segment.order(ByteOrder.LITTLE_ENDIAN));
+                    starts.add(size + first);
+                }
+                size += count;
+            }
+        }
+        return new PositionDataset(cols, rows, segments, starts, size, files.size());
+    }
+
+    /**
+     * Get the number of records in the dataset
+     * @return records
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get the number of shards the dataset was read from
+     * @return shards
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Get the number of columns of the boards recorded
+     * @return columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows of the boards recorded
+     * @return rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get a record, as a read only view of the mapped shard starting at the record
+     * @param index record number
+     * @return view of the record, little endian
+     */
+    public ByteBuffer get(long index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No record " + index + " in a dataset of " + size);
+        }
+        int segment = Arrays.binarySearch(starts, index);
+        if(segment < 0) {
+            segment = -segment - 2;
+        }
+        int offset = (int) (index - starts[segment]) * RECORD;
+        return segments[segment].slice(offset, RECORD).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Get a record chosen uniformly at random
+     * @param random source of randomness
+     * @return view of the record
+     */
+    public ByteBuffer sample(RandomGenerator random) {
+        return get(random.nextLong(size));
+    }
+
+    /**
+     * Stream every record in order. The stream can be made parallel.
+     * @return a stream of record views
+     */
+    public Stream<ByteBuffer> stream() {
+        return LongStream.range(0, size).mapToObj(this::get);
+    }
+
+    /**
+     * Get the mapped records in bulk, as read only views holding whole records end to end, for handing to code that
+     * reads many records at once
+     * @return views of every mapped segment, in record order
+     */
+    public List<ByteBuffer> buffers() {
+        return Arrays.stream(segments).map(segment -> segment.duplicate().order(ByteOrder.LITTLE_ENDIAN)).toList();
+    }
+
+    /**
+     * Get the board mask of a record
+     * @param record record view
+     * @return board mask before the move
+     */
+    public static long getBoard(ByteBuffer record) {
+        return record.getLong(BOARD);
+    }
+
+    /**
+     * Get the move chosen in a record
+     * @param record record view
+     * @return packed move
+     */
+    public static int getMove(ByteBuffer record) {
+        return record.getInt(MOVE);
+    }
+
+    /**
+     * Get the current piece of a record
+     * @param record record view
+     * @return piece number
+     */
+    public static int getCurrentPiece(ByteBuffer record) {
+        return record.get(CURRENT);
+    }
+
+    /**
+     * Get the following piece of a record
+     * @param record record view
+     * @return piece number
+     */
+    public static int getFollowingPiece(ByteBuffer record) {
+        return record.get(FOLLOWING);
+    }
+
+    /**
+     * Get the lives left in a record
+     * @param record record view
+     * @return lives
+     */
+    public static int getLives(ByteBuffer record) {
+        return record.get(LIVES);
+    }
+
+    /**
+     * Get the multiplier of a record
+     * @param record record view
+     * @return multiplier, capped at 255
+     */
+    public static int getMultiplier(ByteBuffer record) {
+        return record.get(MULTIPLIER) & 0xFF;
+    }
+
+    /**
+     * Get the score before the move of a record
+     * @param record record view
+     * @return score
+     */
+    public static int getScore(ByteBuffer record) {
+        return record.getInt(SCORE);
+    }
+
+    /**
+     * Get the final score of the game a record was taken from
+     * @param record record view
+     * @return final score
+     */
+    public static int getFinalScore(ByteBuffer record) {
+        return record.getInt(FINAL_SCORE);
+    }
+
+    /**
+     * Get the number of pieces played before the move of a record
+     * @param record record view
+     * @return pieces played
+     */
+    public static int getTurn(ByteBuffer record) {
+        return record.getInt(TURN);
+    }
+
+    /**
+     * Get the number of the game a record was taken from
+     * @param record record view
+     * @return game number, the seed of the game less the header seed
+     */
+    public static int getGame(ByteBuffer record) {
+        return record.getInt(GAME);
+    }
+}
@@ -0,0 +1,198 @@
+package uk.ac.soton.comp1206.ai;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GameEngine;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A PositionWriter appends the positions of headless games to one shard of a position dataset. The shard is written
+ * through a memory mapped window, which is moved on along the file as it fills, so appending a position is a few puts
+ * into memory.
+ *
+ * A position is only known to be worth its final score once the game is over, so the positions of a game are held
+ * until finishGame, then written with the final score and counted in the header. The header count is only raised once
+ * a whole game is written, so a shard cut short by a crash still reads as every game finished before it.
+ *
+ * A writer belongs to a single thread. Each thread exporting games has a shard of its own, so nothing is shared
+ * between them while writing.
+ */
+public class PositionWriter implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(PositionWriter.class);
+
+    /**
+     * Records mapped at a time, 16MB
+     */
+    private static final int WINDOW = 1 << 19;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+
+    /**
+     * The mapped part of the file being written to, starting at windowStart records
+     */
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    /**
+     * Records written and counted in the header
+     */
+    private long count;
+    private int games;
+
+    /**
+     * The number of the game being played, within the whole export
+     */
+    private int game;
+
+    /**
+     * The positions of the game being played, waiting for its final score
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(256 * PositionDataset.RECORD).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Create a new shard, which must not already exist
+     * @param file the shard file
+     * @param cols board columns
+     * @param rows board rows
+     * @param seed the seed of game 0, shared by every shard in the dataset
+     * @throws IOException if the shard cannot be created
+     */
+    public PositionWriter(Path file, int cols, int rows, long seed) throws IOException {
+        if(cols * rows > 64) {
+            throw new IllegalArgumentException("Positions can only be recorded on boards of up to 64 blocks");
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, PositionDataset.HEADER);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PositionDataset.MAGIC_OFFSET, PositionDataset.MAGIC)
+                    .putInt(PositionDataset.VERSION_OFFSET, PositionDataset.VERSION)
+                    .putInt(PositionDataset.RECORD_OFFSET, PositionDataset.RECORD)
+                    .putInt(PositionDataset.COLS_OFFSET, cols)
+                    .putInt(PositionDataset.ROWS_OFFSET, rows)
+                    .putLong(PositionDataset.SEED_OFFSET, seed);
+            mapWindow(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Start recording a game
+     * @param game the number of the game, so its seed is the header seed plus the number
+     */
+    public void newGame(int game) {
+        this.game = game;
+        pending.clear();
+    }
+
+    /**
+     * Record a position of the game being played, before the chosen move is played
+     * @param engine the game
+     * @param move the move chosen, packed as by MoveGenerator
+     */
+    public void record(GameEngine engine, int move) {
+        if(pending.remaining() < PositionDataset.RECORD) {
+            var grown = ByteBuffer.allocate(pending.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            pending = grown.put(pending.flip());
+        }
+        int position = pending.position();
+        pending.putLong(position + PositionDataset.BOARD, engine.getGrid().getMask())
+                .putInt(position + PositionDataset.MOVE, move)
+                .put(position + PositionDataset.CURRENT, (byte) engine.getCurrentPiece().getPiece())
+                .put(position + PositionDataset.FOLLOWING, (byte) engine.getFollowingPiece().getPiece())
+                .put(position + PositionDataset.LIVES, (byte) engine.getLives())
+                .put(position + PositionDataset.MULTIPLIER, (byte) Math.min(engine.getMultiplier(), 255))
+                .putInt(position + PositionDataset.SCORE, engine.getScore())
+                .putInt(position + PositionDataset.TURN, engine.getPiecesPlayed())
+                .putInt(position + PositionDataset.GAME, game);
+        pending.position(position + PositionDataset.RECORD);
+    }
+
+    /**
+     * Write the positions of the finished game with its final score, and count them in the header
+     * @param finalScore the score the game ended on
+     * @throws IOException if the shard cannot be grown
+     */
+    public void finishGame(int finalScore) throws IOException {
+        int end = pending.position();
+        for(int record = 0; record < end; record += PositionDataset.RECORD) {
+            if(!window.hasRemaining()) {
+                mapWindow(windowStart + WINDOW);
+            }
+            pending.putInt(record + PositionDataset.FINAL_SCORE, finalScore);
+            window.put(pending.limit(record + PositionDataset.RECORD).position(record));
+            pending.limit(pending.capacity());
+            count++;
+        }
+        pending.clear();
+        games++;
+        header.putLong(PositionDataset.COUNT_OFFSET, count).putInt(PositionDataset.GAMES_OFFSET, games);
+    }
+
+    /**
+     * Get the number of positions written
+     * @return positions
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Get the number of games written
+     * @return games
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * Map the window of records from a record number
+     * @param start the first record of the window
+     * @throws IOException if the file cannot be mapped
+     */
+    private void mapWindow(long start) throws IOException {
+        if(window != null) {
+            window.force();
+        }
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_WRITE, offset(start), (long) WINDOW * PositionDataset.RECORD);
+    }
+
+    /**
+     * Flush the shard, and cut off the unused end of the last window. Positions of an unfinished game are dropped.
+     * @throws IOException if the shard cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            window.force();
+            header.force();
+            window = null;
+            try {
+                channel.truncate(offset(count));
+            } catch (IOException e) {
+                //Some platforms cannot shrink a mapped file, and readers only go as far as the header count anyway
+                logger.warn("Unable to trim position shard: {}", e.getMessage());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static long offset(long record) {
+        return PositionDataset.HEADER + record * PositionDataset.RECORD;
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.soton.comp1206.ai;
+
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.util.SplittableRandom;
+
+/**
+ * The RandomPolicy plays a random legal move for either piece, as a baseline for the other players. Its choices are
+ * drawn from the seed of each game, so a game can be played again exactly.
+ */
+public class RandomPolicy implements PlacementPolicy {
+
+    private final MoveGenerator generator;
+
+    /**
+     * Buffer the moves are generated into
+     */
+    private final int[] moves;
+
+    private SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Create a random player for the generator's board size
+     * @param generator move generator
+     */
+    public RandomPolicy(MoveGenerator generator) {
+        this.generator = generator;
+        this.moves = new int[generator.maxMoves()];
+    }
+
+    @Override
+    public void newGame(long seed) {
+        random = new SplittableRandom(~seed);
+    }
+
+    /**
+     * Choose a random legal move
+     * @param engine the game
+     * @return packed move, or AutoPlayer.NO_MOVE if neither piece fits
+     */
+    @Override
+    public int bestMove(GameEngine engine) {
+        if(engine.isGameOver() || engine.getCurrentPiece() == null) {
+            return AutoPlayer.NO_MOVE;
+        }
+        int count = generator.generate(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                engine.getFollowingPiece().getPiece(), moves);
+        return count == 0 ? AutoPlayer.NO_MOVE : moves[random.nextInt(count)];
+    }
+}
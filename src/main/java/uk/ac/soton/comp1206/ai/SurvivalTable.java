@@ -0,0 +1,217 @@
+package uk.ac.soton.comp1206.ai;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * The SurvivalTable holds, for every possible board of a small game, how many of the 15 pieces can still be played on
+ * it and how many holes it has. A 5x5 board only has 2^25 states, so the whole table is computed once, written to a
+ * file of one byte per board, and then memory mapped, so any board is looked up with a single read.
+ *
+ * As new pieces are drawn evenly from the 15 pieces, the chance that a drawn piece can be played is the number of
+ * playable pieces divided by 15, which gives the chance of surviving the next turn.
+ *
+ * The file starts with a 16 byte header: a magic number, the format version, the columns and the rows. Then there is
+ * one byte for each board mask in order, holding the playable pieces in the low 4 bits and the holes, at most 15, in
+ * the high 4 bits, as returned by Evaluator.survivalFeatures.
+ *
+ * The table is generated by the SurvivalMaker, and the computer players load it from the default file. Without it
+ * they work out the same features for each board as they go, which is slower.
+ *
+ * A table only reads from its mapped buffer, so it can be shared between threads.
+ */
+public class SurvivalTable {
+
+    private static final Logger logger = LogManager.getLogger(SurvivalTable.class);
+
+    /**
+     * The default file name of the survival table for the standard board
+     */
+    public static final String DEFAULT_FILE = "survival.bin";
+
+    /**
+     * The largest board a table can be built for
+     */
+    public static final int MAX_BLOCKS = 25;
+
+    private static final int MAGIC = 0x54535256;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+
+    /**
+     * Number of boards computed by each task when generating
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Number of columns of the boards in the table
+     */
+    private final int cols;
+
+    /**
+     * Number of rows of the boards in the table
+     */
+    private final int rows;
+
+    /**
+     * The mapped file
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Create a table over a mapped file whose header has been checked
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param buffer the mapped file
+     */
+    private SurvivalTable(int cols, int rows, MappedByteBuffer buffer) {
+        this.cols = cols;
+        this.rows = rows;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Compute the table for a board size and write it to a file, using every core. The file is written next to the
+     * target and then moved into place, so a half written table is never opened.
+     * @param file file to write
+     * @param cols number of columns
+     * @param rows number of rows
+     * @throws IOException if the file cannot be written
+     */
+    public static void generate(Path file, int cols, int rows) throws IOException {
+        int blocks = cols * rows;
+        if(blocks > MAX_BLOCKS) {
+            throw new IllegalArgumentException("Board too large for a survival table: " + cols + "x" + rows);
+        }
+        logger.info("Generating survival table for {} x {}", cols, rows);
+        var evaluator = new Evaluator(new MoveGenerator(cols, rows));
+        int boards = 1 << blocks;
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try(var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).putInt(cols).putInt(rows).flip();
+            channel.write(header, 0);
+
+            //Each task fills its own chunk, and positional writes to a channel are safe from many threads
+            IntStream.range(0, (boards + CHUNK - 1) / CHUNK).parallel().forEach(chunk -> {
+                int start = chunk * CHUNK;
+                byte[] bytes = new byte[Math.min(CHUNK, boards - start)];
+                for(int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) evaluator.survivalFeatures(start + i);
+                }
+                try {
+                    var data = ByteBuffer.wrap(bytes);
+                    long position = HEADER + (long) start;
+                    while(data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Generated survival table {}", file);
+    }
+
+    /**
+     * Map a table file into memory
+     * @param file file to open
+     * @return the table
+     * @throws IOException if the file cannot be read, or is not a survival table
+     */
+    public static SurvivalTable open(Path file) throws IOException {
+        try(var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a survival table: " + file);
+            }
+            int cols = buffer.getInt(8);
+            int rows = buffer.getInt(12);
+            if(cols * rows > MAX_BLOCKS || buffer.limit() != HEADER + (1 << (cols * rows))) {
+                throw new IOException("Survival table has the wrong size: " + file);
+            }
+            return new SurvivalTable(cols, rows, buffer);
+        }
+    }
+
+    /**
+     * Open the table for a board size from the default file, if it has been generated. Logs why when there is no
+     * table to use.
+     * @param cols number of columns
+     * @param rows number of rows
+     * @return the table, or null if there is no table for this size
+     */
+    public static SurvivalTable load(int cols, int rows) {
+        var file = Path.of(DEFAULT_FILE);
+        if(!Files.exists(file)) {
+            logger.info("No survival table {} found, so boards are judged without it. Run SurvivalMaker to make one.",
+                    file.toAbsolutePath());
+            return null;
+        }
+        try {
+            var table = open(file);
+            if(table.cols != cols || table.rows != rows) {
+                logger.info("Survival table {} is for {} x {}, not {} x {}, so boards are judged without it", file,
+                        table.cols, table.rows, cols, rows);
+                return null;
+            }
+            logger.info("Loaded survival table {}", file);
+            return table;
+        } catch (IOException e) {
+            logger.error("Unable to load survival table: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the packed features of a board
+     * @param board board mask
+     * @return the number of pieces that can be played in the low 4 bits, and the number of holes in the next 4 bits
+     */
+    public int get(long board) {
+        return buffer.get(HEADER + (int) board) & 0xFF;
+    }
+
+    /**
+     * Get how many of the 15 pieces can be played somewhere on a board
+     * @param board board mask
+     * @return number of playable pieces
+     */
+    public int playable(long board) {
+        return get(board) & 0xF;
+    }
+
+    /**
+     * Get the chance that a newly drawn piece can be played on a board
+     * @param board board mask
+     * @return probability, from 0 to 1
+     */
+    public double survival(long board) {
+        return playable(board) / (double) GamePiece.PIECES;
+    }
+}
@@ -0,0 +1,130 @@
+package uk.ac.soton.comp1206.ai;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size transposition table, caching the values of positions a search has already evaluated. Many different
+ * orders of placements lead to the same board, so a search finds the same positions again and again.
+ *
+ * The table is open addressed by the low bits of a Zobrist key, with two slots per bucket, held in a plain long array
+ * so nothing is allocated. Each entry is two longs: the data, holding the value as a float and the depth it was
+ * searched to, and the key XOR the data. Threads read and write entries without any locking. If two threads write the
+ * same entry at once the longs can end up from different writes, but then the key no longer matches when it is XORed
+ * back, so a torn entry is simply a miss.
+ *
+ * A value is only returned for exactly the depth it was searched to. Values include the points scored on the way down,
+ * so a deeper value of the same position counts more placements and is not a better estimate of a shallower one.
+ *
+ * Within a bucket, an entry for the same key and depth is overwritten. Otherwise an empty slot is used first, and then
+ * the shallower of the two entries is replaced, so that the most expensive results are kept.
+ */
+public final class TranspositionTable {
+
+    /**
+     * Longs per entry
+     */
+    private static final int ENTRY = 2;
+
+    /**
+     * Entries per bucket
+     */
+    private static final int BUCKET = 2;
+
+    /**
+     * The entries, each as key XOR data followed by data
+     */
+    private final long[] slots;
+
+    /**
+     * Mask of the bucket number
+     */
+    private final int mask;
+
+    /**
+     * Create a table with the given number of buckets
+     * @param bits the table has 2^bits buckets, of two entries each
+     */
+    public TranspositionTable(int bits) {
+        if(bits < 1 || bits > 26) {
+            throw new IllegalArgumentException("Table size out of range: " + bits);
+        }
+        slots = new long[(1 << bits) * BUCKET * ENTRY];
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Look up the value of a position
+     * @param key Zobrist key of the position
+     * @param depth the depth the value is needed to
+     * @return the value, if it was searched to this depth, otherwise NaN
+     */
+    public double probe(long key, int depth) {
+        int base = bucket(key);
+        for(int i = base; i < base + BUCKET * ENTRY; i += ENTRY) {
+            long data = slots[i + 1];
+            if((slots[i] ^ data) == key && depth(data) == depth) {
+                return Float.intBitsToFloat((int) data);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Store the value of a position
+     * @param key Zobrist key of the position
+     * @param depth the depth it was searched to, from 1 to 255
+     * @param value its value
+     */
+    public void store(long key, int depth, double value) {
+        long data = (long) depth << 32 | (Float.floatToRawIntBits((float) value) & 0xFFFFFFFFL);
+        int base = bucket(key);
+        int slot = base;
+        int shallowest = Integer.MAX_VALUE;
+        for(int i = base; i < base + BUCKET * ENTRY; i += ENTRY) {
+            long stored = slots[i + 1];
+            if(stored == 0 || (slots[i] ^ stored) == key && depth(stored) == depth) {
+                slot = i;
+                break;
+            }
+            if(depth(stored) < shallowest) {
+                shallowest = depth(stored);
+                slot = i;
+            }
+        }
+        slots[slot + 1] = data;
+        slots[slot] = key ^ data;
+    }
+
+    /**
+     * Empty the table
+     */
+    public void clear() {
+        Arrays.fill(slots, 0L);
+    }
+
+    /**
+     * Get the number of entries the table can hold
+     * @return capacity
+     */
+    public int capacity() {
+        return slots.length / ENTRY;
+    }
+
+    /**
+     * Get the index of the first slot of a key's bucket
+     * @param key Zobrist key
+     * @return slot index
+     */
+    private int bucket(long key) {
+        return ((int) key & mask) * BUCKET * ENTRY;
+    }
+
+    /**
+     * Get the depth from an entry's data
+     * @param data entry data
+     * @return depth
+     */
+    private static int depth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+}
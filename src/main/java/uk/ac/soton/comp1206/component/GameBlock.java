@@ -69,6 +69,17 @@ public class GameBlock extends Canvas {
 
     private Boolean centre = false;
 
+    /**
+     * The colour of the hint shown on this block, or null if there is no hint
+     */
+    private Color hint;
+
+    /**
+     * The number of lines the current piece would clear if it was played centred on this block, or -1 if the placement
+     * heatmap is not shown here
+     */
+    private int heat = -1;
+
     /**
      * Create a new single Game Block
      * @param gameBoard the board this block belongs to
@@ -120,6 +131,12 @@ public class GameBlock extends Canvas {
         //If the block is empty, paint as empty
         if(value.get() == 0) {
             paintEmpty();
+            if(heat >= 0) {
+                paintHeat();
+            }
+            if(hint != null) {
+                paintHint();
+            }
         } else {
             //If the block is not empty, paint with the colour represented by the value
             paintColor(COLOURS[value.get()]);
@@ -150,6 +167,30 @@ public class GameBlock extends Canvas {
         gc.strokeRect(0,0,width,height);
     }
 
+    /**
+     * Paint a faded hint of the colour of the piece suggested to be placed here
+     */
+    private void paintHint() {
+        var gc = getGraphicsContext2D();
+        gc.setFill(hint.deriveColor(0,1,1,0.4));
+        gc.fillRect(0,0, width, height);
+        gc.setStroke(hint);
+        gc.strokeRect(2,2,width-4,height-4);
+    }
+
+    /**
+     * Shade this block to show the current piece can be played centred on it, more strongly the more lines it clears
+     */
+    private void paintHeat() {
+        var gc = getGraphicsContext2D();
+        if(heat == 0) {
+            gc.setFill(Color.WHITE.deriveColor(0,1,1,0.12));
+        } else {
+            gc.setFill(Color.GOLD.deriveColor(0,1,1,Math.min(0.3 + 0.2 * heat, 0.9)));
+        }
+        gc.fillRect(0,0, width, height);
+    }
+
     /**
      * Paint this canvas with the given colour
      * @param colour the colour to paint
@@ -228,7 +269,37 @@ public class GameBlock extends Canvas {
         gc.setStroke(Color.BLACK);
         gc.strokeRect(0,0,width,height);
         if(value.get() == 0) {
-            paintEmpty();
+            paint();
+        }
+    }
+
+    /**
+     * Shows a hint on this block, that a piece of the given value should be placed over it
+     * @param value value of the piece, which sets the colour of the hint
+     */
+    public void showHint(int value) {
+        hint = COLOURS[value];
+        paint();
+    }
+
+    /**
+     * Removes any hint from this block
+     */
+    public void clearHint() {
+        if(hint != null) {
+            hint = null;
+            paint();
+        }
+    }
+
+    /**
+     * Shows on this block how many lines playing the current piece centred here would clear
+     * @param lines lines cleared, or -1 to show nothing, as the piece cannot be played here or the heatmap is hidden
+     */
+    public void showHeat(int lines) {
+        if(heat != lines) {
+            heat = lines;
+            paint();
         }
     }
 
@@ -264,6 +335,8 @@ public class GameBlock extends Canvas {
                     stop();
                     animationTimer = null;
                     logger.info("Animation Stopped");
+                    paint();
+                    return;
                 }
                 gc.setFill(Color.WHITE.deriveColor(0,0,1,opacityFadeOut));
                 gc.fillRect(0,0,width,height);            }
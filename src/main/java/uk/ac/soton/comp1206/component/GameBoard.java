@@ -9,7 +9,10 @@ import uk.ac.soton.comp1206.event.BlockClickedListener;
 import uk.ac.soton.comp1206.event.RightClickedListener;
 import uk.ac.soton.comp1206.game.GamePiece;
 import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.PieceShape;
+import uk.ac.soton.comp1206.game.PlacementMap;
 
+import java.util.BitSet;
 import java.util.Set;
 
 /**
@@ -63,6 +66,16 @@ public class GameBoard extends GridPane {
 
     private RightClickedListener rightClickedListener;
 
+    /**
+     * The placement map of every shape that has been shown, by shape index. A map is only built again once the grid
+     * has changed, so rotating or swapping back to a piece reuses it.
+     */
+    private final PlacementMap[] placementMaps = new PlacementMap[GamePiece.PIECES * PieceShape.ROTATIONS];
+
+    /**
+     * The placement map shown on the blocks, or null if the heatmap is hidden
+     */
+    private PlacementMap shownPlacements;
 
     /**
      * Create a new GameBoard, based off a given grid, with a visual width and height.
@@ -233,6 +246,99 @@ public class GameBoard extends GridPane {
         }
     }
 
+    /**
+     * Triggers the Fade Out Animation for each block in the lines of a given clear mask
+     * @param clearMask mask of the lines cleared, with bit y set for row y and bit rows + x set for column x
+     */
+    public void fadeOut(BitSet clearMask) {
+        for(int line = clearMask.nextSetBit(0); line >= 0; line = clearMask.nextSetBit(line + 1)) {
+            if(line < rows) {
+                for(int x = 0; x < cols; x++) {
+                    blocks[x][line].fadeOut();
+                }
+            } else {
+                for(int y = 0; y < rows; y++) {
+                    //Blocks where a column crosses a cleared row are already fading
+                    if(!clearMask.get(y)) {
+                        blocks[line - rows][y].fadeOut();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Shows a hint of where a piece should be placed, replacing any previous hint
+     * @param shape shape of the piece to place
+     * @param x column of the centre of the piece
+     * @param y row of the centre of the piece
+     */
+    public void showHint(PieceShape shape, int x, int y) {
+        clearHint();
+        for(int cell = 0; cell < shape.getCellCount(); cell++) {
+            blocks[x + shape.getCellX(cell)][y + shape.getCellY(cell)].showHint(shape.getValue());
+        }
+    }
+
+    /**
+     * Removes the hint from every block
+     */
+    public void clearHint() {
+        for(var column : blocks) {
+            for(var block : column) {
+                block.clearHint();
+            }
+        }
+    }
+
+    /**
+     * Get the placement map of a shape on the grid as it is now, building it only if the grid has changed since the
+     * shape's map was last built
+     * @param shape the shape
+     * @return the placement map
+     */
+    public PlacementMap getPlacements(PieceShape shape) {
+        var map = placementMaps[shape.getIndex()];
+        if(map == null || !map.isFor(grid, shape)) {
+            map = new PlacementMap(grid, shape);
+            placementMaps[shape.getIndex()] = map;
+        }
+        return map;
+    }
+
+    /**
+     * Shows every block a shape can be played centred on, shaded by how many lines playing it there would clear,
+     * replacing any heatmap already shown. Only blocks whose shading changes are painted again.
+     * @param shape the shape to be played
+     */
+    public void showPlacements(PieceShape shape) {
+        var map = getPlacements(shape);
+        if(map == shownPlacements) {
+            return;
+        }
+        for(int x = 0; x < cols; x++) {
+            for(int y = 0; y < rows; y++) {
+                blocks[x][y].showHeat(map.getLines(x, y));
+            }
+        }
+        shownPlacements = map;
+    }
+
+    /**
+     * Removes the placement heatmap from every block
+     */
+    public void clearPlacements() {
+        if(shownPlacements == null) {
+            return;
+        }
+        for(var column : blocks) {
+            for(var block : column) {
+                block.showHeat(-1);
+            }
+        }
+        shownPlacements = null;
+    }
+
     /**
      * Returns grid of given GameBoard
      * @return grid
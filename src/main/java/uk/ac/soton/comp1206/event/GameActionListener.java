@@ -0,0 +1,40 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * The GameActionListener is told about every action taken in a game, in the order they happen, so that the game can
+ * be recorded and played back. It is called on the thread running the game, so it should return quickly.
+ */
+public interface GameActionListener {
+
+    /**
+     * Called when the current piece has been played
+     * @param piece piece number
+     * @param rotation rotation of the piece
+     * @param x column it was played at
+     * @param y row it was played at
+     */
+    void placed(int piece, int rotation, int x, int y);
+
+    /**
+     * Called when the current piece has been rotated
+     * @param rotations number of rotations clockwise, negative values rotate anticlockwise
+     */
+    void rotated(int rotations);
+
+    /**
+     * Called when the current and following pieces have been swapped
+     */
+    void swapped();
+
+    /**
+     * Called when the turn timed out and the current piece was thrown away
+     */
+    void timedOut();
+
+    /**
+     * Called when a new piece arrives from outside the game, such as from the multiplayer server
+     * @param piece piece number
+     */
+    default void pieceArrived(int piece) {
+    }
+}
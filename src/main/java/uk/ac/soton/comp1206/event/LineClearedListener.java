@@ -1,16 +1,19 @@
 package uk.ac.soton.comp1206.event;
 
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * The LineClearedListener is used to link the Game and UI, and is triggered when a line has been cleared so that
  * animations can be played
  */
 public interface LineClearedListener {
+
     /**
-     * Takes in a set of GameBlockCoordinates and animates each individual block
-     * @param gameBlockCoordinateSet
+     * Takes in a mask of the lines cleared, with bit y set for a cleared row y and bit rows + x set for a cleared column
+     * x, and animates the blocks in those lines
+     * @param clearMask mask of the lines cleared, only valid until the next piece is played
+     * @param cols number of columns in the grid
+     * @param rows number of rows in the grid
      */
-    void lineClear(Set<GameBlockCoordinate> gameBlockCoordinateSet);
+    void lineClear(BitSet clearMask, int cols, int rows);
 }
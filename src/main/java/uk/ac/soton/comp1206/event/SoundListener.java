@@ -0,0 +1,13 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * The SoundListener is used to link the game rules to whatever plays sounds, so that the rules do not depend on the
+ * Multimedia class.
+ */
+public interface SoundListener {
+    /**
+     * Play the given sound
+     * @param sound name of the sound file
+     */
+    void playSound(String sound);
+}
@@ -0,0 +1,401 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The BitGrid is the primitive core of the Grid model. Whether a block is filled is held as a packed bitmask, with one
+ * bit per block, and the value (colour) of every block is held in a byte array.
+ *
+ * Blocks are numbered row by row, so the block at column x and row y is bit y * cols + x. A 5x5 board fits inside a
+ * single long, so placing a piece or clearing the board is only a few mask operations.
+ *
+ * The BitGrid also counts how many blocks are filled in every row and column, so after a piece is played only the
+ * lines it touched need checking to find which are full.
+ *
+ * A Zobrist hash of which blocks are filled is kept up to date as blocks change, so that positions can be looked up
+ * in a transposition table without hashing the whole board.
+ *
+ * Every change also moves the grid on to a new version, which results worked out from it, such as a PlacementMap, can
+ * be checked against.
+ *
+ * The BitGrid has no dependency on JavaFX. The Grid extends it to add properties that a GameBoard can bind to.
+ */
+public class BitGrid {
+
+    /**
+     * The number of columns in this grid
+     */
+    protected final int cols;
+
+    /**
+     * The number of rows in this grid
+     */
+    protected final int rows;
+
+    /**
+     * One bit for every block, set when the block is filled
+     */
+    protected final long[] occupied;
+
+    /**
+     * The value of every block. Only meaningful while the matching occupied bit is set.
+     */
+    protected final byte[] values;
+
+    /**
+     * The number of filled blocks in each row
+     */
+    protected final int[] rowFill;
+
+    /**
+     * The number of filled blocks in each column
+     */
+    protected final int[] colFill;
+
+    /**
+     * The placement masks of every shape on this grid, or null if the grid is too large to fit in a single long
+     */
+    protected final long[][] placements;
+
+    /**
+     * The Zobrist hash of the filled blocks
+     */
+    protected long hash;
+
+    /**
+     * Counts every change to the grid, so anything worked out from the grid can tell when it is out of date
+     */
+    protected long version;
+
+    /**
+     * Create a new empty BitGrid with the specified number of columns and rows
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public BitGrid(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.occupied = new long[(cols * rows + 63) >>> 6];
+        this.values = new byte[cols * rows];
+        this.rowFill = new int[rows];
+        this.colFill = new int[cols];
+        this.placements = cols * rows <= 64 ? PieceShape.placementMasks(cols, rows) : null;
+    }
+
+    /**
+     * Get the number of columns in this grid
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows in this grid
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns whether the given x and y index is inside the grid
+     * @param x column
+     * @param y row
+     * @return whether the block exists
+     */
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < cols && y < rows;
+    }
+
+    /**
+     * Returns whether the block at the given x and y index is filled. The index must be inside the grid.
+     * @param x column
+     * @param y row
+     * @return whether the block is filled
+     */
+    public boolean isOccupied(int x, int y) {
+        int index = y * cols + x;
+        return (occupied[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Get the value represented at the given x and y index within the grid
+     * @param x column
+     * @param y row
+     * @return the value, or -1 if there is no such block
+     */
+    public int get(int x, int y) {
+        if(!inBounds(x, y)) {
+            return -1;
+        }
+        return isOccupied(x, y) ? values[y * cols + x] : 0;
+    }
+
+    /**
+     * Update the value at the given x and y index within the grid
+     * @param x column
+     * @param y row
+     * @param value the new value, 0 to empty the block
+     */
+    public void set(int x, int y, int value) {
+        int index = y * cols + x;
+        long bit = 1L << index;
+        boolean filled = (occupied[index >>> 6] & bit) != 0;
+        if(value == 0) {
+            if(filled) {
+                occupied[index >>> 6] &= ~bit;
+                rowFill[y]--;
+                colFill[x]--;
+                hash ^= Zobrist.key(index);
+                version++;
+            }
+        } else {
+            if(!filled) {
+                occupied[index >>> 6] |= bit;
+                rowFill[y]++;
+                colFill[x]++;
+                hash ^= Zobrist.key(index);
+                version++;
+            }
+            values[index] = (byte) value;
+        }
+    }
+
+    /**
+     * Returns whether a piece can be played in a given position
+     * @param gamePiece A given GamePiece
+     * @param placeX X Coordinate
+     * @param placeY Y Coordinate
+     * @return Whether a piece can be played
+     */
+    public boolean canPlayPiece(GamePiece gamePiece, int placeX, int placeY) {
+        return canPlayShape(gamePiece.getShape(), placeX, placeY);
+    }
+
+    /**
+     * Returns whether a shape can be played centred on a given position
+     * @param shape A given PieceShape
+     * @param placeX X Coordinate
+     * @param placeY Y Coordinate
+     * @return Whether the shape can be played
+     */
+    public boolean canPlayShape(PieceShape shape, int placeX, int placeY) {
+        //Every shape covers its centre, so it can never be played centred outside the grid
+        if(!inBounds(placeX, placeY)) {
+            return false;
+        }
+        if(placements != null) {
+            long mask = placements[shape.getIndex()][placeY * cols + placeX];
+            return mask != 0 && (occupied[0] & mask) == 0;
+        }
+        for(int cell = 0; cell < shape.getCellCount(); cell++) {
+            int x = placeX + shape.getCellX(cell);
+            int y = placeY + shape.getCellY(cell);
+            if(!inBounds(x, y) || isOccupied(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plays a given GamePiece by its centre in a given position. The position should have been checked with
+     * canPlayPiece first.
+     * @param gamePiece A given GamePiece
+     * @param placeX X Coordinate
+     * @param placeY Y Coordinate
+     */
+    public void playPiece(GamePiece gamePiece, int placeX, int placeY) {
+        playShape(gamePiece.getShape(), placeX, placeY);
+    }
+
+    /**
+     * Plays a given shape by its centre in a given position. The position should have been checked with canPlayShape
+     * first.
+     * @param shape A given PieceShape
+     * @param placeX X Coordinate
+     * @param placeY Y Coordinate
+     */
+    public void playShape(PieceShape shape, int placeX, int placeY) {
+        byte value = (byte) shape.getValue();
+        boolean small = placements != null;
+        version++;
+        if(small) {
+            occupied[0] |= placements[shape.getIndex()][placeY * cols + placeX];
+        }
+        for(int cell = 0; cell < shape.getCellCount(); cell++) {
+            int x = placeX + shape.getCellX(cell);
+            int y = placeY + shape.getCellY(cell);
+            int index = y * cols + x;
+            if(!small) {
+                occupied[index >>> 6] |= 1L << index;
+            }
+            values[index] = value;
+            rowFill[y]++;
+            colFill[x]++;
+            hash ^= Zobrist.key(index);
+        }
+    }
+
+    /**
+     * Clears the whole grid
+     */
+    public void clearGrid() {
+        Arrays.fill(occupied, 0L);
+        Arrays.fill(rowFill, 0);
+        Arrays.fill(colFill, 0);
+        hash = 0;
+        version++;
+    }
+
+    /**
+     * Find and clear every full line that a shape just played at the given position passes through. Only the rows and
+     * columns the shape covers are checked, as no other line can have been completed by it.
+     *
+     * The lines cleared are recorded in the given clear mask, which is cleared first. Bit y is set for a cleared row y,
+     * and bit getRows() + x is set for a cleared column x.
+     * @param shape the shape that was played
+     * @param placeX X Coordinate the shape was played at
+     * @param placeY Y Coordinate the shape was played at
+     * @param clearMask the mask to record the cleared lines in
+     * @return the number of blocks cleared
+     */
+    public int clearLines(PieceShape shape, int placeX, int placeY, BitSet clearMask) {
+        clearMask.clear();
+        int fullRows = 0;
+        int fullCols = 0;
+        for(int y = Math.max(placeY - 1, 0); y <= Math.min(placeY + 1, rows - 1); y++) {
+            if(rowFill[y] == cols) {
+                clearMask.set(y);
+                fullRows++;
+            }
+        }
+        for(int x = Math.max(placeX - 1, 0); x <= Math.min(placeX + 1, cols - 1); x++) {
+            if(colFill[x] == rows) {
+                clearMask.set(rows + x);
+                fullCols++;
+            }
+        }
+        if(fullRows + fullCols == 0) {
+            return 0;
+        }
+        version++;
+
+        //Rows are emptied first, so the columns skip the blocks where they cross a cleared row
+        for(int y = clearMask.nextSetBit(0); y >= 0 && y < rows; y = clearMask.nextSetBit(y + 1)) {
+            for(int x = 0; x < cols; x++) {
+                emptyBlock(x, y);
+            }
+        }
+        for(int x = clearMask.nextSetBit(rows); x >= 0; x = clearMask.nextSetBit(x + 1)) {
+            for(int y = 0; y < rows; y++) {
+                emptyBlock(x - rows, y);
+            }
+        }
+        return fullRows * cols + fullCols * rows - fullRows * fullCols;
+    }
+
+    /**
+     * Empty a single block if it is filled, keeping the row and column counts up to date
+     * @param x column
+     * @param y row
+     */
+    private void emptyBlock(int x, int y) {
+        int index = y * cols + x;
+        long bit = 1L << index;
+        if((occupied[index >>> 6] & bit) != 0) {
+            occupied[index >>> 6] &= ~bit;
+            rowFill[y]--;
+            colFill[x]--;
+            hash ^= Zobrist.key(index);
+        }
+    }
+
+    /**
+     * Get the Zobrist hash of the filled blocks
+     * @return hash, the XOR of Zobrist.key for every filled block
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the version of the grid, which changes whenever any block is filled or emptied
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get up to 64 blocks of a row as a mask, with bit i set when the block in column word * 64 + i is filled
+     * @param y row
+     * @param word which 64 columns of the row
+     * @return mask of the filled blocks, with nothing set past the end of the row
+     */
+    public long getRowMask(int y, int word) {
+        int width = Math.min(64, cols - word * 64);
+        int start = y * cols + word * 64;
+        int offset = start & 63;
+        long bits = occupied[start >>> 6] >>> offset;
+        if(offset != 0 && offset + width > 64) {
+            bits |= occupied[(start >>> 6) + 1] << (64 - offset);
+        }
+        return width == 64 ? bits : bits & (1L << width) - 1;
+    }
+
+    /**
+     * Get the number of filled blocks in a row
+     * @param y row
+     * @return number of filled blocks
+     */
+    public int getRowFill(int y) {
+        return rowFill[y];
+    }
+
+    /**
+     * Get the number of filled blocks in a column
+     * @param x column
+     * @return number of filled blocks
+     */
+    public int getColFill(int x) {
+        return colFill[x];
+    }
+
+    /**
+     * Get the whole board as a single mask, with bit y * cols + x set for every filled block. Only available for grids
+     * of 64 blocks or less.
+     * @return board mask
+     */
+    public long getMask() {
+        if(occupied.length > 1) {
+            throw new IllegalStateException("Grid too large for a single mask: " + cols + "x" + rows);
+        }
+        return occupied[0];
+    }
+
+    /**
+     * Replace the whole board with the given mask. Blocks filled by the mask keep the value they last had. Only
+     * available for grids of 64 blocks or less.
+     * @param mask board mask, with bit y * cols + x set for every filled block
+     */
+    public void setMask(long mask) {
+        if(occupied.length > 1) {
+            throw new IllegalStateException("Grid too large for a single mask: " + cols + "x" + rows);
+        }
+        occupied[0] = mask;
+        hash = Zobrist.hash(mask);
+        version++;
+        long rowMask = cols == 64 ? -1L : (1L << cols) - 1;
+        long colMask = 0;
+        for(int y = 0; y < rows; y++) {
+            rowFill[y] = Long.bitCount(mask & (rowMask << (y * cols)));
+            colMask |= 1L << (y * cols);
+        }
+        for(int x = 0; x < cols; x++) {
+            colFill[x] = Long.bitCount(mask & (colMask << x));
+        }
+    }
+}
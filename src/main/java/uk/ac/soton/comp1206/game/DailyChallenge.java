@@ -0,0 +1,64 @@
+package uk.ac.soton.comp1206.game;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+
+/**
+ * The DailyChallenge gives every player the same pieces on the same day. Days follow UTC, so players everywhere share
+ * a day, and each day's seed is derived from the date alone, so the pieces can be generated again later to verify a
+ * game.
+ *
+ * Each day's scores and submitted replays are kept apart from every other day's, in a directory of their own.
+ */
+public final class DailyChallenge {
+
+    /**
+     * Mixed into every day's seed, so daily seeds do not match the small seeds used elsewhere
+     */
+    private static final long SALT = 0x5445545245435344L;
+
+    /**
+     * The directory holding a directory for each day played
+     */
+    public static final String DIRECTORY = "daily";
+
+    private DailyChallenge() {
+    }
+
+    /**
+     * Get the current day of the challenge
+     * @return today's date in UTC
+     */
+    public static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    /**
+     * Get the seed of the pieces for a day. The same date always gives the same seed.
+     * @param date the day
+     * @return seed
+     */
+    public static long seed(LocalDate date) {
+        return new SplittableRandom(SALT ^ date.toEpochDay()).nextLong();
+    }
+
+    /**
+     * Get the directory a day's scores and replays are kept in
+     * @param date the day
+     * @return directory, named after the date
+     */
+    public static Path directory(LocalDate date) {
+        return Path.of(DIRECTORY, date.toString());
+    }
+
+    /**
+     * Create the source of a day's pieces, generated ahead into a ring buffer
+     * @param date the day
+     * @return a new piece source
+     */
+    public static RingPieceSource pieces(LocalDate date) {
+        return new RingPieceSource(seed(date));
+    }
+}
@@ -7,19 +7,34 @@ import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
 import uk.ac.soton.comp1206.event.GameEndListener;
 import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.LineClearedListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
 import uk.ac.soton.comp1206.media.Multimedia;
 
-import java.util.*;
-import java.util.concurrent.*;
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The Game class handles the main logic, state and properties of the TetrECS game. Methods to manipulate the game state
  * and to handle actions made by the player should take place inside this class.
+ *
+ * The rules themselves are run by a headless GameEngine. The Game is an adapter over it, which exposes the engine's
+ * state as JavaFX properties, plays its sounds through Multimedia and runs the turn timer.
+ *
+ * The turn timer runs on a GameClock. By default every game shares one HashedWheelTimer, so a game does not hold a
+ * thread of its own, but a VirtualGameClock can be given instead, so that timeouts happen as soon as the clock is
+ * advanced.
+ *
+ * Every change to the game happens on one owner thread, which is the FX thread for a game shown in a scene. Clicks,
+ * rotations and swaps already arrive on the FX thread and are run straight away. Anything from another thread, such
+ * as a turn timeout from the clock, is submitted as a command to a lock free queue, which is drained in order on the
+ * owner thread, so a click can never race a timeout. The UI reads the game through its properties and listeners,
+ * which are only updated on the owner thread, so other threads should submit a command rather than read the game.
  */
 public class Game {
 
@@ -41,14 +56,14 @@ public class Game {
     protected final Grid grid;
 
     /**
-     * The current GamePiece being played
+     * Decides which pieces come next in this game
      */
-    protected GamePiece currentPiece;
+    protected final PieceSource pieceSource;
 
     /**
-     * The next GamePiece to be played
+     * The engine running the rules of this game
      */
-    protected GamePiece followingPiece;
+    protected final GameEngine engine;
 
     /**
      * Current Score of the player
@@ -77,14 +92,39 @@ public class Game {
     protected GameEndListener gameEndListener;
 
     /**
-     * Timer - detects when a turn should end
+     * Clock - detects when a turn should end
      */
-    protected ScheduledExecutorService timer;
-    protected int initialDelay = 12000;
+    protected final GameClock clock;
+
+    /**
+     * The timeout of the current turn
+     */
+    protected GameClock.Timeout newLoop;
+
     /**
-     * Used to initiate new timer when a loop has finished
+     * The number of the current turn, so a timeout which was already on its way when the turn ended is ignored
      */
-    protected ScheduledFuture<?> newLoop;
+    protected int turn = 0;
+
+    /**
+     * Runs the commands of this game on its owner thread
+     */
+    protected final Executor owner;
+
+    /**
+     * Commands from other threads, waiting to run on the owner thread
+     */
+    protected final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the owner has been asked to drain the commands, so it is only asked once per batch
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Drains the commands, created once so asking the owner does not allocate
+     */
+    private final Runnable drainTask = this::drain;
 
     /**
      * ArrayList of Local Scores available
@@ -102,11 +142,72 @@ public class Game {
      * @param rows number of rows
      */
     public Game(int cols, int rows) {
+        this(cols, rows, new SeededPieceSource(SeededPieceSource.randomSeed()));
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, taking its pieces from the given source
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource the source of new pieces
+     */
+    public Game(int cols, int rows, PieceSource pieceSource) {
+        this(cols, rows, pieceSource, HashedWheelTimer.shared(), Platform::runLater);
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, taking its pieces from the given source and running its
+     * turn timer on the given clock. The clock is not shut down when the game ends.
+     *
+     * Commands are drained by whichever thread submits them, one thread at a time, so a headless game can be driven
+     * from its clock alone.
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource the source of new pieces
+     * @param clock the clock running the turn timer
+     */
+    public Game(int cols, int rows, PieceSource pieceSource, GameClock clock) {
+        this(cols, rows, pieceSource, clock, Runnable::run);
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, taking its pieces from the given source, running its
+     * turn timer on the given clock and its commands on the given owner
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource the source of new pieces
+     * @param clock the clock running the turn timer
+     * @param owner runs the commands of this game, one batch at a time
+     */
+    public Game(int cols, int rows, PieceSource pieceSource, GameClock clock, Executor owner) {
         this.cols = cols;
         this.rows = rows;
+        this.pieceSource = pieceSource;
+        this.clock = clock;
+        this.owner = owner;
 
         //Create a new grid model to represent the game state
         this.grid = new Grid(cols,rows);
+
+        //Create the engine to run the rules on the grid
+        this.engine = createEngine();
+        engine.setSoundListener(multimedia::playSound);
+    }
+
+    /**
+     * Create the engine which runs the rules of this game on its grid
+     * @return a new engine
+     */
+    protected GameEngine createEngine() {
+        return new GameEngine(grid, pieceSource);
+    }
+
+    /**
+     * Get the engine running the rules of this game
+     * @return the engine
+     */
+    public GameEngine getEngine() {
+        return engine;
     }
 
     public IntegerProperty livesProperty() {
@@ -139,9 +240,7 @@ public class Game {
      */
     public void initialiseGame() {
         logger.info("Initialising game");
-        followingPiece = spawnPiece();
-        nextPiece();
-        timer = Executors.newSingleThreadScheduledExecutor();
+        engine.initialise();
     }
 
     /**
@@ -150,12 +249,18 @@ public class Game {
      * @return True or False whether a block has been clicked and placed
      */
     public boolean blockClicked(GameBlock gameBlock) {
-        //Get the position of this block
-        int x = gameBlock.getX();
-        int y = gameBlock.getY();
-        if(grid.canPlayPiece(currentPiece, x, y)) {
-            grid.playPiece(currentPiece, x, y);
-            nextPiece();
+        //Get the position of this block, and try to play the current piece there
+        return play(gameBlock.getX(), gameBlock.getY());
+    }
+
+    /**
+     * Try to play the current piece centred on a given position
+     * @param x column
+     * @param y row
+     * @return whether the piece was played
+     */
+    public boolean play(int x, int y) {
+        if(engine.play(x, y)) {
             afterPiece();
             return true;
         } else {
@@ -164,79 +269,71 @@ public class Game {
     }
 
     /**
-     * Handels what should happen after a piece is palyed
+     * Handels what should happen after a piece is palyed and any lines have been cleared by the engine
      */
     public void afterPiece() {
-        int lines = 0;
-        HashSet<GameBlockCoordinate> blocksToBeCleared = new HashSet<>();
-
-        for(int x=0; x < cols; x++) { //Vertical Lines
-            int countX = 0;
-            for(int y=0; y < rows; y++) {
-                if(grid.get(x,y) == 0) break;
-                countX+=1;
-            }
-            if(countX == rows) {
-                lines+=1;
-                for(int y=0; y < rows; y++) {
-                    GameBlockCoordinate coordinate = new GameBlockCoordinate(x,y);
-                    blocksToBeCleared.add(coordinate); //Add all GameBlockCoordinates to HashSet to be cleared
-                }
-            }
+        if(!engine.getClearMask().isEmpty()) {
+            logger.info("Clear Lines, Score: " + engine.getScore());
         }
+        updateProperties();
+    }
 
-        for(int y=0; y < rows; y++) {//Horizontal Lines
-            int countY = 0;
-            for(int x=0; x < cols; x++) {
-                if(grid.get(x,y) == 0) break;
-                countY+=1;
-            }
-            if(countY == cols) {
-                lines+=1;
-                for(int x=0; x < cols; x++) {
-                    GameBlockCoordinate coordinate = new GameBlockCoordinate(x,y);
-                    blocksToBeCleared.add(coordinate);//Add all GameBlockCoordinates to HashSet to be cleared
-                }
-            }
+    /**
+     * Copies the state of the engine into the properties of this game, so that anything bound to them updates
+     */
+    protected void updateProperties() {
+        score.set(engine.getScore());
+        level.set(engine.getLevel());
+        lives.set(engine.getLives());
+        multiplier.set(engine.getMultiplier());
+    }
+
+    /**
+     * Run a command on the owner thread of this game, after every command submitted before it. Safe to call from any
+     * thread.
+     * @param command the command
+     */
+    public void submit(Runnable command) {
+        commands.add(command);
+        if(draining.compareAndSet(false, true)) {
+            owner.execute(drainTask);
         }
+    }
 
-        if(lines>0){ //If there is a line to clear
-            clear(blocksToBeCleared); // Clears Blocks
-            score(lines, blocksToBeCleared.size()); // Increments Score
-            this.multiplier.set(this.multiplier.add(1).get()); // Increments Multiplier
-            if(lineClearedListener != null) {
-                lineClearedListener.lineClear(blocksToBeCleared); //Calls Listener
-                logger.info("Clear Lines");
+    /**
+     * Run every waiting command on the owner thread. A command submitted just as the queue is found empty is picked
+     * up by the check after the flag is cleared.
+     */
+    private void drain() {
+        do {
+            for(Runnable command = commands.poll(); command != null; command = commands.poll()) {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    logger.error("Game command failed", e);
+                }
             }
-        } else {
-            this.multiplier.set(1); //Resets Multiplier
-        }
+            draining.set(false);
+        } while(!commands.isEmpty() && draining.compareAndSet(false, true));
     }
 
     /**
-     * Iterates through a given HashSet of GameBlockCoordinates and clears the GameBlock
-     * @param blocks A HashSet Of Blocks to be set to 0
+     * Take a snapshot of the state of this game, for example so a move can be undone
+     * @return the current state
      */
-    public void clear(HashSet<GameBlockCoordinate> blocks) {
-        for (GameBlockCoordinate block: blocks) {
-            grid.set(block.getX(), block.getY(), 0);
-        }
+    public GameState snapshot() {
+        return engine.snapshot();
     }
 
     /**
-     * Increases the Score depending on the number of lines and blocks cleared.
-     * Also increments Level every 1000 points
-     * @param lines Number of Lines Cleared
-     * @param blocks Number of Blocks Cleared
+     * Restore this game to a snapshot taken earlier, and update the properties and piece displays to match
+     * @param state the state to restore
      */
-    public void score(int lines, int blocks){
-        int scoreToAdd = lines*blocks*10*this.multiplier.get();
-        this.score.set(this.score.add(scoreToAdd).get());
-        logger.info("Score added, Score: " + this.scoreProperty().get());
-        int level = this.score.get() / 1000;
-        if(this.level.get() != level) {
-            this.level.set(level);
-            multimedia.playSound("level.wav");
+    public void restore(GameState state) {
+        engine.restore(state);
+        updateProperties();
+        if(nextPieceListener != null) {
+            nextPieceListener.nextPiece(engine.getCurrentPiece(), engine.getFollowingPiece());
         }
     }
 
@@ -265,31 +362,21 @@ public class Game {
     }
 
     /**
-     * Creates a new Random Piece
-     * @return A new GamePiece
+     * Get the clock running the turn timer of this game
+     * @return clock
      */
-    public GamePiece spawnPiece() {
-        Random random = new Random();
-        int randomNum = random.nextInt(15);
-        GamePiece gamePiece = GamePiece.createPiece(randomNum);
-        return gamePiece;
-    }
-
-    /**
-     * Reassigns currentPiece and followingPiece after a piece has been played
-     */
-    public void nextPiece() {
-        currentPiece = followingPiece;
-        followingPiece = spawnPiece();
-        nextPieceListener.nextPiece(currentPiece, followingPiece);
+    public GameClock getClock() {
+        return clock;
     }
 
     public void setNextPieceListener(NextPieceListener nextPieceListener) {
         this.nextPieceListener = nextPieceListener;
+        engine.setNextPieceListener(nextPieceListener);
     }
 
     public void setLineClearedListener(LineClearedListener lineClearedListener) {
         this.lineClearedListener = lineClearedListener;
+        engine.setLineClearedListener(lineClearedListener);
     }
 
     public void setOnGameLoop(GameLoopListener gameLoopListener) {
@@ -304,16 +391,22 @@ public class Game {
      * Rotates the currentPiece
      */
     public void rotateCurrentPiece() {
-        currentPiece.rotate();
+        rotateCurrentPiece(1);
     };
 
+    /**
+     * Rotates the currentPiece a given number of times clockwise
+     * @param rotations number of rotations, negative values rotate anticlockwise
+     */
+    public void rotateCurrentPiece(int rotations) {
+        engine.rotateCurrentPiece(rotations);
+    }
+
     /**
      * Swaps currentPiece and followingPiece
      */
     public void swapCurrentPiece() {
-        GamePiece temp = followingPiece;
-        followingPiece = currentPiece;
-        currentPiece = temp;
+        engine.swapCurrentPiece();
     }
 
     /**
@@ -321,7 +414,7 @@ public class Game {
      * @return currentPiece
      */
     public GamePiece getCurrentPiece() {
-        return currentPiece;
+        return engine.getCurrentPiece();
     }
 
     /**
@@ -329,7 +422,7 @@ public class Game {
      * @return followingPiece
      */
     public GamePiece getFollowingPiece() {
-        return followingPiece;
+        return engine.getFollowingPiece();
     }
 
     /**
@@ -337,41 +430,47 @@ public class Game {
      * @return How long th timer should last in ms
      */
     public int getTimerDelay() {
-        int delay = initialDelay - (500 * level.get());
-        return Math.max(delay, 2500);
+        return engine.getTimerDelay();
     }
 
     /**
-     * Triggers GameLopp when the player does not play a piece
+     * Triggers GameLopp when the player does not play a piece. Runs on the owner thread.
      */
     public void gameLoop() {
-        nextPiece();
-        if(lives.get() == 0) {
+        boolean over = engine.timeout();
+        updateProperties();
+        if(over) {
             gameOver();
-        } else {
-            lives.set(lives.get() - 1);
-            multimedia.playSound("lifelose.wav");
-            multiplier.set(1);
         }
         if(gameLoopListener != null){
             gameLoopListener.gameLoop(getTimerDelay());
         }
-        startLoop();
+        //A lost game stops its timer, so an abandoned game does not keep a timeout waiting forever
+        if(!over) {
+            startLoop();
+        }
     }
 
     /**
      * Starts a new timer
      */
     public void startLoop() {
-        newLoop = timer.schedule(this::gameLoop, getTimerDelay(), TimeUnit.MILLISECONDS);
-        gameLoopListener.gameLoop(getTimerDelay());
+        int loop = ++turn;
+        newLoop = clock.schedule(() -> submit(() -> {
+            if(turn == loop) {
+                gameLoop();
+            }
+        }), getTimerDelay());
+        if(gameLoopListener != null) {
+            gameLoopListener.gameLoop(getTimerDelay());
+        }
     }
 
     /**
      * Restarts timer when the player has played a piece
      */
     public void restartLoop() {
-        newLoop.cancel(false);
+        newLoop.cancel();
         startLoop();
     }
 
@@ -380,7 +479,10 @@ public class Game {
      */
     public void endGame() {
         logger.info("Game Has Ended");
-        timer.shutdownNow();
+        turn++;
+        if(newLoop != null) {
+            newLoop.cancel();
+        }
     }
 
     /**
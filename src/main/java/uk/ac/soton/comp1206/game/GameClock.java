@@ -0,0 +1,40 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A GameClock tells a Game the time and runs its turn timeouts. A HashedWheelTimer follows the wall clock, running
+ * the timeouts of every game on one thread, while a VirtualGameClock only moves when it is told to, so simulations can
+ * skip straight to the next timeout.
+ */
+public interface GameClock {
+
+    /**
+     * A task waiting on a clock, which can be cancelled before it runs
+     */
+    interface Timeout {
+
+        /**
+         * Stop the task from running, if it has not run yet
+         */
+        void cancel();
+    }
+
+    /**
+     * Get the current time of this clock
+     * @return time in ms
+     */
+    long now();
+
+    /**
+     * Run a task once the given time has passed on this clock
+     * @param task task to run
+     * @param delay delay in ms
+     * @return the waiting task, which can be cancelled
+     */
+    Timeout schedule(Runnable task, long delay);
+
+    /**
+     * Stop this clock and release anything it holds. Tasks still waiting will not run.
+     */
+    default void shutdown() {
+    }
+}
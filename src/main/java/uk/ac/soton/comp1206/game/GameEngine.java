@@ -0,0 +1,548 @@
+package uk.ac.soton.comp1206.game;
+
+import uk.ac.soton.comp1206.event.GameActionListener;
+import uk.ac.soton.comp1206.event.LineClearedListener;
+import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.event.SoundListener;
+
+import java.util.BitSet;
+
+/**
+ * The GameEngine holds the rules of TetrECS: placing pieces, clearing lines, scoring, levels and lives. All of its
+ * state is primitive and it has no dependency on JavaFX, Multimedia or any timer, so it can be run headless on any
+ * thread, for example to simulate games.
+ *
+ * Anything outside of the rules, such as sounds and updating the UI, is handed to listeners. The Game class is an
+ * adapter over an engine which adds the JavaFX properties and the turn timer.
+ *
+ * An engine is not thread safe, and should only be used by one thread at a time.
+ */
+public class GameEngine {
+
+    /**
+     * The number of lives a player starts with
+     */
+    public static final int STARTING_LIVES = 3;
+
+    /**
+     * Number of rows
+     */
+    protected final int rows;
+
+    /**
+     * Number of columns
+     */
+    protected final int cols;
+
+    /**
+     * The grid model the game is played on
+     */
+    protected final BitGrid grid;
+
+    /**
+     * The current GamePiece being played
+     */
+    protected GamePiece currentPiece;
+
+    /**
+     * The next GamePiece to be played
+     */
+    protected GamePiece followingPiece;
+
+    /**
+     * Current Score of the player
+     */
+    protected int score = 0;
+
+    /**
+     * Current Level of the game
+     */
+    protected int level = 0;
+
+    /**
+     * Current Lives left of the player
+     */
+    protected int lives = STARTING_LIVES;
+
+    /**
+     * Current Game Multiplier
+     */
+    protected int multiplier = 1;
+
+    /**
+     * Whether the player has run out of lives
+     */
+    protected boolean gameOver = false;
+
+    /**
+     * Number of pieces played so far
+     */
+    protected int piecesPlayed = 0;
+
+    /**
+     * Number of lines cleared so far
+     */
+    protected int linesCleared = 0;
+
+    /**
+     * The default timer delay at level 0, in ms
+     */
+    public static final int INITIAL_DELAY = 12000;
+
+    /**
+     * The timer delay at level 0, in ms
+     */
+    protected int initialDelay = INITIAL_DELAY;
+
+    /**
+     * The lines cleared by the last piece played, rows first and then columns
+     */
+    protected final BitSet clearMask = new BitSet();
+
+    /**
+     * Decides which pieces come next
+     */
+    protected final PieceSource pieceSource;
+
+    //Listeners used to report what happens in the game
+    protected NextPieceListener nextPieceListener;
+    protected LineClearedListener lineClearedListener;
+    protected SoundListener soundListener;
+    protected GameActionListener actionListener;
+
+    /**
+     * Create a new engine playing on the given grid, taking its pieces from the given source
+     * @param grid the grid to play on
+     * @param pieceSource the source of new pieces
+     */
+    public GameEngine(BitGrid grid, PieceSource pieceSource) {
+        this.grid = grid;
+        this.cols = grid.getCols();
+        this.rows = grid.getRows();
+        this.pieceSource = pieceSource;
+    }
+
+    /**
+     * Create a new engine playing on the given grid, with a randomly seeded source of pieces
+     * @param grid the grid to play on
+     */
+    public GameEngine(BitGrid grid) {
+        this(grid, new SeededPieceSource(SeededPieceSource.randomSeed()));
+    }
+
+    /**
+     * Create a new engine with its own grid of the specified columns and rows, taking its pieces from a source seeded
+     * with the given seed
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param seed seed for the pieces
+     */
+    public GameEngine(int cols, int rows, long seed) {
+        this(new BitGrid(cols, rows), new SeededPieceSource(seed));
+    }
+
+    /**
+     * Create a new engine with its own grid of the specified columns and rows
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public GameEngine(int cols, int rows) {
+        this(new BitGrid(cols, rows));
+    }
+
+    /**
+     * Set up the first current and following pieces
+     */
+    public void initialise() {
+        followingPiece = spawnPiece();
+        nextPiece();
+    }
+
+    /**
+     * Take a piece that has arrived from outside the engine, such as from the multiplayer server, as the first or
+     * second piece of the game. Once both have arrived the next piece listener is told, as initialise would. Later
+     * pieces are not needed until a piece is played, so the caller keeps them for the piece source.
+     * @param gamePiece the piece that arrived
+     * @return whether the piece was taken, or false if the game already has its current and following pieces
+     */
+    public boolean pieceArrived(GamePiece gamePiece) {
+        if(actionListener != null) {
+            actionListener.pieceArrived(gamePiece.getPiece());
+        }
+        if(currentPiece == null) {
+            currentPiece = gamePiece;
+            return true;
+        }
+        if(followingPiece == null) {
+            followingPiece = gamePiece;
+            if(nextPieceListener != null) {
+                nextPieceListener.nextPiece(currentPiece, followingPiece);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the current piece can be played centred on a given position
+     * @param x column
+     * @param y row
+     * @return whether the piece can be played
+     */
+    public boolean canPlay(int x, int y) {
+        return grid.canPlayPiece(currentPiece, x, y);
+    }
+
+    /**
+     * Play the current piece centred on a given position if it fits, then move on to the next piece and clear any
+     * lines that were completed
+     * @param x column
+     * @param y row
+     * @return whether the piece was played
+     */
+    public boolean play(int x, int y) {
+        if(!grid.canPlayPiece(currentPiece, x, y)) {
+            return false;
+        }
+        PieceShape played = currentPiece.getShape();
+        grid.playShape(played, x, y);
+        piecesPlayed++;
+        if(actionListener != null) {
+            actionListener.placed(currentPiece.getPiece(), currentPiece.getRotation(), x, y);
+        }
+        nextPiece();
+        afterPiece(played, x, y);
+        return true;
+    }
+
+    /**
+     * Clear any lines completed by the piece just played, and update the score and multiplier
+     * @param played the shape of the piece that was played
+     * @param placeX X Coordinate the piece was played at
+     * @param placeY Y Coordinate the piece was played at
+     */
+    protected void afterPiece(PieceShape played, int placeX, int placeY) {
+        int blocks = grid.clearLines(played, placeX, placeY, clearMask);
+        int lines = clearMask.cardinality();
+
+        if(lines > 0) {
+            linesCleared += lines;
+            score(lines, blocks);
+            multiplier++;
+            if(lineClearedListener != null) {
+                lineClearedListener.lineClear(clearMask, cols, rows);
+            }
+        } else {
+            multiplier = 1;
+        }
+    }
+
+    /**
+     * Increases the Score depending on the number of lines and blocks cleared.
+     * Also increments Level every 1000 points
+     * @param lines Number of Lines Cleared
+     * @param blocks Number of Blocks Cleared
+     */
+    protected void score(int lines, int blocks) {
+        score += scoreFor(lines, blocks, multiplier);
+        int newLevel = score / 1000;
+        if(level != newLevel) {
+            level = newLevel;
+            playSound("level.wav");
+        }
+    }
+
+    /**
+     * The score gained by clearing lines
+     * @param lines Number of Lines Cleared
+     * @param blocks Number of Blocks Cleared
+     * @param multiplier the multiplier at the time
+     * @return the score to add
+     */
+    public static int scoreFor(int lines, int blocks, int multiplier) {
+        return lines * blocks * 10 * multiplier;
+    }
+
+    /**
+     * Handle the player failing to play a piece in time. The current piece is thrown away, and a life is lost. If
+     * there were no lives left, the game is over.
+     * @return whether the game is over
+     */
+    public boolean timeout() {
+        if(actionListener != null) {
+            actionListener.timedOut();
+        }
+        nextPiece();
+        if(lives == 0) {
+            gameOver = true;
+        } else {
+            lives--;
+            playSound("lifelose.wav");
+            multiplier = 1;
+        }
+        return gameOver;
+    }
+
+    /**
+     * Creates the next piece from the piece source
+     * @return A new GamePiece
+     */
+    protected GamePiece spawnPiece() {
+        return GamePiece.createPiece(pieceSource.next());
+    }
+
+    /**
+     * Moves the following piece into the current piece, and spawns a new following piece
+     */
+    protected void nextPiece() {
+        currentPiece = followingPiece;
+        followingPiece = spawnPiece();
+        if(nextPieceListener != null) {
+            nextPieceListener.nextPiece(currentPiece, followingPiece);
+        }
+    }
+
+    /**
+     * Take a snapshot of the state of this game, which can be restored later. Only boards of up to
+     * GameState.MAX_BLOCKS blocks can be snapshot.
+     * @return the current state
+     */
+    public GameState snapshot() {
+        if(cols * rows > GameState.MAX_BLOCKS) {
+            throw new IllegalStateException("Board too large to snapshot: " + cols + "x" + rows);
+        }
+        return GameState.of(grid.getMask(), currentPiece, followingPiece, score, multiplier, lives, level, gameOver);
+    }
+
+    /**
+     * Restore this game to a snapshot taken earlier. Listeners are not told about the change. The piece source is not
+     * rewound, so the pieces drawn after a restore carry on from where the source is now.
+     * @param state the state to restore
+     */
+    public void restore(GameState state) {
+        grid.setMask(state.getMask());
+        restoreStats(state);
+    }
+
+    /**
+     * Restore this game to a snapshot whose board is given block by block, for boards too large for a GameState. The
+     * board held in the state itself is ignored. Listeners are not told about the change, and the piece source is not
+     * rewound.
+     * @param state the pieces, score, multiplier, lives and level to restore
+     * @param blocks the value of every block, indexed by y * cols + x, 0 for an empty block
+     */
+    public void restore(GameState state, byte[] blocks) {
+        for(int y = 0; y < rows; y++) {
+            for(int x = 0; x < cols; x++) {
+                grid.set(x, y, blocks[y * cols + x]);
+            }
+        }
+        restoreStats(state);
+    }
+
+    /**
+     * Restore everything but the board from a snapshot
+     * @param state the state to restore
+     */
+    private void restoreStats(GameState state) {
+        currentPiece = restorePiece(state.getCurrentPiece(), state.getCurrentRotation());
+        followingPiece = restorePiece(state.getFollowingPiece(), state.getFollowingRotation());
+        score = state.getScore();
+        multiplier = state.getMultiplier();
+        lives = state.getLives();
+        level = state.getLevel();
+        gameOver = state.isGameOver();
+    }
+
+    /**
+     * Recreate a piece from a snapshot
+     * @param piece piece number, or GameState.NO_PIECE
+     * @param rotation rotation
+     * @return the piece, or null
+     */
+    private static GamePiece restorePiece(int piece, int rotation) {
+        return piece == GameState.NO_PIECE ? null : GamePiece.createPiece(piece, rotation);
+    }
+
+    /**
+     * Rotates the currentPiece a given number of times clockwise
+     * @param rotations number of rotations, negative values rotate anticlockwise
+     */
+    public void rotateCurrentPiece(int rotations) {
+        currentPiece.rotate(rotations);
+        if(actionListener != null) {
+            actionListener.rotated(rotations);
+        }
+    }
+
+    /**
+     * Swaps currentPiece and followingPiece
+     */
+    public void swapCurrentPiece() {
+        GamePiece temp = followingPiece;
+        followingPiece = currentPiece;
+        currentPiece = temp;
+        if(actionListener != null) {
+            actionListener.swapped();
+        }
+    }
+
+    /**
+     * Play a sound, if anything is listening for them
+     * @param sound name of the sound file
+     */
+    protected void playSound(String sound) {
+        if(soundListener != null) {
+            soundListener.playSound(sound);
+        }
+    }
+
+    /**
+     * Returns the timerDelay, which is calculated based on level
+     * @return How long the timer should last in ms
+     */
+    public int getTimerDelay() {
+        return timerDelay(initialDelay, level);
+    }
+
+    /**
+     * The timer delay at a given level. It starts at the initial delay and drops by 500ms a level, down to 2500ms.
+     * @param initialDelay the delay at level 0 in ms
+     * @param level the level
+     * @return How long the timer should last in ms
+     */
+    public static int timerDelay(int initialDelay, int level) {
+        int delay = initialDelay - (500 * level);
+        return Math.max(delay, 2500);
+    }
+
+    public void setNextPieceListener(NextPieceListener nextPieceListener) {
+        this.nextPieceListener = nextPieceListener;
+    }
+
+    public void setLineClearedListener(LineClearedListener lineClearedListener) {
+        this.lineClearedListener = lineClearedListener;
+    }
+
+    public void setSoundListener(SoundListener soundListener) {
+        this.soundListener = soundListener;
+    }
+
+    public void setActionListener(GameActionListener actionListener) {
+        this.actionListener = actionListener;
+    }
+
+    /**
+     * Get the source of new pieces for this game
+     * @return piece source
+     */
+    public PieceSource getPieceSource() {
+        return pieceSource;
+    }
+
+    /**
+     * Get the grid the game is played on
+     * @return game grid model
+     */
+    public BitGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Get the number of columns in this game
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows in this game
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the currentPiece
+     * @return currentPiece
+     */
+    public GamePiece getCurrentPiece() {
+        return currentPiece;
+    }
+
+    /**
+     * Returns the followingPiece
+     * @return followingPiece
+     */
+    public GamePiece getFollowingPiece() {
+        return followingPiece;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Get the number of pieces played so far
+     * @return pieces played
+     */
+    public int getPiecesPlayed() {
+        return piecesPlayed;
+    }
+
+    /**
+     * Get the number of lines cleared so far
+     * @return lines cleared
+     */
+    public int getLinesCleared() {
+        return linesCleared;
+    }
+
+    /**
+     * Returns whether the player has run out of lives
+     * @return whether the game is over
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Get a Zobrist hash of the board and the current and following pieces, ignoring their rotation
+     * @return hash
+     */
+    public long getHash() {
+        return grid.getHash() ^ Zobrist.piece(MoveGenerator.CURRENT, pieceNumber(currentPiece))
+                ^ Zobrist.piece(MoveGenerator.FOLLOWING, pieceNumber(followingPiece));
+    }
+
+    /**
+     * Get the number of a piece
+     * @param piece piece, or null
+     * @return piece number, or GameState.NO_PIECE
+     */
+    private static int pieceNumber(GamePiece piece) {
+        return piece == null ? GameState.NO_PIECE : piece.getPiece();
+    }
+
+    /**
+     * Get the lines cleared by the last piece played
+     * @return clear mask, with bit y set for row y and bit rows + x set for column x
+     */
+    public BitSet getClearMask() {
+        return clearMask;
+    }
+}
@@ -0,0 +1,201 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A GameState is an immutable snapshot of everything the rules of a game depend on, packed into two longs: the board,
+ * the current and following pieces with their rotations, the score, multiplier, lives and level.
+ *
+ * The first long holds the board mask in bits 0-39, then the current piece number (4 bits) and rotation (2 bits), the
+ * following piece number (4 bits) and rotation (2 bits), the lives (4 bits) and whether the game is over. The second
+ * long holds the score in bits 0-31, the multiplier in bits 32-47 and the level in bits 48-63.
+ *
+ * Only boards of up to 40 blocks can be held, which covers the standard 5x5 board. The colour of each block is not
+ * part of the state.
+ */
+public final class GameState {
+
+    /**
+     * The largest number of blocks a board can have to fit in a GameState
+     */
+    public static final int MAX_BLOCKS = 40;
+
+    /**
+     * Piece number used when there is no piece
+     */
+    public static final int NO_PIECE = 15;
+
+    private static final long BOARD_MASK = (1L << MAX_BLOCKS) - 1;
+    private static final int CURRENT_SHIFT = 40;
+    private static final int FOLLOWING_SHIFT = 46;
+    private static final int LIVES_SHIFT = 52;
+    private static final int GAME_OVER_SHIFT = 56;
+    private static final int MULTIPLIER_SHIFT = 32;
+    private static final int LEVEL_SHIFT = 48;
+
+    /**
+     * The board, pieces, lives and game over flag
+     */
+    private final long board;
+
+    /**
+     * The score, multiplier and level
+     */
+    private final long stats;
+
+    /**
+     * Create a state from its two packed longs
+     * @param board the board, pieces, lives and game over flag
+     * @param stats the score, multiplier and level
+     */
+    public GameState(long board, long stats) {
+        this.board = board;
+        this.stats = stats;
+    }
+
+    /**
+     * Pack the given values into a new state
+     * @param mask board mask
+     * @param currentPiece current piece, or null
+     * @param followingPiece following piece, or null
+     * @param score score
+     * @param multiplier multiplier
+     * @param lives lives left
+     * @param level level
+     * @param gameOver whether the game is over
+     * @return the new state
+     */
+    public static GameState of(long mask, GamePiece currentPiece, GamePiece followingPiece, int score, int multiplier,
+                               int lives, int level, boolean gameOver) {
+        long board = (mask & BOARD_MASK)
+                | (long) pack(currentPiece) << CURRENT_SHIFT
+                | (long) pack(followingPiece) << FOLLOWING_SHIFT
+                | (long) (lives & 0xF) << LIVES_SHIFT
+                | (gameOver ? 1L : 0L) << GAME_OVER_SHIFT;
+        long stats = (score & 0xFFFFFFFFL)
+                | (long) (Math.min(multiplier, 0xFFFF)) << MULTIPLIER_SHIFT
+                | (long) (Math.min(level, 0xFFFF)) << LEVEL_SHIFT;
+        return new GameState(board, stats);
+    }
+
+    /**
+     * Pack a piece into its number and rotation
+     * @param piece piece, or null
+     * @return 6 bits, the piece number and then the rotation
+     */
+    private static int pack(GamePiece piece) {
+        if(piece == null) {
+            return NO_PIECE;
+        }
+        return piece.getPiece() | piece.getRotation() << 4;
+    }
+
+    /**
+     * Get the board, pieces, lives and game over flag as packed
+     * @return first packed long
+     */
+    public long getPackedBoard() {
+        return board;
+    }
+
+    /**
+     * Get the score, multiplier and level as packed
+     * @return second packed long
+     */
+    public long getPackedStats() {
+        return stats;
+    }
+
+    /**
+     * Get the board mask
+     * @return board mask, with bit y * cols + x set for every filled block
+     */
+    public long getMask() {
+        return board & BOARD_MASK;
+    }
+
+    /**
+     * Get the current piece number
+     * @return piece number, or NO_PIECE
+     */
+    public int getCurrentPiece() {
+        return (int) (board >>> CURRENT_SHIFT) & 0xF;
+    }
+
+    /**
+     * Get the rotation of the current piece
+     * @return rotation
+     */
+    public int getCurrentRotation() {
+        return (int) (board >>> CURRENT_SHIFT + 4) & 0x3;
+    }
+
+    /**
+     * Get the following piece number
+     * @return piece number, or NO_PIECE
+     */
+    public int getFollowingPiece() {
+        return (int) (board >>> FOLLOWING_SHIFT) & 0xF;
+    }
+
+    /**
+     * Get the rotation of the following piece
+     * @return rotation
+     */
+    public int getFollowingRotation() {
+        return (int) (board >>> FOLLOWING_SHIFT + 4) & 0x3;
+    }
+
+    public int getLives() {
+        return (int) (board >>> LIVES_SHIFT) & 0xF;
+    }
+
+    public boolean isGameOver() {
+        return (board >>> GAME_OVER_SHIFT & 1) != 0;
+    }
+
+    public int getScore() {
+        return (int) stats;
+    }
+
+    public int getMultiplier() {
+        return (int) (stats >>> MULTIPLIER_SHIFT) & 0xFFFF;
+    }
+
+    public int getLevel() {
+        return (int) (stats >>> LEVEL_SHIFT) & 0xFFFF;
+    }
+
+    /**
+     * Compare this state to another state
+     * @param obj other object to compare to
+     * @return true if equal, otherwise false
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(obj == this) return true;
+        if(obj instanceof GameState other) {
+            return board == other.board && stats == other.stats;
+        }
+        return false;
+    }
+
+    /**
+     * Calculate a hash code of this state
+     * @return hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(board * 31 + stats);
+    }
+
+    /**
+     * Return a string representation of this state
+     * @return string representation
+     */
+    @Override
+    public String toString() {
+        return "GameState [board = " + Long.toHexString(getMask()) + ", current = " + getCurrentPiece() + "/"
+                + getCurrentRotation() + ", following = " + getFollowingPiece() + "/" + getFollowingRotation()
+                + ", score = " + getScore() + ", multiplier = " + getMultiplier() + ", lives = " + getLives()
+                + ", level = " + getLevel() + "]";
+    }
+}
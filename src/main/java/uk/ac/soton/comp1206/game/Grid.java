@@ -3,33 +3,27 @@ package uk.ac.soton.comp1206.game;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 
+import java.util.BitSet;
+
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
  * arrow, with rows and columns.
  *
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display of the contents of
- * the grid.
+ * The values themselves are held by the primitive BitGrid this class extends. The Grid only adds an IntegerProperty
+ * for a block when one is asked for, so that it can be bound to enable display of the contents of the grid. Grids that
+ * are never displayed never create any properties.
  *
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  *
  * The Grid should be linked to a GameBoard for it's display.
  */
-public class Grid {
-
-    /**
-     * The number of columns in this grid
-     */
-    private final int cols;
-
-    /**
-     * The number of rows in this grid
-     */
-    private final int rows;
+public class Grid extends BitGrid {
 
     /**
-     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties.
+     * The properties that have been handed out for binding, indexed the same way as the blocks. Null until the first
+     * property is asked for.
      */
-    private final SimpleIntegerProperty[][] grid;
+    private SimpleIntegerProperty[] properties;
 
     /**
      * Create a new Grid with the specified number of columns and rows and initialise them
@@ -37,114 +31,106 @@ public class Grid {
      * @param rows number of rows
      */
     public Grid(int cols, int rows) {
-        this.cols = cols;
-        this.rows = rows;
-
-        //Create the grid itself
-        grid = new SimpleIntegerProperty[cols][rows];
-
-        //Add a SimpleIntegerProperty to every block in the grid
-        for(var y = 0; y < rows; y++) {
-            for(var x = 0; x < cols; x++) {
-                grid[x][y] = new SimpleIntegerProperty(0);
-            }
-        }
+        super(cols, rows);
     }
 
     /**
      * Get the Integer property contained inside the grid at a given row and column index. Can be used for binding.
+     * The property is created the first time it is asked for, and kept up to date from then on.
      * @param x column
      * @param y row
      * @return the IntegerProperty at the given x and y in this grid
      */
     public IntegerProperty getGridProperty(int x, int y) {
-        return grid[x][y];
+        if(!inBounds(x, y)) {
+            throw new ArrayIndexOutOfBoundsException("No such block: " + x + "," + y);
+        }
+        if(properties == null) {
+            properties = new SimpleIntegerProperty[cols * rows];
+        }
+        int index = y * cols + x;
+        if(properties[index] == null) {
+            properties[index] = new SimpleIntegerProperty(get(x, y));
+        }
+        return properties[index];
     }
 
     /**
-     * Update the value at the given x and y index within the grid
+     * Update the value at the given x and y index within the grid, and any property bound to it
      * @param x column
      * @param y row
      * @param value the new value
      */
+    @Override
     public void set(int x, int y, int value) {
-        grid[x][y].set(value);
-    }
-
-    /**
-     * Get the value represented at the given x and y index within the grid
-     * @param x column
-     * @param y row
-     * @return the value
-     */
-    public int get(int x, int y) {
-        try {
-            //Get the value held in the property at the x and y index provided
-            return grid[x][y].get();
-        } catch (ArrayIndexOutOfBoundsException e) {
-            //No such index
-            return -1;
+        super.set(x, y, value);
+        if(properties != null) {
+            var property = properties[y * cols + x];
+            if(property != null) {
+                property.set(value);
+            }
         }
     }
 
     /**
-     * Get the number of columns in this game
-     * @return number of columns
+     * Plays a given shape by its centre in a given position, and updates any properties bound to the blocks it covers
+     * @param shape A given PieceShape
+     * @param placeX X Coordinate
+     * @param placeY Y Coordinate
      */
-    public int getCols() {
-        return cols;
+    @Override
+    public void playShape(PieceShape shape, int placeX, int placeY) {
+        super.playShape(shape, placeX, placeY);
+        if(properties != null) {
+            for(int cell = 0; cell < shape.getCellCount(); cell++) {
+                var property = properties[(placeY + shape.getCellY(cell)) * cols + placeX + shape.getCellX(cell)];
+                if(property != null) {
+                    property.set(shape.getValue());
+                }
+            }
+        }
     }
 
     /**
-     * Get the number of rows in this game
-     * @return number of rows
+     * Find and clear every full line that a shape just played at the given position passes through, and update any
+     * properties bound to the blocks cleared
+     * @param shape the shape that was played
+     * @param placeX X Coordinate the shape was played at
+     * @param placeY Y Coordinate the shape was played at
+     * @param clearMask the mask to record the cleared lines in
+     * @return the number of blocks cleared
      */
-    public int getRows() {
-        return rows;
-    }
-
-    /**
-     * Returns whether a piece can be played in a given position
-     * @param gamePiece A given GamePiece
-     * @param placeX X Coordinate
-     * @param placeY Y Coordinate
-     * @return Whether a piece cna be played (True/False)
-     */
-    public Boolean canPlayPiece(GamePiece gamePiece, int placeX, int placeY) {
-        placeX -= 1;
-        placeY -= 1;
-        int[][] gamePieceBlocks = gamePiece.getBlocks();
-
-        for (int x = 0; x < gamePieceBlocks.length; x++) {
-            for (int y = 0; y < gamePieceBlocks[x].length; y++) {
-                int value = gamePieceBlocks[x][y];
-                if (value == 0) continue;
-                int grid = get(x + placeX, y + placeY);
-                if(grid != 0) {
-                    return false;
+    @Override
+    public int clearLines(PieceShape shape, int placeX, int placeY, BitSet clearMask) {
+        int blocks = super.clearLines(shape, placeX, placeY, clearMask);
+        if(blocks > 0 && properties != null) {
+            for(int line = clearMask.nextSetBit(0); line >= 0; line = clearMask.nextSetBit(line + 1)) {
+                for(int i = 0; i < (line < rows ? cols : rows); i++) {
+                    var property = line < rows ? properties[line * cols + i] : properties[i * cols + line - rows];
+                    if(property != null) {
+                        property.set(0);
+                    }
                 }
             }
         }
-        return true;
+        return blocks;
     }
 
     /**
-     * Plays a given GamePiece by its centre in a given position
-     * @param gamePiece A given GamePiece
-     * @param placeX X Coordinate
-     * @param placeY Y Coordinate
+     * Replace the whole board with the given mask, and update any properties bound to blocks that changed
+     * @param mask board mask, with bit y * cols + x set for every filled block
      */
-    public void playPiece(GamePiece gamePiece, int placeX, int placeY) {
-        placeX -=1;
-        placeY -=1;
-        int[][] gamePieceBlocks = gamePiece.getBlocks();
-
-        for(int x = 0; x < gamePieceBlocks.length; x++) {
-            for(int y = 0; y < gamePieceBlocks[x].length; y++) {
-                int value = gamePieceBlocks[x][y];
-                if(value == 0) continue;
-
-                set(x+placeX, y + placeY, value);
+    @Override
+    public void setMask(long mask) {
+        long changed = getMask() ^ mask;
+        super.setMask(mask);
+        if(properties != null) {
+            for(long bits = changed; bits != 0; bits &= bits - 1) {
+                int index = Long.numberOfTrailingZeros(bits);
+                var property = properties[index];
+                if(property != null) {
+                    property.set(get(index % cols, index / cols));
+                }
             }
         }
     }
@@ -152,10 +138,14 @@ public class Grid {
     /**
      * Clears the whole Grid
      */
+    @Override
     public void clearGrid() {
-        for(int x = 0; x < cols; x++) {
-            for(int y = 0; y < rows; y++) {
-                grid[x][y].set(0);
+        super.clearGrid();
+        if(properties != null) {
+            for(var property : properties) {
+                if(property != null) {
+                    property.set(0);
+                }
             }
         }
     }
@@ -0,0 +1,414 @@
+package uk.ac.soton.comp1206.game;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A HashedWheelTimer is a GameClock which runs the timeouts of any number of games on a single thread. Time is cut
+ * into ticks, and the wheel is a ring of buckets, one per tick. A timeout is put in the bucket its deadline falls in,
+ * with a count of how many more times round the wheel it must wait, so scheduling and cancelling are O(1) whatever
+ * the number of games. Each tick the timer thread only looks at one bucket.
+ *
+ * Timeouts can be scheduled and cancelled from any thread. They are handed to the timer thread through lock free
+ * queues, and only the timer thread touches the buckets. A timeout runs within one tick after its deadline.
+ *
+ * Expired tasks run on the timer thread itself, unless an executor is given, so they should be short, as the turn
+ * timeouts of a Game are.
+ *
+ * A manual timer has no thread and does not follow the wall clock. Its ticks only happen when it is advanced, on the
+ * calling thread, so tests can check exactly when each timeout runs.
+ */
+public class HashedWheelTimer implements GameClock {
+
+    private static final Logger logger = LogManager.getLogger(HashedWheelTimer.class);
+
+    /**
+     * Default length of a tick in ms
+     */
+    public static final long DEFAULT_TICK = 10;
+
+    /**
+     * Default number of buckets. With the default tick the wheel turns every 5 seconds.
+     */
+    public static final int DEFAULT_WHEEL = 512;
+
+    /**
+     * Most new timeouts moved into the wheel in one tick, so the timer thread always keeps ticking
+     */
+    private static final int MAX_TRANSFER = 100_000;
+
+    private static final int WAITING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    /**
+     * The timer shared by every game that was not given its own clock
+     */
+    private static HashedWheelTimer shared;
+
+    /**
+     * A timeout waiting in the wheel. Its state only moves once, from waiting to cancelled or expired.
+     */
+    private final class Entry implements Timeout {
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private final long deadline;
+        private final Runnable task;
+        private long rounds;
+        private Entry previous;
+        private Entry next;
+        private Bucket bucket;
+
+        private Entry(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        /**
+         * Stop the task from running. The entry is removed from its bucket by the timer thread on its next tick.
+         */
+        @Override
+        public void cancel() {
+            if(state.compareAndSet(WAITING, CANCELLED)) {
+                cancelled.add(this);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of the entries in one slot of the wheel
+     */
+    private static final class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        private void add(Entry entry) {
+            entry.bucket = this;
+            if(head == null) {
+                head = tail = entry;
+            } else {
+                tail.next = entry;
+                entry.previous = tail;
+                tail = entry;
+            }
+        }
+
+        private Entry remove(Entry entry) {
+            Entry next = entry.next;
+            if(entry.previous != null) {
+                entry.previous.next = next;
+            } else {
+                head = next;
+            }
+            if(next != null) {
+                next.previous = entry.previous;
+            } else {
+                tail = entry.previous;
+            }
+            entry.previous = entry.next = null;
+            entry.bucket = null;
+            return next;
+        }
+    }
+
+    /**
+     * Length of a tick in ms
+     */
+    private final long tick;
+
+    /**
+     * The buckets, one per tick
+     */
+    private final Bucket[] wheel;
+
+    /**
+     * Mask of the bucket index, as the number of buckets is a power of two
+     */
+    private final int mask;
+
+    /**
+     * Runs expired tasks, or null to run them on the timer thread
+     */
+    private final Executor executor;
+
+    /**
+     * Timeouts scheduled since the last tick
+     */
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Timeouts cancelled since the last tick
+     */
+    private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of timeouts waiting to run
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * The time the timer was created, which is time 0 on this clock
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * The timer thread, or null for a manual timer
+     */
+    private final Thread thread;
+
+    /**
+     * The time of a manual timer, only used by the thread advancing it
+     */
+    private long time;
+
+    private volatile boolean running = true;
+
+    /**
+     * Ticks completed, only used by the thread running the ticks
+     */
+    private long ticks;
+
+    /**
+     * Create a timer with the default tick and wheel size, running tasks on its own thread
+     */
+    public HashedWheelTimer() {
+        this(DEFAULT_TICK, DEFAULT_WHEEL, null);
+    }
+
+    /**
+     * Create a timer and start its thread
+     * @param tick length of a tick in ms
+     * @param buckets number of buckets, rounded up to a power of two
+     * @param executor runs expired tasks, or null to run them on the timer thread
+     */
+    public HashedWheelTimer(long tick, int buckets, Executor executor) {
+        this(tick, buckets, executor, false);
+    }
+
+    /**
+     * Create a timer, and start its thread unless it is manual
+     * @param tick length of a tick in ms
+     * @param buckets number of buckets, rounded up to a power of two
+     * @param executor runs expired tasks, or null to run them on the thread running the ticks
+     * @param manual whether the timer only ticks when it is advanced
+     */
+    private HashedWheelTimer(long tick, int buckets, Executor executor, boolean manual) {
+        if(tick < 1 || buckets < 1 || buckets > 1 << 20) {
+            throw new IllegalArgumentException("Invalid wheel: tick " + tick + ", buckets " + buckets);
+        }
+        int size = Integer.highestOneBit(buckets);
+        if(size < buckets) {
+            size <<= 1;
+        }
+        this.tick = tick;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+
+        if(manual) {
+            thread = null;
+            return;
+        }
+        thread = new Thread(this::run, "game-timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Create a manual timer, which has no thread and only ticks when it is advanced
+     * @param tick length of a tick in ms
+     * @param buckets number of buckets, rounded up to a power of two
+     * @return a new manual timer
+     */
+    static HashedWheelTimer manual(long tick, int buckets) {
+        return new HashedWheelTimer(tick, buckets, null, true);
+    }
+
+    /**
+     * Get the timer shared by every game, starting it if needed
+     * @return shared timer
+     */
+    public static synchronized HashedWheelTimer shared() {
+        if(shared == null) {
+            shared = new HashedWheelTimer();
+        }
+        return shared;
+    }
+
+    /**
+     * Get the time since this timer was created, or the time a manual timer has been advanced to
+     * @return time in ms
+     */
+    @Override
+    public long now() {
+        if(thread == null) {
+            return time;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    /**
+     * Run a task once the delay has passed
+     * @param task task to run
+     * @param delay delay in ms
+     * @return the waiting task, which can be cancelled
+     */
+    @Override
+    public Timeout schedule(Runnable task, long delay) {
+        var entry = new Entry(now() + Math.max(0, delay), task);
+        pending.incrementAndGet();
+        added.add(entry);
+        return entry;
+    }
+
+    /**
+     * Get the number of timeouts waiting to run
+     * @return number of timeouts
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Get the length of a tick
+     * @return tick in ms
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Stop the timer thread. Timeouts still waiting will not run.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        if(thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Move a manual timer forward, running every tick that ends on the way on the calling thread
+     * @param delay time to move forward in ms
+     */
+    void advance(long delay) {
+        if(thread != null) {
+            throw new IllegalStateException("Only a manual timer can be advanced");
+        }
+        long target = time + delay;
+        while(running && (ticks + 1) * tick <= target) {
+            time = (ticks + 1) * tick;
+            tick(time);
+        }
+        time = target;
+    }
+
+    /**
+     * The timer thread: wait for each tick, then bring the wheel up to date and run the timeouts of the bucket
+     */
+    private void run() {
+        while(running) {
+            long deadline = (ticks + 1) * tick;
+            long wait = deadline - now();
+            if(wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    //Woken by shutdown
+                }
+                continue;
+            }
+            tick(deadline);
+        }
+        logger.info("Timer stopped");
+    }
+
+    /**
+     * Bring the wheel up to date and run the timeouts of the current bucket
+     * @param deadline the time of the current tick
+     */
+    private void tick(long deadline) {
+        removeCancelled();
+        transferAdded();
+        expire(wheel[(int) (ticks & mask)], deadline);
+        ticks++;
+    }
+
+    /**
+     * Take cancelled timeouts out of their buckets
+     */
+    private void removeCancelled() {
+        for(Entry entry = cancelled.poll(); entry != null; entry = cancelled.poll()) {
+            pending.decrementAndGet();
+            if(entry.bucket != null) {
+                entry.bucket.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Put newly scheduled timeouts in the bucket of their deadline
+     */
+    private void transferAdded() {
+        for(int i = 0; i < MAX_TRANSFER; i++) {
+            Entry entry = added.poll();
+            if(entry == null) {
+                return;
+            }
+            if(entry.state.get() != WAITING) {
+                continue;
+            }
+            long due = entry.deadline / tick;
+            entry.rounds = (due - ticks) / wheel.length;
+            //A deadline that has already passed goes in the current bucket
+            wheel[(int) (Math.max(due, ticks) & mask)].add(entry);
+        }
+    }
+
+    /**
+     * Run every timeout in a bucket that is due, and count down the rounds of the rest
+     * @param bucket the bucket of the current tick
+     * @param deadline the time of the current tick
+     */
+    private void expire(Bucket bucket, long deadline) {
+        Entry entry = bucket.head;
+        while(entry != null) {
+            if(entry.rounds <= 0 && entry.deadline <= deadline) {
+                Entry next = bucket.remove(entry);
+                if(entry.state.compareAndSet(WAITING, EXPIRED)) {
+                    pending.decrementAndGet();
+                    runTask(entry.task);
+                }
+                entry = next;
+            } else {
+                entry.rounds--;
+                entry = entry.next;
+            }
+        }
+    }
+
+    /**
+     * Run an expired task, so that one failing task cannot stop the timer
+     * @param task task to run
+     */
+    private void runTask(Runnable task) {
+        try {
+            if(executor != null) {
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+        } catch (Throwable e) {
+            logger.error("Timeout task failed", e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * The MoveGenerator lists every legal placement on a board of up to 64 blocks, held as a board mask. As the player can
+ * swap to the following piece and rotate freely before placing, it can list the moves for both the current and the
+ * following piece, in every rotation that gives a different shape.
+ *
+ * Moves are written into a caller's int buffer, each packed into a single int: the column in bits 0-7, the row in bits
+ * 8-15, the rotation in bits 16-17, the piece number in bits 18-21 and whether the piece is the following piece in
+ * bit 22. Nothing is allocated while generating.
+ *
+ * A MoveGenerator only holds tables that never change, so it can be shared between threads.
+ */
+public final class MoveGenerator {
+
+    /**
+     * The move slot for the current piece
+     */
+    public static final int CURRENT = 0;
+
+    /**
+     * The move slot for the following piece, which is played by swapping first
+     */
+    public static final int FOLLOWING = 1;
+
+    /**
+     * Number of columns of the board
+     */
+    private final int cols;
+
+    /**
+     * Number of rows of the board
+     */
+    private final int rows;
+
+    /**
+     * The placement mask of every shape at every position on the board
+     */
+    private final long[][] placements;
+
+    /**
+     * The Zobrist hash of every placement mask, indexed the same way
+     */
+    private final long[][] hashes;
+
+    /**
+     * The mask of each row, then each column, in the same order as a clear mask
+     */
+    private final long[] lines;
+
+    /**
+     * For every shape, the centre positions where it fits inside the board, packed as the row in bits 8-15 and the
+     * column in bits 0-7 as in a move
+     */
+    private final int[][] anchors;
+
+    /**
+     * For every shape, the placement mask at each of its anchors
+     */
+    private final long[][] masks;
+
+    /**
+     * Create a move generator for a board of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public MoveGenerator(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.placements = PieceShape.placementMasks(cols, rows);
+        hashes = new long[placements.length][cols * rows];
+        anchors = new int[placements.length][];
+        masks = new long[placements.length][];
+        for(int shape = 0; shape < placements.length; shape++) {
+            int count = 0;
+            for(long mask : placements[shape]) {
+                if(mask != 0) count++;
+            }
+            anchors[shape] = new int[count];
+            masks[shape] = new long[count];
+            count = 0;
+            for(int index = 0; index < placements[shape].length; index++) {
+                hashes[shape][index] = Zobrist.hash(placements[shape][index]);
+                if(placements[shape][index] == 0) continue;
+                anchors[shape][count] = (index / cols) << 8 | index % cols;
+                masks[shape][count] = placements[shape][index];
+                count++;
+            }
+        }
+
+        lines = new long[rows + cols];
+        for(int y = 0; y < rows; y++) {
+            for(int x = 0; x < cols; x++) {
+                lines[y] |= 1L << (y * cols + x);
+                lines[rows + x] |= 1L << (y * cols + x);
+            }
+        }
+    }
+
+    /**
+     * Get the number of columns of the board
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows of the board
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the mask of a line of the board
+     * @param line the row number, or rows + the column number for a column
+     * @return mask of every block in the line
+     */
+    public long lineMask(int line) {
+        return lines[line];
+    }
+
+    /**
+     * Get the size of buffer needed to hold every move for two pieces on this board
+     * @return buffer size
+     */
+    public int maxMoves() {
+        return 2 * PieceShape.ROTATIONS * cols * rows;
+    }
+
+    /**
+     * Write every legal placement of the current and following pieces into the buffer. If both pieces are the same, the
+     * following piece's moves are left out as they are the same placements.
+     * @param board board mask
+     * @param currentPiece current piece number
+     * @param followingPiece following piece number
+     * @param buffer buffer to write moves into, at least maxMoves() long
+     * @return number of moves written
+     */
+    public int generate(long board, int currentPiece, int followingPiece, int[] buffer) {
+        int count = generate(board, currentPiece, CURRENT, buffer, 0);
+        if(followingPiece != currentPiece) {
+            count = generate(board, followingPiece, FOLLOWING, buffer, count);
+        }
+        return count;
+    }
+
+    /**
+     * Write every legal placement of one piece into the buffer, in each of its distinct rotations
+     * @param board board mask
+     * @param piece piece number
+     * @param slot CURRENT or FOLLOWING
+     * @param buffer buffer to write moves into
+     * @param offset where in the buffer to start writing
+     * @return the offset after the last move written
+     */
+    public int generate(long board, int piece, int slot, int[] buffer, int offset) {
+        for(int rotation : PieceShape.distinctRotations(piece)) {
+            int shape = piece * PieceShape.ROTATIONS + rotation;
+            int[] shapeAnchors = anchors[shape];
+            long[] shapeMasks = masks[shape];
+            int base = slot << 22 | piece << 18 | rotation << 16;
+            for(int i = 0; i < shapeMasks.length; i++) {
+                if((board & shapeMasks[i]) == 0) {
+                    buffer[offset++] = base | shapeAnchors[i];
+                }
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns whether a piece can be played anywhere on the board, in any rotation
+     * @param board board mask
+     * @param piece piece number
+     * @return whether there is any legal placement
+     */
+    public boolean canPlay(long board, int piece) {
+        for(int rotation : PieceShape.distinctRotations(piece)) {
+            for(long mask : masks[piece * PieceShape.ROTATIONS + rotation]) {
+                if((board & mask) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get every block a piece could cover in any of its legal placements
+     * @param board board mask
+     * @param piece piece number
+     * @return union of the masks of every legal placement, or 0 if the piece cannot be played
+     */
+    public long coverage(long board, int piece) {
+        long covered = 0;
+        for(int rotation : PieceShape.distinctRotations(piece)) {
+            for(long mask : masks[piece * PieceShape.ROTATIONS + rotation]) {
+                if((board & mask) == 0) {
+                    covered |= mask;
+                }
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Get the blocks that would be cleared on a board, as every block in a full row or column
+     * @param board board mask, after a piece has been played
+     * @return mask of the blocks in full lines, or 0 if there are none
+     */
+    public long fullLines(long board) {
+        long cleared = 0;
+        for(long line : lines) {
+            if((board & line) == line) {
+                cleared |= line;
+            }
+        }
+        return cleared;
+    }
+
+    /**
+     * Count the full rows and columns on a board
+     * @param board board mask, after a piece has been played
+     * @return number of full lines
+     */
+    public int countFullLines(long board) {
+        int count = 0;
+        for(long line : lines) {
+            if((board & line) == line) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the placement mask of a move
+     * @param move packed move
+     * @return mask of the blocks the move covers
+     */
+    public long mask(int move) {
+        return placements[shape(move)][y(move) * cols + x(move)];
+    }
+
+    /**
+     * Get the Zobrist hash of the blocks a move covers, so the hash of the board after the move is the hash before it
+     * XOR this
+     * @param move packed move
+     * @return hash of the move's placement mask
+     */
+    public long hash(int move) {
+        return hashes[shape(move)][y(move) * cols + x(move)];
+    }
+
+    /**
+     * Pack a move into an int
+     * @param slot CURRENT or FOLLOWING
+     * @param piece piece number
+     * @param rotation rotation
+     * @param x column of the centre
+     * @param y row of the centre
+     * @return packed move
+     */
+    public static int move(int slot, int piece, int rotation, int x, int y) {
+        return slot << 22 | piece << 18 | (rotation & 3) << 16 | y << 8 | x;
+    }
+
+    public static int x(int move) {
+        return move & 0xFF;
+    }
+
+    public static int y(int move) {
+        return move >>> 8 & 0xFF;
+    }
+
+    public static int rotation(int move) {
+        return move >>> 16 & 0x3;
+    }
+
+    public static int piece(int move) {
+        return move >>> 18 & 0xF;
+    }
+
+    public static int slot(int move) {
+        return move >>> 22 & 0x1;
+    }
+
+    /**
+     * Get the index of the shape a move plays
+     * @param move packed move
+     * @return piece number * ROTATIONS + rotation
+     */
+    public static int shape(int move) {
+        return move >>> 16 & 0x3F;
+    }
+
+    /**
+     * Return a string representation of a move
+     * @param move packed move
+     * @return string representation
+     */
+    public static String toString(int move) {
+        return (slot(move) == FOLLOWING ? "swap, " : "") + PieceShape.get(piece(move), rotation(move)) + " rotation "
+                + rotation(move) + " at " + x(move) + "," + y(move);
+    }
+}
@@ -1,12 +1,10 @@
 package uk.ac.soton.comp1206.game;
 
-import javafx.application.Platform;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.network.Communicator;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import java.util.LinkedList;
-import java.util.concurrent.Executors;
 
 /**
  * The MultiplayerGame extends the Game class, and implements communicator to allow for multiplayer to function.
@@ -43,38 +41,45 @@ public class MultiplayerGame extends Game{
     }
 
     /**
-     * Handles what should happen when a new piece is received from the server
-     * @param gamePiece
+     * Create an engine which takes its new pieces from the queue of pieces received from the server
+     * @return a new engine
      */
-    public void newPiece(GamePiece gamePiece) {
-        if(currentPiece == null) {
-            currentPiece = gamePiece; //First Piece
-        } else if(followingPiece == null){
-            followingPiece = gamePiece; //Second Piece
-            nextPieceListener.nextPiece(currentPiece, followingPiece);
-        } else {
-            queue.add(gamePiece);//Creates Queue
-        }
+    @Override
+    protected GameEngine createEngine() {
+        return new GameEngine(grid, this::takePiece);
     }
 
     /**
-     * Reassigns current and following pieces, and removing pieces from the queue
+     * Takes the next piece from the queue of pieces received from the server, and asks the server for another
+     * @return piece number
      */
-    @Override
-    public void nextPiece() {
-        currentPiece = followingPiece;
-        followingPiece = queue.remove();
-        nextPieceListener.nextPiece(currentPiece, followingPiece);
+    protected int takePiece() {
+        GamePiece gamePiece = queue.remove();
         communicator.send("PIECE");
+        return gamePiece.getPiece();
+    }
+
+    /**
+     * Handles what should happen when a new piece is received from the server
+     * @param gamePiece
+     */
+    public void newPiece(GamePiece gamePiece) {
+        //The engine takes the first and second pieces, the rest wait in the queue for the piece source
+        if(!engine.pieceArrived(gamePiece)) {
+            queue.add(gamePiece);
+        }
     }
 
     /**
-     * Handles what should happen once a piece has been played, and sends a current description of the game board to the
-     * server
+     * Handles what should happen once a piece has been played, and sends the new score if lines were cleared and a
+     * current description of the game board to the server
      */
     @Override
     public void afterPiece() {
         super.afterPiece();
+        if(!engine.getClearMask().isEmpty()) {
+            communicator.send("SCORE " + this.scoreProperty().get());
+        }
         String board = "BOARD ";
         for (int x = 0; x < this.getCols(); x++) {
             for(int y = 0; y < this.getRows(); y++) {
@@ -89,27 +94,14 @@ public class MultiplayerGame extends Game{
      */
     @Override
     public void initialiseGame() {
-        timer = Executors.newSingleThreadScheduledExecutor();
         communicator = gameWindow.getCommunicator();
-        //Listens for messages from communicator and handles the command
-        communicator.addListener(message -> Platform.runLater(() -> listen(message.trim())));
+        //Listens for messages from communicator and handles them on the owner thread of this game
+        communicator.addListener(message -> submit(() -> listen(message.trim())));
         for(int x = 0; x < 5; x++) {
             communicator.send("PIECE");
         }
     }
 
-    /**
-     * Increases the Score depending on the number of lines and blocks cleared. Also increments Level every 1000 points.
-     * Sends score to the server.
-     * @param lines number of lines cleared
-     * @param blocks number of blocks cleared
-     */
-    @Override
-    public void score(int lines, int blocks) {
-        super.score(lines, blocks);
-        communicator.send("SCORE " + this.scoreProperty().get());
-    }
-
     /**
      * Handles messages from communicator
      * @param message message received from communicator
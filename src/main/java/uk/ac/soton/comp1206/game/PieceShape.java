@@ -0,0 +1,350 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A PieceShape is one of the fixed shapes a GamePiece can take: a piece number together with a rotation. There are
+ * only 15 pieces with 4 rotations each, so every shape is created once up front and shared. A PieceShape is immutable,
+ * so rotating a piece is only a change of which shape it points at.
+ *
+ * Each shape holds the offsets of its blocks relative to the centre of its 3x3 grid, and can provide a table of
+ * occupancy masks for every position on a small board, so checking a placement is a single AND.
+ */
+public final class PieceShape {
+
+    /**
+     * The number of distinct rotations of every piece
+     */
+    public static final int ROTATIONS = 4;
+
+    /**
+     * The names of each piece, by piece number
+     */
+    private static final String[] NAMES = {
+            "Line", "C", "Plus", "Dot", "Square", "L", "J", "S", "Z", "T", "X", "Corner", "Inverse Corner", "Diagonal",
+            "Double"
+    };
+
+    /**
+     * The 3x3 block makeup of each piece, by piece number, before any rotation
+     */
+    private static final int[][][] BLOCKS = {
+            {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}},
+            {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}},
+            {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}},
+            {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}},
+            {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}},
+            {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}},
+            {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}},
+            {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}},
+            {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}},
+            {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}},
+            {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}},
+            {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}},
+            {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}},
+            {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}},
+            {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}}
+    };
+
+    /**
+     * Every shape, indexed by piece number * ROTATIONS + rotation
+     */
+    private static final PieceShape[] SHAPES = new PieceShape[GamePiece.PIECES * ROTATIONS];
+
+    /**
+     * The rotations of each piece that give a different shape, by piece number. Symmetric pieces such as the Plus, Dot
+     * and X only have one.
+     */
+    private static final int[][] DISTINCT_ROTATIONS = new int[GamePiece.PIECES][];
+
+    /**
+     * Placement mask tables for small boards, keyed by board size
+     */
+    private static final ConcurrentHashMap<Integer, long[][]> PLACEMENTS = new ConcurrentHashMap<>();
+
+    static {
+        for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+            int[][] blocks = BLOCKS[piece];
+            for(int rotation = 0; rotation < ROTATIONS; rotation++) {
+                SHAPES[piece * ROTATIONS + rotation] = new PieceShape(piece, rotation, blocks);
+                blocks = rotate(blocks);
+            }
+
+            //Keep the first rotation of every distinct shape
+            int[] distinct = new int[ROTATIONS];
+            int count = 0;
+            for(int rotation = 0; rotation < ROTATIONS; rotation++) {
+                int mask = SHAPES[piece * ROTATIONS + rotation].shapeMask;
+                boolean seen = false;
+                for(int i = 0; i < count; i++) {
+                    seen |= SHAPES[piece * ROTATIONS + distinct[i]].shapeMask == mask;
+                }
+                if(!seen) {
+                    distinct[count++] = rotation;
+                }
+            }
+            DISTINCT_ROTATIONS[piece] = Arrays.copyOf(distinct, count);
+        }
+    }
+
+    /**
+     * The piece number of this shape
+     */
+    private final int piece;
+
+    /**
+     * The rotation of this shape, from 0 to 3 clockwise quarter turns
+     */
+    private final int rotation;
+
+    /**
+     * The 3x3 grid of this shape, with either 0 (empty) or the value of the piece for each block
+     */
+    private final int[][] blocks;
+
+    /**
+     * The column offset of each block from the centre
+     */
+    private final int[] cellX;
+
+    /**
+     * The row offset of each block from the centre
+     */
+    private final int[] cellY;
+
+    /**
+     * The shape as a 9 bit mask of its 3x3 grid, bit (y + 1) * 3 + (x + 1) for the block at offset x, y
+     */
+    private final int shapeMask;
+
+    /**
+     * Create a shape from its 3x3 block makeup. Only called when building the table.
+     * @param piece piece number
+     * @param rotation rotation
+     * @param shape 3x3 block makeup, 1 for a block and 0 for empty
+     */
+    private PieceShape(int piece, int rotation, int[][] shape) {
+        this.piece = piece;
+        this.rotation = rotation;
+        this.blocks = new int[3][3];
+
+        int count = 0;
+        for(int x = 0; x < 3; x++) {
+            for(int y = 0; y < 3; y++) {
+                if(shape[x][y] != 0) count++;
+            }
+        }
+        cellX = new int[count];
+        cellY = new int[count];
+
+        int cell = 0;
+        int mask = 0;
+        for(int x = 0; x < 3; x++) {
+            for(int y = 0; y < 3; y++) {
+                if(shape[x][y] == 0) continue;
+                blocks[x][y] = piece + 1;
+                cellX[cell] = x - 1;
+                cellY[cell] = y - 1;
+                mask |= 1 << (y * 3 + x);
+                cell++;
+            }
+        }
+        shapeMask = mask;
+    }
+
+    /**
+     * Rotate a 3x3 block makeup once clockwise
+     * @param blocks block makeup
+     * @return a new, rotated block makeup
+     */
+    private static int[][] rotate(int[][] blocks) {
+        int[][] rotated = new int[3][3];
+        for(int x = 0; x < 3; x++) {
+            for(int y = 0; y < 3; y++) {
+                rotated[2 - y][x] = blocks[x][y];
+            }
+        }
+        return rotated;
+    }
+
+    /**
+     * Get the shape of the given piece number and rotation
+     * @param piece piece number
+     * @param rotation number of clockwise rotations, any value is taken modulo 4
+     * @return the shared shape
+     */
+    public static PieceShape get(int piece, int rotation) {
+        if(piece < 0 || piece >= GamePiece.PIECES) {
+            throw new IndexOutOfBoundsException("No such piece: " + piece);
+        }
+        return SHAPES[piece * ROTATIONS + (rotation & 3)];
+    }
+
+    /**
+     * Get the shape at the given index into the table
+     * @param index piece number * ROTATIONS + rotation
+     * @return the shared shape
+     */
+    public static PieceShape get(int index) {
+        return SHAPES[index];
+    }
+
+    /**
+     * Get the rotations of a piece that each give a different shape
+     * @param piece piece number
+     * @return the distinct rotations, lowest first. The array is shared and must not be modified.
+     */
+    public static int[] distinctRotations(int piece) {
+        return DISTINCT_ROTATIONS[piece];
+    }
+
+    /**
+     * Get the table of placement masks for every shape on a board of the given size. The board must have 64 blocks or
+     * less. The table is indexed by shape index and then by the index y * cols + x of the centre of the shape. Each mask
+     * has a bit set for every block the shape would cover, or is 0 if the shape does not fit inside the board there.
+     *
+     * Tables are built once per board size and shared, and must not be modified.
+     * @param cols number of columns
+     * @param rows number of rows
+     * @return the table of placement masks
+     */
+    public static long[][] placementMasks(int cols, int rows) {
+        if(cols * rows > 64) {
+            throw new IllegalArgumentException("Board too large for placement masks: " + cols + "x" + rows);
+        }
+        return PLACEMENTS.computeIfAbsent(cols * 65 + rows, key -> {
+            long[][] table = new long[SHAPES.length][cols * rows];
+            for(int index = 0; index < SHAPES.length; index++) {
+                var shape = SHAPES[index];
+                for(int y = 0; y < rows; y++) {
+                    for(int x = 0; x < cols; x++) {
+                        table[index][y * cols + x] = shape.maskAt(x, y, cols, rows);
+                    }
+                }
+            }
+            return table;
+        });
+    }
+
+    /**
+     * Build the occupancy mask of this shape centred at the given position
+     * @param x centre column
+     * @param y centre row
+     * @param cols number of columns of the board
+     * @param rows number of rows of the board
+     * @return the mask, or 0 if the shape does not fit
+     */
+    private long maskAt(int x, int y, int cols, int rows) {
+        long mask = 0;
+        for(int cell = 0; cell < cellX.length; cell++) {
+            int blockX = x + cellX[cell];
+            int blockY = y + cellY[cell];
+            if(blockX < 0 || blockY < 0 || blockX >= cols || blockY >= rows) {
+                return 0;
+            }
+            mask |= 1L << (blockY * cols + blockX);
+        }
+        return mask;
+    }
+
+    /**
+     * Get the piece number of this shape
+     * @return piece number
+     */
+    public int getPiece() {
+        return piece;
+    }
+
+    /**
+     * Get the rotation of this shape
+     * @return number of clockwise rotations, from 0 to 3
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Get the index of this shape into the table
+     * @return piece number * ROTATIONS + rotation
+     */
+    public int getIndex() {
+        return piece * ROTATIONS + rotation;
+    }
+
+    /**
+     * Get the shape this one becomes after the given number of clockwise rotations
+     * @param rotations number of rotations, negative values rotate anticlockwise
+     * @return the rotated shape
+     */
+    public PieceShape rotate(int rotations) {
+        return SHAPES[piece * ROTATIONS + ((rotation + rotations) & 3)];
+    }
+
+    /**
+     * Get the value of this shape, which is also the colour it is drawn in
+     * @return piece value
+     */
+    public int getValue() {
+        return piece + 1;
+    }
+
+    /**
+     * Get the name of this shape
+     * @return name of the piece
+     */
+    public String getName() {
+        return NAMES[piece];
+    }
+
+    /**
+     * Get the 3x3 block makeup of this shape. The array is shared and must not be modified.
+     * @return 2D grid of the blocks representing the shape
+     */
+    public int[][] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the number of blocks in this shape
+     * @return number of blocks
+     */
+    public int getCellCount() {
+        return cellX.length;
+    }
+
+    /**
+     * Get the column offset of a block from the centre
+     * @param cell block number
+     * @return offset, from -1 to 1
+     */
+    public int getCellX(int cell) {
+        return cellX[cell];
+    }
+
+    /**
+     * Get the row offset of a block from the centre
+     * @param cell block number
+     * @return offset, from -1 to 1
+     */
+    public int getCellY(int cell) {
+        return cellY[cell];
+    }
+
+    /**
+     * Get this shape as a 9 bit mask of its 3x3 grid. Two rotations of a piece with the same mask are the same shape.
+     * @return shape mask
+     */
+    public int getShapeMask() {
+        return shapeMask;
+    }
+
+    /**
+     * Return the string representation of this shape
+     * @return the name of the piece
+     */
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
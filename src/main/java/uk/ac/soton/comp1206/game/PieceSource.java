@@ -0,0 +1,24 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A PieceSource decides which piece number comes next in a game. Each game owns its own source, so the order of its
+ * pieces does not depend on any other game or thread.
+ */
+public interface PieceSource {
+
+    /**
+     * Get the next piece number
+     * @return piece number, from 0 to GamePiece.PIECES - 1
+     */
+    int next();
+
+    /**
+     * Fill a buffer with the next piece numbers, in order. Used by simulations that want many pieces at once.
+     * @param buffer buffer to fill
+     */
+    default void fill(int[] buffer) {
+        for(int i = 0; i < buffer.length; i++) {
+            buffer[i] = next();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A PlacementMap holds every position a shape can be played centred on in a grid, and how many lines playing it there
+ * would clear. It is built once for a version of the grid, and can then be read as often as needed, for example while
+ * the player moves the cursor around the board.
+ *
+ * Each row of the grid is held as a bitmask of its empty blocks, split into 64 column words, so it works on grids of
+ * any size. A centre is valid when every cell of the shape lands on an empty block, so the valid centres of a row are
+ * the empty rows the shape touches, each shifted by the column offset of its cells, ANDed together.
+ *
+ * As a valid placement only covers empty blocks, the rows it clears only depend on the row it is centred on, and the
+ * columns it clears only on the column. The lines cleared at a centre are therefore a row count plus a column count,
+ * and no placement is ever tried on its own.
+ *
+ * A PlacementMap never changes once it is built, so it can be read from any thread.
+ */
+public final class PlacementMap {
+
+    /**
+     * The number of columns of the grid
+     */
+    private final int cols;
+
+    /**
+     * The number of rows of the grid
+     */
+    private final int rows;
+
+    /**
+     * The shape the map was built for
+     */
+    private final PieceShape shape;
+
+    /**
+     * The version of the grid the map was built for
+     */
+    private final long version;
+
+    /**
+     * The number of 64 column words in each row
+     */
+    private final int words;
+
+    /**
+     * The valid centres of each row, with bit x % 64 of word y * words + x / 64 set when the shape fits centred on x, y
+     */
+    private final long[] valid;
+
+    /**
+     * The rows that would be cleared by a placement centred on each row
+     */
+    private final byte[] rowLines;
+
+    /**
+     * The columns that would be cleared by a placement centred on each column
+     */
+    private final byte[] colLines;
+
+    /**
+     * The number of valid centres
+     */
+    private final int count;
+
+    /**
+     * The most lines any placement clears
+     */
+    private final int mostLines;
+
+    /**
+     * Build the map of a shape on the grid as it is now
+     * @param grid the grid
+     * @param shape the shape to play
+     */
+    public PlacementMap(BitGrid grid, PieceShape shape) {
+        this.cols = grid.getCols();
+        this.rows = grid.getRows();
+        this.shape = shape;
+        this.version = grid.getVersion();
+        this.words = (cols + 63) >>> 6;
+        this.valid = new long[rows * words];
+        this.rowLines = new byte[rows];
+        this.colLines = new byte[cols];
+
+        //The empty blocks of every row, with nothing set past the last column
+        long[] empty = new long[rows * words];
+        for(int y = 0; y < rows; y++) {
+            for(int word = 0; word < words; word++) {
+                empty[y * words + word] = ~grid.getRowMask(y, word) & columns(word);
+            }
+        }
+
+        //The shape's cells in each of its three rows and columns, by offset + 1
+        int[] rowCells = new int[3];
+        int[] colCells = new int[3];
+        for(int cell = 0; cell < shape.getCellCount(); cell++) {
+            rowCells[shape.getCellY(cell) + 1]++;
+            colCells[shape.getCellX(cell) + 1]++;
+        }
+
+        int count = 0;
+        for(int y = 0; y < rows; y++) {
+            for(int word = 0; word < words; word++) {
+                long fits = columns(word);
+                for(int cell = 0; cell < shape.getCellCount() && fits != 0; cell++) {
+                    int row = y + shape.getCellY(cell);
+                    fits &= row < 0 || row >= rows ? 0 : shifted(empty, row, word, shape.getCellX(cell));
+                }
+                valid[y * words + word] = fits;
+                count += Long.bitCount(fits);
+            }
+        }
+        this.count = count;
+
+        for(int y = 0; y < rows; y++) {
+            rowLines[y] = (byte) lines(rowCells, y, rows, cols, true, grid);
+        }
+        for(int x = 0; x < cols; x++) {
+            colLines[x] = (byte) lines(colCells, x, cols, rows, false, grid);
+        }
+
+        int mostLines = 0;
+        for(int y = 0; y < rows; y++) {
+            for(int word = 0; word < words; word++) {
+                for(long bits = valid[y * words + word]; bits != 0; bits &= bits - 1) {
+                    int x = word * 64 + Long.numberOfTrailingZeros(bits);
+                    mostLines = Math.max(mostLines, rowLines[y] + colLines[x]);
+                }
+            }
+        }
+        this.mostLines = mostLines;
+    }
+
+    /**
+     * Get the mask of the columns of a word that are inside the grid
+     * @param word column word
+     * @return mask
+     */
+    private long columns(int word) {
+        int width = cols - word * 64;
+        return width >= 64 ? -1L : (1L << width) - 1;
+    }
+
+    /**
+     * Get a word of a row's empty blocks, moved so that bit x is set when the block dx columns to its right is empty.
+     * Blocks shifted in from outside the grid are never empty.
+     * @param empty the empty blocks of every row
+     * @param row row
+     * @param word column word
+     * @param dx column offset, -1, 0 or 1
+     * @return shifted word
+     */
+    private long shifted(long[] empty, int row, int word, int dx) {
+        int index = row * words + word;
+        if(dx > 0) {
+            long carry = word + 1 < words ? empty[index + 1] << 63 : 0;
+            return empty[index] >>> 1 | carry;
+        }
+        if(dx < 0) {
+            long carry = word > 0 ? empty[index - 1] >>> 63 : 0;
+            return empty[index] << 1 | carry;
+        }
+        return empty[index];
+    }
+
+    /**
+     * Count the lines of one direction that a placement centred on a line would fill
+     * @param cells the shape's cells in the line before, on and after the centre
+     * @param line the row or column of the centre
+     * @param lines the number of lines in this direction
+     * @param length the number of blocks in each line
+     * @param isRow whether the lines are rows
+     * @param grid the grid
+     * @return lines filled
+     */
+    private static int lines(int[] cells, int line, int lines, int length, boolean isRow, BitGrid grid) {
+        int full = 0;
+        for(int offset = -1; offset <= 1; offset++) {
+            int other = line + offset;
+            if(cells[offset + 1] == 0 || other < 0 || other >= lines) {
+                continue;
+            }
+            int filled = isRow ? grid.getRowFill(other) : grid.getColFill(other);
+            if(filled + cells[offset + 1] == length) {
+                full++;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Get whether the map is still correct for a grid and shape
+     * @param grid the grid
+     * @param shape the shape
+     * @return whether neither has changed since the map was built
+     */
+    public boolean isFor(BitGrid grid, PieceShape shape) {
+        return this.shape == shape && version == grid.getVersion() && cols == grid.getCols() && rows == grid.getRows();
+    }
+
+    /**
+     * Get whether the shape can be played centred on a block
+     * @param x column
+     * @param y row
+     * @return whether it fits
+     */
+    public boolean isValid(int x, int y) {
+        if(x < 0 || y < 0 || x >= cols || y >= rows) {
+            return false;
+        }
+        return (valid[y * words + (x >>> 6)] & 1L << x) != 0;
+    }
+
+    /**
+     * Get how many lines playing the shape centred on a block would clear
+     * @param x column
+     * @param y row
+     * @return lines cleared, or -1 if the shape does not fit there
+     */
+    public int getLines(int x, int y) {
+        return isValid(x, y) ? rowLines[y] + colLines[x] : -1;
+    }
+
+    /**
+     * Get the number of blocks the shape can be played centred on
+     * @return valid centres
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Get the most lines any placement of the shape clears
+     * @return lines, 0 if none clears any or the shape does not fit
+     */
+    public int getMostLines() {
+        return mostLines;
+    }
+
+    public PieceShape getShape() {
+        return shape;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,92 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * A RingPieceSource draws its pieces from a seed like a SeededPieceSource, but generates them ahead into a ring buffer
+ * when it is created, so a game does not run the random generator while it is being played. Whenever every generated
+ * piece has been used, the ring is filled again with the next pieces in the sequence.
+ *
+ * The pieces come out in exactly the order a SeededPieceSource with the same seed gives them, so replays of the game
+ * only need to record the seed.
+ */
+public class RingPieceSource extends SeededPieceSource {
+
+    /**
+     * Number of pieces generated ahead by default, enough for a long game
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The generated pieces
+     */
+    private final int[] ring;
+
+    /**
+     * Mask taking a count of pieces to an index in the ring
+     */
+    private final int mask;
+
+    /**
+     * Number of pieces taken from the ring
+     */
+    private long read;
+
+    /**
+     * Number of pieces generated into the ring
+     */
+    private long written;
+
+    /**
+     * Create a new source of pieces from the given seed, with the default capacity
+     * @param seed seed
+     */
+    public RingPieceSource(long seed) {
+        this(seed, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new source of pieces from the given seed, generating the first pieces straight away
+     * @param seed seed
+     * @param capacity number of pieces to generate ahead, a power of two
+     */
+    public RingPieceSource(long seed, int capacity) {
+        super(seed);
+        if(capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        ring = new int[capacity];
+        mask = capacity - 1;
+        refill();
+    }
+
+    /**
+     * Get the next piece number from the ring, refilling it if every piece has been used
+     * @return piece number, from 0 to GamePiece.PIECES - 1
+     */
+    @Override
+    public int next() {
+        if(read == written) {
+            refill();
+        }
+        return ring[(int) (read++ & mask)];
+    }
+
+    /**
+     * Fill a buffer with the next piece numbers, in order
+     * @param buffer buffer to fill
+     */
+    @Override
+    public void fill(int[] buffer) {
+        for(int i = 0; i < buffer.length; i++) {
+            buffer[i] = next();
+        }
+    }
+
+    /**
+     * Generate pieces into every free slot of the ring
+     */
+    private void refill() {
+        for(long free = ring.length - (written - read); free > 0; free--) {
+            ring[(int) (written++ & mask)] = super.next();
+        }
+    }
+}
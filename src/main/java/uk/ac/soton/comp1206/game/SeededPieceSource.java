@@ -0,0 +1,73 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.SplittableRandom;
+
+/**
+ * A SeededPieceSource picks pieces uniformly at random from a SplittableRandom created from a single 64 bit seed. The
+ * same seed always produces the same sequence of pieces, on any thread and in any run, so games can be replayed.
+ */
+public class SeededPieceSource implements PieceSource {
+
+    /**
+     * Used to create seeds for games that were not given one
+     */
+    private static final SplittableRandom seeds = new SplittableRandom();
+
+    /**
+     * The seed this source was created from
+     */
+    private final long seed;
+
+    /**
+     * The random generator picking the pieces
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Create a new source of pieces from the given seed
+     * @param seed seed
+     */
+    public SeededPieceSource(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Create a new seed for a game that was not given one
+     * @return a new seed
+     */
+    public static long randomSeed() {
+        synchronized (seeds) {
+            return seeds.nextLong();
+        }
+    }
+
+    /**
+     * Get the next piece number
+     * @return piece number, from 0 to GamePiece.PIECES - 1
+     */
+    @Override
+    public int next() {
+        return random.nextInt(GamePiece.PIECES);
+    }
+
+    /**
+     * Fill a buffer with the next piece numbers, in order
+     * @param buffer buffer to fill
+     */
+    @Override
+    public void fill(int[] buffer) {
+        var random = this.random;
+        for(int i = 0; i < buffer.length; i++) {
+            buffer[i] = random.nextInt(GamePiece.PIECES);
+        }
+    }
+
+    /**
+     * Get the seed this source was created from
+     * @return seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
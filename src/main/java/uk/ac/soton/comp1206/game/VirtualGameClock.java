@@ -0,0 +1,155 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.PriorityQueue;
+
+/**
+ * A VirtualGameClock only moves forward when it is advanced, running every timeout it passes on the calling thread,
+ * in order. A game driven by a virtual clock can be played as fast as the CPU allows: skipping to the next timeout
+ * costs nothing, however long the turn would take in real time.
+ *
+ * A virtual clock is not thread safe, and should be used from the thread running its game.
+ */
+public class VirtualGameClock implements GameClock {
+
+    /**
+     * A task waiting for the clock to reach its time
+     */
+    private static class Task implements Timeout, Comparable<Task> {
+        private final long time;
+        private final long order;
+        private final Runnable runnable;
+        private boolean cancelled;
+
+        private Task(long time, long order, Runnable runnable) {
+            this.time = time;
+            this.order = order;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Tasks run in order of time, and tasks due at the same time in the order they were scheduled
+         * @param other task to compare with
+         * @return order
+         */
+        @Override
+        public int compareTo(Task other) {
+            int compare = Long.compare(time, other.time);
+            return compare != 0 ? compare : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * Tasks waiting to run, soonest first. Cancelled tasks are skipped when they reach the front.
+     */
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+
+    /**
+     * The current time
+     */
+    private long now;
+
+    /**
+     * Number of tasks scheduled so far, to keep tasks due at the same time in order
+     */
+    private long scheduled;
+
+    /**
+     * Create a new virtual clock, starting at time 0
+     */
+    public VirtualGameClock() {
+        this(0);
+    }
+
+    /**
+     * Create a new virtual clock, starting at the given time
+     * @param start start time in ms
+     */
+    public VirtualGameClock(long start) {
+        this.now = start;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Run a task once the clock has been advanced past the delay
+     * @param task task to run
+     * @param delay delay in ms
+     * @return the waiting task, which can be cancelled
+     */
+    @Override
+    public Timeout schedule(Runnable task, long delay) {
+        var waiting = new Task(now + Math.max(0, delay), scheduled++, task);
+        tasks.add(waiting);
+        return waiting;
+    }
+
+    /**
+     * Move the clock forward, running every task that falls due on the way at the time it is due. Tasks scheduled by
+     * those tasks run too, if they fall due in time.
+     * @param delay time to move forward in ms
+     */
+    public void advance(long delay) {
+        long target = now + delay;
+        while(!tasks.isEmpty() && tasks.peek().time <= target) {
+            runTask(tasks.poll());
+        }
+        now = target;
+    }
+
+    /**
+     * Move the clock straight to the next task that is waiting, and run it
+     * @return true if a task was run, false if there were none waiting
+     */
+    public boolean runNext() {
+        while(!tasks.isEmpty()) {
+            var task = tasks.poll();
+            if(!task.cancelled) {
+                runTask(task);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of tasks still waiting to run
+     * @return number of tasks
+     */
+    public int pending() {
+        int count = 0;
+        for(var task : tasks) {
+            if(!task.cancelled) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Cancel every waiting task
+     */
+    @Override
+    public void shutdown() {
+        tasks.clear();
+    }
+
+    /**
+     * Move the clock to a task's time and run it, unless it was cancelled
+     * @param task task to run
+     */
+    private void runTask(Task task) {
+        now = Math.max(now, task.time);
+        if(!task.cancelled) {
+            task.cancelled = true;
+            task.runnable.run();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Zobrist hashing of boards and pieces. Every block index has a fixed random key, and the hash of a board is the XOR of
+ * the keys of its filled blocks. Filling or emptying a block is then a single XOR, so a BitGrid can keep its hash up to
+ * date as pieces are played and lines are cleared, and a search can hash the board after a move from the hash before
+ * it.
+ *
+ * The keys are derived from the block index alone, so hashes are the same across runs and threads, and any board size
+ * can be hashed without building a table first.
+ */
+public final class Zobrist {
+
+    /**
+     * The keys of the first 64 blocks, for hashing board masks quickly
+     */
+    private static final long[] KEYS = new long[64];
+
+    /**
+     * The keys for the current piece, then the following piece
+     */
+    private static final long[] PIECE_KEYS = new long[2 * (GamePiece.PIECES + 1)];
+
+    static {
+        for(int i = 0; i < KEYS.length; i++) {
+            KEYS[i] = mix(i + 1);
+        }
+        for(int i = 0; i < PIECE_KEYS.length; i++) {
+            PIECE_KEYS[i] = mix(-(i + 1));
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Scramble a number into a well mixed 64 bit key
+     * @param seed number to scramble
+     * @return key
+     */
+    private static long mix(long seed) {
+        long z = seed * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the key of a block
+     * @param index block index, y * cols + x
+     * @return key
+     */
+    public static long key(int index) {
+        return index < KEYS.length ? KEYS[index] : mix(index + 1);
+    }
+
+    /**
+     * Hash a board mask
+     * @param mask board mask, with bit y * cols + x set for every filled block
+     * @return the XOR of the keys of every filled block
+     */
+    public static long hash(long mask) {
+        long hash = 0;
+        while(mask != 0) {
+            hash ^= KEYS[Long.numberOfTrailingZeros(mask)];
+            mask &= mask - 1;
+        }
+        return hash;
+    }
+
+    /**
+     * Get the key of a piece in a slot
+     * @param slot MoveGenerator.CURRENT or MoveGenerator.FOLLOWING
+     * @param piece piece number, or GameState.NO_PIECE
+     * @return key
+     */
+    public static long piece(int slot, int piece) {
+        return PIECE_KEYS[slot * (GamePiece.PIECES + 1) + piece];
+    }
+
+    /**
+     * Get the key of a multiplier
+     * @param multiplier multiplier
+     * @return key
+     */
+    public static long multiplier(int multiplier) {
+        return mix(0x4D55_4C54L << 32 | multiplier);
+    }
+}
@@ -0,0 +1,144 @@
+package uk.ac.soton.comp1206.puzzle;
+
+import uk.ac.soton.comp1206.game.PieceSource;
+
+import java.util.Arrays;
+
+/**
+ * A Puzzle is a board with some blocks already filled, and a fixed sequence of pieces which must clear the whole
+ * board. The pieces are played as in a normal game, so the current piece can be rotated, or swapped with the
+ * following piece, before it is placed. Every piece in the sequence is needed: the board cannot be cleared with fewer.
+ *
+ * A puzzle keeps one solution, which was found when it was verified, and whether it is the only one.
+ *
+ * A Puzzle never changes after it is created.
+ */
+public final class Puzzle {
+
+    private final int cols;
+    private final int rows;
+    private final long board;
+    private final int[] pieces;
+    private final int[] solution;
+    private final boolean unique;
+    private final int difficulty;
+
+    /**
+     * Create a puzzle
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param board mask of the filled blocks, bit y * cols + x for the block at x, y
+     * @param pieces piece numbers, in the order they arrive
+     * @param solution a packed move for each piece which clears the board, as by MoveGenerator
+     * @param unique whether the solution is the only one
+     * @param difficulty the number of positions the solver searched to verify the puzzle
+     */
+    public Puzzle(int cols, int rows, long board, int[] pieces, int[] solution, boolean unique, int difficulty) {
+        if(cols * rows > 64) {
+            throw new IllegalArgumentException("Puzzles can only be played on boards of up to 64 blocks");
+        }
+        if(solution.length != pieces.length) {
+            throw new IllegalArgumentException("A puzzle's solution needs a move for every piece");
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.board = board;
+        this.pieces = pieces.clone();
+        this.solution = solution.clone();
+        this.unique = unique;
+        this.difficulty = difficulty;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the blocks filled at the start
+     * @return board mask
+     */
+    public long getBoard() {
+        return board;
+    }
+
+    /**
+     * Get the number of moves the puzzle must be solved in, which is the number of pieces
+     * @return moves
+     */
+    public int getMoves() {
+        return pieces.length;
+    }
+
+    /**
+     * Get a piece of the sequence
+     * @param index position in the sequence
+     * @return piece number
+     */
+    public int getPiece(int index) {
+        return pieces[index];
+    }
+
+    /**
+     * Get the sequence of pieces
+     * @return a copy of the piece numbers
+     */
+    public int[] getPieces() {
+        return pieces.clone();
+    }
+
+    /**
+     * Get the solution found when the puzzle was verified
+     * @return a copy of the packed moves
+     */
+    public int[] getSolution() {
+        return solution.clone();
+    }
+
+    /**
+     * Whether the solution is the only one
+     * @return whether the puzzle has a unique solution
+     */
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * Get how hard the puzzle was to verify, as the number of positions the solver searched
+     * @return difficulty
+     */
+    public int getDifficulty() {
+        return difficulty;
+    }
+
+    /**
+     * Create a source handing out the puzzle's pieces in order. A game needs a following piece even on its last move,
+     * so once the sequence runs out the source repeats its last piece, which is not part of the puzzle and must not be
+     * played.
+     * @return a new piece source
+     */
+    public PieceSource pieceSource() {
+        return new PieceSource() {
+            private int next;
+
+            @Override
+            public int next() {
+                return pieces[Math.min(next++, pieces.length - 1)];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Puzzle puzzle && cols == puzzle.cols && rows == puzzle.rows && board == puzzle.board
+                && Arrays.equals(pieces, puzzle.pieces);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(board) * 31 + Arrays.hashCode(pieces);
+    }
+}
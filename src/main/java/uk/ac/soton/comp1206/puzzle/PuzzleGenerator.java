@@ -0,0 +1,162 @@
+package uk.ac.soton.comp1206.puzzle;
+
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+/**
+ * The PuzzleGenerator makes puzzles which are known to be solvable. A candidate is built backwards from its answer:
+ * one to three random rows and columns are chosen to be cleared, pieces which fit are chosen at random and placed in
+ * them without overlapping, and whatever the pieces do not cover is filled in at the start. Playing the pieces in the
+ * right places fills every chosen line, which empties the board.
+ *
+ * A candidate is only a guess, as lines can fill and clear before the last piece is played, and some other set of
+ * moves might clear the board sooner. Every candidate is checked by the PuzzleSolver, and only kept if the fewest
+ * moves which clear its board use every piece. A generator can also be asked to keep only puzzles whose solution is
+ * unique.
+ *
+ * Candidates are made from their own seeds, and built and solved in parallel, so the same seed always gives the same
+ * puzzles in the same order whatever the number of threads.
+ */
+public class PuzzleGenerator {
+
+    /**
+     * Candidates made and checked together
+     */
+    private static final int BATCH = 256;
+
+    private final int cols;
+    private final int rows;
+    private final MoveGenerator generator;
+    private final boolean uniqueOnly;
+
+    /**
+     * Solvers for each thread, as they keep buffers between searches
+     */
+    private final ThreadLocal<PuzzleSolver> solvers;
+
+    /**
+     * Create a generator of puzzles for a board of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param uniqueOnly whether to only keep puzzles with a unique solution
+     */
+    public PuzzleGenerator(int cols, int rows, boolean uniqueOnly) {
+        if(cols * rows > 64) {
+            throw new IllegalArgumentException("Puzzles can only be played on boards of up to 64 blocks");
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.uniqueOnly = uniqueOnly;
+        generator = new MoveGenerator(cols, rows);
+        solvers = ThreadLocal.withInitial(() -> new PuzzleSolver(generator));
+    }
+
+    /**
+     * Generate puzzles of each number of moves in a range, easiest first
+     * @param perLevel puzzles of each number of moves
+     * @param minMoves fewest moves
+     * @param maxMoves most moves
+     * @param seed seed of the first candidate
+     * @param pool runs the candidates
+     * @return the puzzles, by moves and then by difficulty
+     */
+    public List<Puzzle> generate(int perLevel, int minMoves, int maxMoves, long seed, ForkJoinPool pool) {
+        var puzzles = new ArrayList<Puzzle>();
+        for(int moves = minMoves; moves <= maxMoves; moves++) {
+            var level = generate(perLevel, moves, seed + ((long) moves << 40), pool);
+            level.sort(Comparator.comparingInt(Puzzle::getDifficulty));
+            puzzles.addAll(level);
+        }
+        return puzzles;
+    }
+
+    /**
+     * Generate distinct puzzles of a number of moves
+     * @param count puzzles wanted
+     * @param moves the number of moves of each puzzle
+     * @param seed seed of the first candidate
+     * @param pool runs the candidates
+     * @return the puzzles, in the order of their seeds
+     */
+    public List<Puzzle> generate(int count, int moves, long seed, ForkJoinPool pool) {
+        var found = new LinkedHashSet<Puzzle>();
+        for(long first = seed; found.size() < count; first += BATCH) {
+            long start = first;
+            List<Puzzle> batch;
+            try {
+                batch = pool.submit(() -> LongStream.range(start, start + BATCH).parallel()
+                        .mapToObj(candidate -> candidate(moves, candidate)).filter(Objects::nonNull).toList()).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating puzzles", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+            for(Puzzle puzzle : batch) {
+                if(found.size() < count) {
+                    found.add(puzzle);
+                }
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Build a candidate from a seed, and solve it
+     * @param moves number of pieces
+     * @param seed seed of the candidate
+     * @return the puzzle, or null if the candidate did not make a good puzzle
+     */
+    public Puzzle candidate(int moves, long seed) {
+        var random = new SplittableRandom(seed);
+
+        //Pick the lines to clear
+        long target = 0;
+        int lines = 1 + random.nextInt(Math.min(3, 1 + moves / 2));
+        for(int i = 0; i < lines; i++) {
+            target |= generator.lineMask(random.nextInt(rows + cols));
+        }
+
+        //Fit the pieces into them
+        long free = target;
+        long full = cols * rows == 64 ? -1L : (1L << cols * rows) - 1;
+        int[] pieces = new int[moves];
+        int[] buffer = new int[generator.maxMoves()];
+        for(int i = 0; i < moves; i++) {
+            //Take the first piece that fits, starting from a random one
+            int first = random.nextInt(GamePiece.PIECES);
+            int placements = 0;
+            for(int next = 0; next < GamePiece.PIECES && placements == 0; next++) {
+                pieces[i] = (first + next) % GamePiece.PIECES;
+                placements = generator.generate(full & ~free, pieces[i], MoveGenerator.CURRENT, buffer, 0);
+            }
+            if(placements == 0) {
+                return null;
+            }
+            free &= ~generator.mask(buffer[random.nextInt(placements)]);
+        }
+
+        //Whatever the pieces leave uncovered starts filled
+        long board = free;
+        if(board == 0 || generator.fullLines(board) != 0) {
+            return null;
+        }
+
+        var solution = solvers.get().solve(board, pieces);
+        if(solution.moves() != moves || uniqueOnly && solution.solutions() != 1) {
+            return null;
+        }
+        return new Puzzle(cols, rows, board, pieces, solution.solution(), solution.solutions() == 1,
+                solution.nodes());
+    }
+}
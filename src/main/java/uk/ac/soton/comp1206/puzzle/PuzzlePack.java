@@ -0,0 +1,232 @@
+package uk.ac.soton.comp1206.puzzle;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A PuzzlePack is a file of puzzles for one board size, with an index at the front so the list of puzzles can be shown
+ * without reading any of them. After a 16 byte header of the magic number, version, number of puzzles, columns and
+ * rows comes a 12 byte index entry for each puzzle: where the puzzle starts, its length, its number of moves, its
+ * flags and its difficulty. Each puzzle is then its 8 byte board mask, a byte for each piece, and the 4 byte packed
+ * move of each step of its solution.
+ *
+ * The file is memory mapped when it is opened, so only the parts which are read are loaded, and a puzzle is only
+ * decoded when it is asked for. A pack never changes once it is written, so it can be read from any thread.
+ */
+public class PuzzlePack {
+
+    private static final Logger logger = LogManager.getLogger(PuzzlePack.class);
+
+    /**
+     * The pack the puzzle mode plays
+     */
+    public static final String DEFAULT_FILE = "puzzles.pack";
+
+    /**
+     * The board size, range of moves and number of puzzles of each number of moves of the default pack
+     */
+    public static final int DEFAULT_SIZE = 5;
+    public static final int DEFAULT_MIN_MOVES = 2;
+    public static final int DEFAULT_MAX_MOVES = 5;
+    public static final int DEFAULT_PER_LEVEL = 25;
+
+    /**
+     * Set in an index entry's flags when the puzzle's solution is unique
+     */
+    public static final int UNIQUE = 1;
+
+    private static final int MAGIC = 0x545A4C50;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int ENTRY = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int cols;
+    private final int rows;
+
+    private PuzzlePack(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(8);
+        this.cols = buffer.getShort(12);
+        this.rows = buffer.getShort(14);
+    }
+
+    /**
+     * Open a pack
+     * @param file the pack file
+     * @return the pack
+     * @throws IOException if the file cannot be read, or is not a puzzle pack
+     */
+    public static PuzzlePack open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try(var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a puzzle pack: " + file);
+        }
+        if(buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported puzzle pack version: " + file);
+        }
+        if(HEADER + (long) buffer.getInt(8) * ENTRY > buffer.capacity()) {
+            throw new IOException("Puzzle pack truncated: " + file);
+        }
+        return new PuzzlePack(buffer);
+    }
+
+    /**
+     * Open the default pack, generating it first if it does not exist yet. Generating takes a few seconds, so this
+     * should not be called on the FX thread.
+     * @return the pack
+     * @throws IOException if the pack cannot be written or read
+     */
+    public static PuzzlePack openDefault() throws IOException {
+        var file = Path.of(DEFAULT_FILE);
+        if(!Files.exists(file)) {
+            logger.info("Generating the puzzle pack {}", file);
+            var generator = new PuzzleGenerator(DEFAULT_SIZE, DEFAULT_SIZE, false);
+            write(file, generator.generate(DEFAULT_PER_LEVEL, DEFAULT_MIN_MOVES, DEFAULT_MAX_MOVES, 0,
+                    ForkJoinPool.commonPool()));
+        }
+        return open(file);
+    }
+
+    /**
+     * Write a pack, replacing the file only once the new pack is complete
+     * @param file the pack file
+     * @param puzzles the puzzles, in the order they are played, all for the same board size
+     * @throws IOException if the pack cannot be written
+     */
+    public static void write(Path file, List<Puzzle> puzzles) throws IOException {
+        int size = HEADER + puzzles.size() * ENTRY;
+        for(Puzzle puzzle : puzzles) {
+            size += length(puzzle);
+        }
+        int cols = puzzles.isEmpty() ? 0 : puzzles.get(0).getCols();
+        int rows = puzzles.isEmpty() ? 0 : puzzles.get(0).getRows();
+        var bytes = ByteBuffer.allocate(size).putInt(MAGIC).putInt(VERSION).putInt(puzzles.size())
+                .putShort((short) cols).putShort((short) rows);
+
+        int offset = HEADER + puzzles.size() * ENTRY;
+        for(Puzzle puzzle : puzzles) {
+            if(puzzle.getCols() != cols || puzzle.getRows() != rows) {
+                throw new IllegalArgumentException("Every puzzle in a pack must be for the same board size");
+            }
+            bytes.putInt(offset).putShort((short) length(puzzle)).put((byte) puzzle.getMoves())
+                    .put((byte) (puzzle.isUnique() ? UNIQUE : 0)).putInt(puzzle.getDifficulty());
+            offset += length(puzzle);
+        }
+        for(Puzzle puzzle : puzzles) {
+            bytes.putLong(puzzle.getBoard());
+            for(int piece : puzzle.getPieces()) {
+                bytes.put((byte) piece);
+            }
+            for(int move : puzzle.getSolution()) {
+                bytes.putInt(move);
+            }
+        }
+
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, bytes.array());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the number of puzzles in the pack
+     * @return puzzles
+     */
+    public int size() {
+        return count;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the number of moves of a puzzle, from the index
+     * @param puzzle puzzle number
+     * @return moves
+     */
+    public int getMoves(int puzzle) {
+        return buffer.get(entry(puzzle) + 6);
+    }
+
+    /**
+     * Get whether a puzzle has a unique solution, from the index
+     * @param puzzle puzzle number
+     * @return whether the solution is unique
+     */
+    public boolean isUnique(int puzzle) {
+        return (buffer.get(entry(puzzle) + 7) & UNIQUE) != 0;
+    }
+
+    /**
+     * Get the difficulty of a puzzle, from the index
+     * @param puzzle puzzle number
+     * @return the number of positions searched to verify it
+     */
+    public int getDifficulty(int puzzle) {
+        return buffer.getInt(entry(puzzle) + 8);
+    }
+
+    /**
+     * Read a puzzle from the pack
+     * @param puzzle puzzle number
+     * @return the puzzle
+     * @throws IllegalStateException if the puzzle is damaged
+     */
+    public Puzzle get(int puzzle) {
+        int entry = entry(puzzle);
+        int offset = buffer.getInt(entry);
+        int moves = getMoves(puzzle);
+        if(offset < 0 || offset + 8 + moves * 5L > buffer.capacity()) {
+            throw new IllegalStateException("Puzzle " + puzzle + " is damaged");
+        }
+        long board = buffer.getLong(offset);
+        int[] pieces = new int[moves];
+        int[] solution = new int[moves];
+        for(int i = 0; i < moves; i++) {
+            pieces[i] = buffer.get(offset + 8 + i);
+            solution[i] = buffer.getInt(offset + 8 + moves + i * 4);
+        }
+        return new Puzzle(cols, rows, board, pieces, solution, isUnique(puzzle), getDifficulty(puzzle));
+    }
+
+    /**
+     * Get the position of an index entry
+     * @param puzzle puzzle number
+     * @return byte offset in the file
+     */
+    private int entry(int puzzle) {
+        if(puzzle < 0 || puzzle >= count) {
+            throw new IndexOutOfBoundsException("No puzzle " + puzzle + " in a pack of " + count);
+        }
+        return HEADER + puzzle * ENTRY;
+    }
+
+    /**
+     * Get the length of a puzzle in a pack
+     * @param puzzle the puzzle
+     * @return bytes
+     */
+    private static int length(Puzzle puzzle) {
+        return 8 + puzzle.getMoves() * 5;
+    }
+}
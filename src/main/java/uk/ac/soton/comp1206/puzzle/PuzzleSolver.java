@@ -0,0 +1,296 @@
+package uk.ac.soton.comp1206.puzzle;
+
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+import uk.ac.soton.comp1206.game.PieceShape;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The PuzzleSolver searches every way of playing a sequence of pieces on a board, depth first, to find the fewest
+ * moves that clear it and how many different ways there are of doing so. Boards are held as masks, and the legal moves
+ * of each position come from a MoveGenerator.
+ *
+ * The search deepens one move at a time, so the first limit which finds a solution is the fewest moves. Within a
+ * limit, the position after any number of moves is the board, the current piece and how far along the sequence the
+ * following piece is, so positions reached by playing the same placements in a different order are only searched
+ * once. A position is also given up as soon as some filled block could not be cleared by the most blocks the moves
+ * left could play, because both its row and its column need more blocks than that. Near the limit few blocks are left,
+ * so most positions are given up there without generating any moves.
+ *
+ * A solver keeps buffers between searches, so each thread should have its own.
+ */
+public class PuzzleSolver {
+
+    /**
+     * Counts of solutions are capped here, as a puzzle only needs to know whether it has more than one
+     */
+    public static final int COUNT_LIMIT = 1 << 20;
+
+    /**
+     * No piece is left in a slot
+     */
+    private static final int NO_PIECE = -1;
+
+    /**
+     * Moves left of a position that cannot be cleared
+     */
+    private static final int UNSOLVABLE = Integer.MAX_VALUE;
+
+    /**
+     * The result of a search: the fewest moves left to clear the board, and the number of ways of doing it in that
+     * many moves
+     */
+    private record Result(int moves, int count) {
+    }
+
+    private static final Result SOLVED = new Result(0, 1);
+    private static final Result FAILED = new Result(UNSOLVABLE, 0);
+
+    /**
+     * A position: the board, the current piece, and the index of the following piece in the sequence
+     */
+    private record Position(long board, int current, int next) {
+    }
+
+    private final MoveGenerator generator;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The number of blocks of every piece
+     */
+    private final int[] blocks = new int[GamePiece.PIECES];
+
+    //The search in progress
+    private int[] pieces;
+    private int first;
+    private int limit;
+    private int[][] buffers;
+
+    /**
+     * For each index in the sequence, the total blocks of the largest k pieces from there on, for each k
+     */
+    private int[][] largest;
+    private final HashMap<Position, Result> searched = new HashMap<>();
+    private int nodes;
+
+    /**
+     * Create a solver for boards of the size a move generator was made for
+     * @param generator the move generator
+     */
+    public PuzzleSolver(MoveGenerator generator) {
+        this.generator = generator;
+        this.cols = generator.getCols();
+        this.rows = generator.getRows();
+        for(int piece = 0; piece < GamePiece.PIECES; piece++) {
+            blocks[piece] = PieceShape.get(piece, 0).getCellCount();
+        }
+    }
+
+    /**
+     * The outcome of solving a puzzle
+     * @param moves the fewest moves which clear the board, or -1 if it cannot be cleared
+     * @param solutions the number of ways of clearing the board in that many moves, up to COUNT_LIMIT
+     * @param solution the packed moves of the first of them, or an empty array if there is none
+     * @param nodes the number of positions searched
+     */
+    public record Solution(int moves, int solutions, int[] solution, int nodes) {
+
+        /**
+         * Whether the board can be cleared at all
+         * @return whether there is a solution
+         */
+        public boolean solved() {
+            return moves >= 0;
+        }
+    }
+
+    /**
+     * Solve a puzzle from its start
+     * @param board board mask
+     * @param pieces the sequence of piece numbers
+     * @return the solution
+     */
+    public Solution solve(long board, int[] pieces) {
+        return solve(board, pieces[0], pieces, 1);
+    }
+
+    /**
+     * Solve a puzzle from part way through
+     * @param board board mask
+     * @param currentPiece the current piece number
+     * @param pieces the sequence of piece numbers
+     * @param next the index in the sequence of the following piece, which may be past the end
+     * @return the solution
+     */
+    public Solution solve(long board, int currentPiece, int[] pieces, int next) {
+        this.pieces = pieces;
+        this.first = next;
+        largest = new int[pieces.length + 1][];
+        for(int i = 0; i <= pieces.length; i++) {
+            int[] suffix = new int[pieces.length - i];
+            for(int j = i; j < pieces.length; j++) {
+                suffix[j - i] = blocks[pieces[j]];
+            }
+            Arrays.sort(suffix);
+            largest[i] = new int[suffix.length + 1];
+            for(int k = 1; k <= suffix.length; k++) {
+                largest[i][k] = largest[i][k - 1] + suffix[suffix.length - k];
+            }
+        }
+        buffers = new int[pieces.length + 2][generator.maxMoves()];
+        nodes = 0;
+
+        //Deepen one move at a time, so the first limit with a solution is the fewest moves
+        int available = 1 + Math.max(0, pieces.length - next);
+        Result result = FAILED;
+        for(limit = 1; limit <= available && result == FAILED; limit++) {
+            searched.clear();
+            result = search(board, currentPiece, next);
+        }
+        if(result == FAILED) {
+            searched.clear();
+            return new Solution(-1, 0, new int[0], nodes);
+        }
+        limit = result.moves;
+
+        //Walk down the searched positions, taking the first move that keeps to the fewest moves each time
+        int[] solution = new int[result.moves];
+        long position = board;
+        int current = currentPiece;
+        for(int step = 0; step < result.moves; step++, next++) {
+            int[] buffer = buffers[pieces.length + 1];
+            int count = moves(position, current, next, buffer);
+            for(int i = 0; i < count; i++) {
+                int move = buffer[i];
+                int after = after(move, current, next);
+                long played = play(position, move);
+                if(search(played, after, next + 1).moves == result.moves - step - 1) {
+                    solution[step] = move;
+                    position = played;
+                    current = after;
+                    break;
+                }
+            }
+        }
+        searched.clear();
+        return new Solution(result.moves, result.count, solution, nodes);
+    }
+
+    /**
+     * Find the fewest moves which clear a position within the limit, and how many ways there are
+     * @param board board mask
+     * @param current current piece number, or NO_PIECE
+     * @param next index of the following piece
+     * @return the result
+     */
+    private Result search(long board, int current, int next) {
+        if(board == 0) {
+            return SOLVED;
+        }
+        int depth = next - first;
+        if(current == NO_PIECE || depth >= limit || !clearable(board, available(current, next, limit - depth))) {
+            return FAILED;
+        }
+        var position = new Position(board, current, next);
+        Result known = searched.get(position);
+        if(known != null) {
+            return known;
+        }
+        nodes++;
+
+        int best = UNSOLVABLE;
+        int count = 0;
+        int[] buffer = buffers[depth];
+        int moves = moves(board, current, next, buffer);
+        for(int i = 0; i < moves; i++) {
+            int move = buffer[i];
+            Result child = search(play(board, move), after(move, current, next), next + 1);
+            if(child.moves == UNSOLVABLE) {
+                continue;
+            }
+            if(child.moves + 1 < best) {
+                best = child.moves + 1;
+                count = child.count;
+            } else if(child.moves + 1 == best) {
+                count = Math.min(COUNT_LIMIT, count + child.count);
+            }
+        }
+        Result result = best == UNSOLVABLE ? FAILED : new Result(best, count);
+        searched.put(position, result);
+        return result;
+    }
+
+    /**
+     * Get the most blocks that could be played in a number of moves: the largest pieces among the current piece and
+     * those still to come, as the current piece can be kept back by always playing the following piece
+     * @param current current piece number
+     * @param next index of the following piece
+     * @param moves moves left
+     * @return blocks
+     */
+    private int available(int current, int next, int moves) {
+        int[] suffix = largest[Math.min(next, pieces.length)];
+        int others = Math.min(moves, suffix.length - 1);
+        return Math.max(blocks[current] + suffix[Math.min(moves - 1, suffix.length - 1)], suffix[others]);
+    }
+
+    /**
+     * Generate the moves of a position, for the current piece and the following piece if there is one. If they are the
+     * same piece only the current piece's moves are generated, as both lead to the same positions.
+     * @return number of moves
+     */
+    private int moves(long board, int current, int next, int[] buffer) {
+        int count = generator.generate(board, current, MoveGenerator.CURRENT, buffer, 0);
+        if(next < pieces.length && pieces[next] != current) {
+            count = generator.generate(board, pieces[next], MoveGenerator.FOLLOWING, buffer, count);
+        }
+        return count;
+    }
+
+    /**
+     * Get the current piece after a move. Playing the current piece brings the following piece forward, while playing
+     * the following piece keeps the current piece.
+     * @return piece number, or NO_PIECE
+     */
+    private int after(int move, int current, int next) {
+        if(MoveGenerator.slot(move) == MoveGenerator.FOLLOWING) {
+            return current;
+        }
+        return next < pieces.length ? pieces[next] : NO_PIECE;
+    }
+
+    /**
+     * Place a move on a board and clear any full lines
+     * @return the board after the move
+     */
+    private long play(long board, int move) {
+        long played = board | generator.mask(move);
+        return played & ~generator.fullLines(played);
+    }
+
+    /**
+     * Check that every filled block could still be cleared, by filling either its row or its column
+     * @param board board mask
+     * @param available blocks left to play
+     * @return whether no block is certainly stuck
+     */
+    private boolean clearable(long board, int available) {
+        long stuck = board;
+        for(int y = 0; y < rows; y++) {
+            long line = generator.lineMask(y);
+            if(cols - Long.bitCount(board & line) <= available) {
+                stuck &= ~line;
+            }
+        }
+        for(int x = 0; x < cols; x++) {
+            long line = generator.lineMask(rows + x);
+            if(rows - Long.bitCount(board & line) <= available) {
+                stuck &= ~line;
+            }
+        }
+        return stuck == 0;
+    }
+}
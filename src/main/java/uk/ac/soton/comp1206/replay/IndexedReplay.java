@@ -0,0 +1,361 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GameState;
+import uk.ac.soton.comp1206.game.PieceSource;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An IndexedReplay is a replay with a keyframe every K events, so that playback can start from any point without
+ * replaying the game from the beginning. A keyframe holds everything needed to carry on from it: the whole board, the
+ * pieces, score, multiplier, lives and level, how many pieces had been drawn, and where its event starts in the replay.
+ *
+ * The encoded form is the replay itself, then the keyframes as fixed size 40 byte records, then the boards of the
+ * keyframes, then a 20 byte footer: the length of the replay, the number of events, K, the number of keyframes and a
+ * magic number. As the records are all the same size, the footer is all that is needed to find keyframe n, and its
+ * record gives where its board starts.
+ *
+ * A board is packed as a bitmask of the filled blocks, then the value of each filled block in 4 bits, two to a byte,
+ * so an empty board costs one bit per block and a full one five. Most blocks are usually empty, so on a large board a
+ * keyframe is a small fraction of the byte per block it would take to store every block.
+ *
+ * Seeking to event N restores keyframe N / K and replays at most K - 1 events from it. The pieces drawn before the
+ * keyframe are skipped in the piece source, which only costs a few ns each.
+ */
+public final class IndexedReplay {
+
+    /**
+     * The default number of events between keyframes
+     */
+    public static final int DEFAULT_INTERVAL = 64;
+
+    private static final int MAGIC = 0x54524B32;
+    private static final int FOOTER = 20;
+
+    /**
+     * Size of a keyframe record: the event, cursor, time, pieces drawn, state and where the board starts
+     */
+    private static final int KEYFRAME = 40;
+
+    /**
+     * Largest value a block can hold in a packed board
+     */
+    private static final int MAX_VALUE = 15;
+
+    /**
+     * A PieceSource which counts the pieces drawn from it
+     */
+    private static final class CountingSource implements PieceSource {
+        private final PieceSource source;
+        private int drawn;
+
+        private CountingSource(PieceSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int next() {
+            drawn++;
+            return source.next();
+        }
+    }
+
+    /**
+     * The replay
+     */
+    private final Replay replay;
+
+    /**
+     * The keyframes, one record after another
+     */
+    private final ByteBuffer keyframes;
+
+    /**
+     * The packed boards of the keyframes
+     */
+    private final ByteBuffer boards;
+
+    private final int events;
+    private final int interval;
+    private final int count;
+
+    private IndexedReplay(Replay replay, ByteBuffer keyframes, ByteBuffer boards, int events, int interval,
+                          int count) {
+        this.replay = replay;
+        this.keyframes = keyframes;
+        this.boards = boards;
+        this.events = events;
+        this.interval = interval;
+        this.count = count;
+    }
+
+    /**
+     * Index a replay with the default interval between keyframes
+     * @param replay the replay
+     * @return the indexed replay
+     */
+    public static IndexedReplay build(Replay replay) {
+        return build(replay, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Index a replay, by playing it through and taking a keyframe every interval events
+     * @param replay the replay
+     * @param interval events between keyframes
+     * @return the indexed replay
+     * @throws IllegalStateException if the replay cannot be played
+     */
+    public static IndexedReplay build(Replay replay, int interval) {
+        if(interval < 1) {
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + interval);
+        }
+        int cols = replay.getCols();
+        int rows = replay.getRows();
+        var source = new CountingSource(Replayer.pieces(replay));
+        var engine = new GameEngine(new BitGrid(cols, rows), source);
+        engine.initialise();
+
+        //The most a packed board can take: the bitmask, and a value for every block
+        int board = maskBytes(cols * rows) + (cols * rows + 1) / 2;
+        var keyframes = ByteBuffer.allocate(KEYFRAME * 16);
+        var boards = ByteBuffer.allocate(board * 4);
+        var cursor = replay.cursor();
+        int event = 0;
+        while(true) {
+            if(event % interval == 0) {
+                keyframes = ensure(keyframes, KEYFRAME);
+                boards = ensure(boards, board);
+                writeKeyframe(keyframes, boards, engine, cursor, source.drawn);
+            }
+            if(!cursor.next()) {
+                break;
+            }
+            Replayer.apply(engine, cursor);
+            event++;
+        }
+        int count = keyframes.position() / KEYFRAME;
+        return new IndexedReplay(replay, keyframes.flip().slice(), boards.flip().slice(), event, interval, count);
+    }
+
+    /**
+     * Make sure a buffer has room for more bytes, moving it to one twice the size if not
+     * @param buffer the buffer
+     * @param bytes bytes needed
+     * @return the buffer, or its larger copy
+     */
+    private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+        if(buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        long capacity = Math.max((long) buffer.capacity() * 2, (long) buffer.position() + bytes);
+        if(capacity > Integer.MAX_VALUE - FOOTER) {
+            throw new IllegalStateException("Replay too large to index");
+        }
+        return ByteBuffer.allocate((int) capacity).put(buffer.flip());
+    }
+
+    /**
+     * Get the size of the bitmask of filled blocks in a packed board
+     * @param blocks number of blocks on the board
+     * @return size in bytes
+     */
+    private static int maskBytes(int blocks) {
+        return (blocks + 7) / 8;
+    }
+
+    /**
+     * Write a keyframe of the state before the next event under a cursor
+     * @param buffer buffer to write the record to
+     * @param boards buffer to write the packed board to
+     * @param engine the engine, before the next event
+     * @param cursor the cursor, before the next event
+     * @param drawn number of pieces drawn so far
+     */
+    private static void writeKeyframe(ByteBuffer buffer, ByteBuffer boards, GameEngine engine, Replay.Cursor cursor,
+                                      int drawn) {
+        var state = GameState.of(0, engine.getCurrentPiece(), engine.getFollowingPiece(), engine.getScore(),
+                engine.getMultiplier(), engine.getLives(), engine.getLevel(), engine.isGameOver());
+        buffer.putInt(cursor.index + 1).putInt(cursor.position()).putLong(cursor.time).putInt(drawn)
+                .putLong(state.getPackedBoard()).putLong(state.getPackedStats()).putInt(boards.position());
+
+        var grid = engine.getGrid();
+        int cols = grid.getCols();
+        int blocks = cols * grid.getRows();
+        int mask = boards.position();
+        boards.put(new byte[maskBytes(blocks)]);
+        int filled = 0;
+        for(int block = 0; block < blocks; block++) {
+            int value = grid.get(block % cols, block / cols);
+            if(value == 0) {
+                continue;
+            }
+            if(value < 0 || value > MAX_VALUE) {
+                throw new IllegalStateException("Block value out of range: " + value);
+            }
+            boards.put(mask + block / 8, (byte) (boards.get(mask + block / 8) | 1 << (block % 8)));
+            if(filled % 2 == 0) {
+                boards.put((byte) (value << 4));
+            } else {
+                int last = boards.position() - 1;
+                boards.put(last, (byte) (boards.get(last) | value));
+            }
+            filled++;
+        }
+    }
+
+    /**
+     * Unpack a keyframe's board
+     * @param offset where the board starts in the packed boards
+     * @param blocks number of blocks on the board
+     * @return the value of every block, indexed by y * cols + x
+     * @throws IllegalArgumentException if the board runs past the end of the packed boards
+     */
+    private byte[] readBoard(int offset, int blocks) {
+        byte[] values = new byte[blocks];
+        int mask = offset;
+        long next = (long) offset + maskBytes(blocks);
+        int filled = 0;
+        for(int block = 0; block < blocks; block++) {
+            if((boards.get(mask + block / 8) & 1 << (block % 8)) == 0) {
+                continue;
+            }
+            if(next + filled / 2 >= boards.limit()) {
+                throw new IllegalArgumentException("Keyframe board truncated");
+            }
+            int packed = boards.get((int) (next + filled / 2));
+            values[block] = (byte) (filled % 2 == 0 ? packed >>> 4 & 0xF : packed & 0xF);
+            filled++;
+        }
+        return values;
+    }
+
+    /**
+     * Read an indexed replay from its encoded form
+     * @param data the encoded indexed replay, which must not be changed afterwards
+     * @return the indexed replay
+     * @throws IllegalArgumentException if the data is not an indexed replay
+     */
+    public static IndexedReplay of(byte[] data) {
+        if(data.length < FOOTER) {
+            throw new IllegalArgumentException("Not an indexed replay");
+        }
+        var footer = ByteBuffer.wrap(data, data.length - FOOTER, FOOTER);
+        int length = footer.getInt();
+        int events = footer.getInt();
+        int interval = footer.getInt();
+        int count = footer.getInt();
+        if(footer.getInt() != MAGIC || length < 0 || interval < 1 || count < 0 || length > data.length - FOOTER) {
+            throw new IllegalArgumentException("Not an indexed replay");
+        }
+        var replay = Replay.wrap(Arrays.copyOf(data, length));
+        long records = (long) KEYFRAME * count;
+        long boards = data.length - FOOTER - length - records;
+        if(count == 0 || boards < 0) {
+            throw new IllegalArgumentException("Indexed replay has the wrong size");
+        }
+        var keyframes = ByteBuffer.wrap(data, length, (int) records).slice();
+        int blocks = replay.getCols() * replay.getRows();
+        for(int keyframe = 0; keyframe < count; keyframe++) {
+            int offset = keyframes.getInt(keyframe * KEYFRAME + 36);
+            if(offset < 0 || offset + (long) maskBytes(blocks) > boards) {
+                throw new IllegalArgumentException("Keyframe " + keyframe + " has no board");
+            }
+        }
+        var packed = ByteBuffer.wrap(data, (int) (length + records), (int) boards).slice();
+        return new IndexedReplay(replay, keyframes, packed, events, interval, count);
+    }
+
+    /**
+     * Encode this indexed replay
+     * @return the encoded bytes
+     */
+    public byte[] toBytes() {
+        int length = replay.size();
+        long size = (long) length + keyframes.limit() + boards.limit() + FOOTER;
+        if(size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Indexed replay too large to encode: " + size + " bytes");
+        }
+        var buffer = ByteBuffer.allocate((int) size);
+        buffer.put(replay.toBytes()).put(keyframes.duplicate().rewind()).put(boards.duplicate().rewind());
+        buffer.putInt(length).putInt(events).putInt(interval).putInt(count).putInt(MAGIC);
+        return buffer.array();
+    }
+
+    /**
+     * Get the replay
+     * @return replay
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Get the number of events in the replay
+     * @return number of events
+     */
+    public int getEvents() {
+        return events;
+    }
+
+    /**
+     * Get the number of events between keyframes
+     * @return interval
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Get the number of keyframes
+     * @return number of keyframes
+     */
+    public int getKeyframes() {
+        return count;
+    }
+
+    /**
+     * Get the time of the event before a keyframe
+     * @param keyframe keyframe number
+     * @return time in ms from the start of the game
+     */
+    public long getKeyframeTime(int keyframe) {
+        return keyframes.getLong(keyframe * KEYFRAME + 8);
+    }
+
+    /**
+     * Create an engine in the state the game was in just before an event, by restoring the nearest keyframe before
+     * it and replaying the events in between
+     * @param event event number, from 0 to getEvents(), where getEvents() gives the state at the end
+     * @return a new engine
+     * @throws IllegalStateException if the replay cannot be played
+     */
+    public GameEngine seek(int event) {
+        if(event < 0 || event > events) {
+            throw new IllegalArgumentException("No event " + event + " in a replay of " + events);
+        }
+        int keyframe = Math.min(event / interval, count - 1);
+        int base = keyframe * KEYFRAME;
+        int from = keyframes.getInt(base);
+        int position = keyframes.getInt(base + 4);
+        long time = keyframes.getLong(base + 8);
+        int drawn = keyframes.getInt(base + 16);
+        var state = new GameState(keyframes.getLong(base + 20), keyframes.getLong(base + 28));
+        byte[] blocks = readBoard(keyframes.getInt(base + 36), replay.getCols() * replay.getRows());
+
+        var source = Replayer.pieces(replay);
+        for(int i = 0; i < drawn; i++) {
+            source.next();
+        }
+        var engine = new GameEngine(new BitGrid(replay.getCols(), replay.getRows()), source);
+        engine.restore(state, blocks);
+
+        var cursor = replay.cursor(position, from, time);
+        for(int i = from; i < event && cursor.next(); i++) {
+            Replayer.apply(engine, cursor);
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,41 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.game.PieceSource;
+
+/**
+ * A RecordedPieceSource hands out the pieces recorded in a replay, in order, so a game whose pieces came from outside
+ * can be played again.
+ */
+public class RecordedPieceSource implements PieceSource {
+
+    /**
+     * The recorded pieces
+     */
+    private final int[] pieces;
+
+    /**
+     * The index of the next piece
+     */
+    private int next;
+
+    /**
+     * Create a source of the given pieces
+     * @param pieces piece numbers, in order
+     */
+    public RecordedPieceSource(int[] pieces) {
+        this.pieces = pieces;
+    }
+
+    /**
+     * Get the next recorded piece
+     * @return piece number
+     * @throws IllegalStateException if every recorded piece has been used
+     */
+    @Override
+    public int next() {
+        if(next >= pieces.length) {
+            throw new IllegalStateException("No more recorded pieces after " + pieces.length);
+        }
+        return pieces[next++];
+    }
+}
@@ -0,0 +1,379 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A Replay is a recorded game in its compact binary form. It starts with a header: a magic number, the format version,
+ * a flags byte, the columns and rows as varints, and the 8 byte seed the pieces were drawn from. Games whose pieces
+ * did not come from a seed, such as multiplayer games, have the PIECES flag set and record every piece as it arrived.
+ *
+ * After the header comes a stream of events. Each event starts with a varint tag holding the ms since the previous
+ * event shifted left 3 bits, with the event type in the low 3 bits, followed by its values as varints:
+ * <ul>
+ *     <li>PLACE: piece * 4 + rotation, then x and y zigzag encoded</li>
+ *     <li>ROTATE: the number of rotations, zigzag encoded</li>
+ *     <li>SWAP and TIMEOUT: nothing</li>
+ *     <li>PIECE: the piece number</li>
+ *     <li>END: the final score, which a replay must reproduce</li>
+ * </ul>
+ * A typical placement takes 4 bytes.
+ *
+ * A Replay never changes after it is created, and is read with a Cursor, which does not allocate.
+ */
+public final class Replay {
+
+    /**
+     * A piece was played
+     */
+    public static final int PLACE = 0;
+
+    /**
+     * The current piece was rotated
+     */
+    public static final int ROTATE = 1;
+
+    /**
+     * The current and following pieces were swapped
+     */
+    public static final int SWAP = 2;
+
+    /**
+     * The turn timed out
+     */
+    public static final int TIMEOUT = 3;
+
+    /**
+     * A piece arrived from outside the game
+     */
+    public static final int PIECE = 4;
+
+    /**
+     * The game ended
+     */
+    public static final int END = 5;
+
+    /**
+     * Flag set when the pieces are recorded as PIECE events instead of drawn from the seed
+     */
+    public static final int PIECES = 1;
+
+    /**
+     * The directory replays are saved in
+     */
+    public static final String DIRECTORY = "replays";
+
+    static final int MAGIC = 0x5452504C;
+    static final int VERSION = 1;
+
+    /**
+     * Bits of an event tag holding the type
+     */
+    static final int TYPE_BITS = 3;
+
+    /**
+     * The encoded replay
+     */
+    private final byte[] data;
+
+    private final int cols;
+    private final int rows;
+    private final int flags;
+    private final long seed;
+
+    /**
+     * Position of the first event
+     */
+    private final int events;
+
+    /**
+     * Parse an encoded replay, checking its header
+     * @param data encoded replay, which must not be changed afterwards
+     */
+    private Replay(byte[] data) {
+        this.data = data;
+        var cursor = new Cursor(0);
+        if(data.length < 6 || ByteBuffer.wrap(data).getInt() != MAGIC || data[4] != VERSION) {
+            throw new IllegalArgumentException("Not a replay");
+        }
+        flags = data[5];
+        cursor.position = 6;
+        cols = cursor.readVarint();
+        rows = cursor.readVarint();
+        if(cursor.position + 8 > data.length) {
+            throw new IllegalArgumentException("Replay header truncated");
+        }
+        seed = ByteBuffer.wrap(data, cursor.position, 8).getLong();
+        events = cursor.position + 8;
+    }
+
+    /**
+     * Create a replay from its encoded bytes
+     * @param data encoded replay
+     * @return the replay
+     * @throws IllegalArgumentException if the bytes are not a replay
+     */
+    public static Replay of(byte[] data) {
+        return new Replay(data.clone());
+    }
+
+    /**
+     * Create a replay from bytes that are owned by the caller and will never change
+     * @param data encoded replay
+     * @return the replay
+     */
+    static Replay wrap(byte[] data) {
+        return new Replay(data);
+    }
+
+    /**
+     * Read a replay from a file
+     * @param file file to read
+     * @return the replay
+     * @throws IOException if the file cannot be read, or is not a replay
+     */
+    public static Replay read(Path file) throws IOException {
+        try {
+            return new Replay(Files.readAllBytes(file));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Not a valid replay: " + file, e);
+        }
+    }
+
+    /**
+     * Write this replay to a file
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Files.write(file, data);
+    }
+
+    /**
+     * Get the encoded replay
+     * @return a copy of the encoded bytes
+     */
+    public byte[] toBytes() {
+        return data.clone();
+    }
+
+    /**
+     * Get the size of the encoded replay
+     * @return size in bytes
+     */
+    public int size() {
+        return data.length;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Whether the pieces were recorded as PIECE events, rather than drawn from the seed
+     * @return whether the pieces were recorded
+     */
+    public boolean hasRecordedPieces() {
+        return (flags & PIECES) != 0;
+    }
+
+    /**
+     * Get every recorded piece, in the order they arrived
+     * @return piece numbers, empty if the pieces come from the seed
+     */
+    public int[] recordedPieces() {
+        var cursor = cursor();
+        int count = 0;
+        while(cursor.next()) {
+            if(cursor.type == PIECE) {
+                count++;
+            }
+        }
+        int[] pieces = new int[count];
+        cursor = cursor();
+        count = 0;
+        while(cursor.next()) {
+            if(cursor.type == PIECE) {
+                pieces[count++] = cursor.piece;
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Get the final score recorded when the game ended
+     * @return score, or -1 if the recording stopped before the game ended
+     */
+    public int getFinalScore() {
+        var cursor = cursor();
+        while(cursor.next()) {
+            if(cursor.type == END) {
+                return cursor.score;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the length of the game
+     * @return ms from the start to the last event
+     */
+    public long getDuration() {
+        var cursor = cursor();
+        while(cursor.next()) {
+            //Read to the end
+        }
+        return cursor.time;
+    }
+
+    /**
+     * Start reading the events of this replay
+     * @return a cursor before the first event
+     */
+    public Cursor cursor() {
+        return new Cursor(events);
+    }
+
+    /**
+     * Start reading the events of this replay part way through
+     * @param position byte offset of the next event, as given by Cursor.position
+     * @param index number of events before it
+     * @param time time of the event before it
+     * @return a cursor before the event at the position
+     */
+    Cursor cursor(int position, int index, long time) {
+        var cursor = new Cursor(position);
+        cursor.index = index - 1;
+        cursor.time = time;
+        return cursor;
+    }
+
+    /**
+     * A Cursor reads the events of a replay in order. After each call to next, the fields hold the event that was
+     * read; only those used by its type are set.
+     */
+    public final class Cursor {
+        private int position;
+
+        /**
+         * Number of events read
+         */
+        public int index = -1;
+
+        /**
+         * Type of the event
+         */
+        public int type = -1;
+
+        /**
+         * Time of the event, in ms from the start of the game
+         */
+        public long time;
+
+        /**
+         * Piece of a PLACE or PIECE event
+         */
+        public int piece;
+
+        /**
+         * Rotation of a PLACE event
+         */
+        public int rotation;
+
+        /**
+         * Column of a PLACE event
+         */
+        public int x;
+
+        /**
+         * Row of a PLACE event
+         */
+        public int y;
+
+        /**
+         * Rotations of a ROTATE event
+         */
+        public int rotations;
+
+        /**
+         * Score of an END event
+         */
+        public int score;
+
+        private Cursor(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Read the next event
+         * @return true if an event was read, false at the end of the replay
+         * @throws IllegalArgumentException if the event is not valid
+         */
+        public boolean next() {
+            if(position >= data.length) {
+                return false;
+            }
+            long tag = readVarLong();
+            time += tag >>> TYPE_BITS;
+            type = (int) tag & ((1 << TYPE_BITS) - 1);
+            index++;
+            switch (type) {
+                case PLACE -> {
+                    int shape = readVarint();
+                    piece = shape >>> 2;
+                    rotation = shape & 3;
+                    x = zigzag(readVarint());
+                    y = zigzag(readVarint());
+                }
+                case ROTATE -> rotations = zigzag(readVarint());
+                case PIECE -> piece = readVarint();
+                case END -> score = readVarint();
+                case SWAP, TIMEOUT -> {
+                }
+                default -> throw new IllegalArgumentException("Unknown replay event " + type + " at " + index);
+            }
+            return true;
+        }
+
+        /**
+         * Get the position of the next event in the encoded replay
+         * @return byte offset
+         */
+        public int position() {
+            return position;
+        }
+
+        private int readVarint() {
+            return (int) readVarLong();
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                if(position >= data.length) {
+                    throw new IllegalArgumentException("Replay truncated");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in replay");
+        }
+
+        private int zigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package uk.ac.soton.comp1206.replay;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A ReplayArchive stores any number of indexed replays in one append-only data file, with an index file of fixed 32
+ * byte entries next to it. Each entry holds where its replay starts in the data file and how long it is, with the
+ * final score, the seed and when it was recorded, so a list of replays can be shown without reading any of them.
+ *
+ * The index is memory mapped, so reading an entry is a single lookup, and opening a replay is one read from the data
+ * file. Appending writes the replay to the end of the data file before its entry is added to the index, so a crash
+ * part way through leaves at most some unused bytes, which are cut off the next time the archive is opened.
+ *
+ * Only one ReplayArchive is open for each directory in the process: opening a directory that is already open returns
+ * the same archive, and its files are only closed once every user has closed it. Appends to it are run one at a time,
+ * so a save can never be cut off by the archive being opened again, or two saves given the same index entry. Recovery
+ * and appends also hold a lock on the index file, so other processes sharing the directory wait their turn.
+ *
+ * An archive can be shared between threads.
+ */
+public class ReplayArchive implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ReplayArchive.class);
+
+    /**
+     * The name of the data file in the archive directory
+     */
+    public static final String DATA_FILE = "replays.archive";
+
+    /**
+     * The name of the index file in the archive directory
+     */
+    public static final String INDEX_FILE = "replays.index";
+
+    /**
+     * Size of an index entry: offset, length, score, seed and time recorded
+     */
+    private static final int ENTRY = 32;
+
+    /**
+     * The archive open in each directory, by its absolute path. Also guards the number of users of each.
+     */
+    private static final Map<Path, ReplayArchive> OPEN = new HashMap<>();
+
+    private final Path directory;
+    private final FileChannel data;
+    private final FileChannel index;
+
+    /**
+     * Number of opens of this archive not yet closed
+     */
+    private int users = 1;
+
+    /**
+     * The mapped index, remapped after every append
+     */
+    private MappedByteBuffer entries;
+
+    /**
+     * Number of replays in the archive
+     */
+    private int count;
+
+    private ReplayArchive(Path directory, FileChannel data, FileChannel index) throws IOException {
+        this.directory = directory;
+        this.data = data;
+        this.index = index;
+        try(var lock = index.lock()) {
+            recover();
+        }
+        map();
+    }
+
+    /**
+     * Open the archive in a directory, creating it if it does not exist. If the archive is already open in this
+     * process, the same archive is returned. Each open should be matched by one close.
+     * @param directory archive directory
+     * @return the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    public static ReplayArchive open(Path directory) throws IOException {
+        directory = directory.toAbsolutePath().normalize();
+        synchronized(OPEN) {
+            var archive = OPEN.get(directory);
+            if(archive != null) {
+                archive.users++;
+                return archive;
+            }
+            Files.createDirectories(directory);
+            var data = FileChannel.open(directory.resolve(DATA_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                var index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                try {
+                    archive = new ReplayArchive(directory, data, index);
+                } catch (IOException e) {
+                    index.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                data.close();
+                throw e;
+            }
+            OPEN.put(directory, archive);
+            return archive;
+        }
+    }
+
+    /**
+     * Open the archive in the default replays directory
+     * @return the archive
+     * @throws IOException if the archive cannot be opened
+     */
+    public static ReplayArchive open() throws IOException {
+        return open(Path.of(Replay.DIRECTORY));
+    }
+
+    /**
+     * Drop any index entries whose replay was not fully written, and any data after the last complete replay. Must be
+     * called holding the lock on the index file.
+     * @throws IOException if the files cannot be read or truncated
+     */
+    private void recover() throws IOException {
+        count = (int) (index.size() / ENTRY);
+        long dataSize = data.size();
+        var entry = ByteBuffer.allocate(ENTRY);
+        while(count > 0) {
+            entry.clear();
+            index.read(entry, (long) (count - 1) * ENTRY);
+            long end = entry.getLong(0) + entry.getInt(8);
+            if(end <= dataSize) {
+                dataSize = end;
+                break;
+            }
+            count--;
+        }
+        if(count == 0) {
+            dataSize = 0;
+        }
+        if(index.size() != (long) count * ENTRY || data.size() != dataSize) {
+            logger.warn("Recovering replay archive: keeping {} replays", count);
+            index.truncate((long) count * ENTRY);
+            data.truncate(dataSize);
+        }
+    }
+
+    /**
+     * Map the index entries into memory
+     * @throws IOException if the index cannot be mapped
+     */
+    private void map() throws IOException {
+        entries = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * ENTRY);
+    }
+
+    /**
+     * Index a replay and add it to the end of the archive. Anything another process has appended since is kept, and
+     * the replay goes after it.
+     * @param replay the replay
+     * @param recorded when the replay was recorded, in ms since the epoch
+     * @return the number of the replay in the archive
+     * @throws IOException if the replay cannot be written
+     */
+    public synchronized int append(Replay replay, long recorded) throws IOException {
+        var indexed = IndexedReplay.build(replay);
+        byte[] bytes = indexed.toBytes();
+        try(var lock = index.lock()) {
+            recover();
+            long offset = data.size();
+            writeFully(data, ByteBuffer.wrap(bytes), offset);
+            data.force(false);
+
+            var entry = ByteBuffer.allocate(ENTRY).putLong(offset).putInt(bytes.length)
+                    .putInt(replay.getFinalScore()).putLong(replay.getSeed()).putLong(recorded).flip();
+            writeFully(index, entry, (long) count * ENTRY);
+            index.force(false);
+            count++;
+        } finally {
+            map();
+        }
+        return count - 1;
+    }
+
+    /**
+     * Get the number of replays in the archive
+     * @return number of replays
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Get the final score of a replay
+     * @param replay replay number
+     * @return score, or -1 if the game was not finished
+     */
+    public synchronized int getScore(int replay) {
+        return entries.getInt(entry(replay) + 12);
+    }
+
+    /**
+     * Get the seed of a replay
+     * @param replay replay number
+     * @return seed, or 0 if the pieces were recorded
+     */
+    public synchronized long getSeed(int replay) {
+        return entries.getLong(entry(replay) + 16);
+    }
+
+    /**
+     * Get when a replay was recorded
+     * @param replay replay number
+     * @return time in ms since the epoch
+     */
+    public synchronized long getRecorded(int replay) {
+        return entries.getLong(entry(replay) + 24);
+    }
+
+    /**
+     * Read a replay from the archive
+     * @param replay replay number
+     * @return the indexed replay
+     * @throws IOException if the replay cannot be read
+     */
+    public IndexedReplay get(int replay) throws IOException {
+        long offset;
+        int length;
+        synchronized(this) {
+            offset = entries.getLong(entry(replay));
+            length = entries.getInt(entry(replay) + 8);
+        }
+        var bytes = ByteBuffer.allocate(length);
+        while(bytes.hasRemaining()) {
+            if(data.read(bytes, offset + bytes.position()) < 0) {
+                throw new IOException("Replay archive truncated");
+            }
+        }
+        try {
+            return IndexedReplay.of(bytes.array());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Replay " + replay + " is damaged", e);
+        }
+    }
+
+    /**
+     * Give up this use of the archive, closing its files once every user has closed it
+     * @throws IOException if the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(OPEN) {
+            if(users == 0 || --users > 0) {
+                return;
+            }
+            OPEN.remove(directory);
+        }
+        synchronized(this) {
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Get the position of an index entry
+     * @param replay replay number
+     * @return byte offset in the index
+     */
+    private int entry(int replay) {
+        if(replay < 0 || replay >= count) {
+            throw new IndexOutOfBoundsException("No replay " + replay + " in an archive of " + count);
+        }
+        return replay * ENTRY;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
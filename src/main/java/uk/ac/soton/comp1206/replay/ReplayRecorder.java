@@ -0,0 +1,211 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.event.GameActionListener;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.SeededPieceSource;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * The ReplayRecorder listens to the actions of a game and encodes them straight into a growing byte array, in the
+ * format described by Replay. Recording an action only writes a few bytes and does not allocate, except when the array
+ * doubles, so it adds nothing noticeable to playing a piece. Nothing is written to disk until the game is over.
+ *
+ * A recorder is used from the thread running its game.
+ */
+public class ReplayRecorder implements GameActionListener {
+
+    /**
+     * The encoded replay so far
+     */
+    private byte[] buffer = new byte[1024];
+
+    /**
+     * Number of bytes used
+     */
+    private int length;
+
+    /**
+     * Gives the current time in ms
+     */
+    private final LongSupplier time;
+
+    /**
+     * Time of the last event
+     */
+    private long last;
+
+    /**
+     * Whether the end of the game has been recorded
+     */
+    private boolean ended;
+
+    /**
+     * Create a recorder for a game whose pieces are drawn from a seed
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param seed seed of the pieces
+     * @param time gives the current time in ms
+     */
+    public ReplayRecorder(int cols, int rows, long seed, LongSupplier time) {
+        this(cols, rows, seed, 0, time);
+    }
+
+    /**
+     * Create a recorder for a game whose pieces arrive from outside, which must be passed to pieceArrived
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param time gives the current time in ms
+     */
+    public ReplayRecorder(int cols, int rows, LongSupplier time) {
+        this(cols, rows, 0, Replay.PIECES, time);
+    }
+
+    private ReplayRecorder(int cols, int rows, long seed, int flags, LongSupplier time) {
+        this.time = time;
+        this.last = time.getAsLong();
+        writeInt(Replay.MAGIC);
+        writeByte(Replay.VERSION);
+        writeByte(flags);
+        writeVarint(cols);
+        writeVarint(rows);
+        writeInt((int) (seed >>> 32));
+        writeInt((int) seed);
+    }
+
+    /**
+     * Start recording a game, timed by the game's clock. The game must not have started yet. Games using a
+     * SeededPieceSource record just the seed, others record each piece as it arrives.
+     * @param game game to record
+     * @return the recorder
+     */
+    public static ReplayRecorder record(Game game) {
+        var clock = game.getClock();
+        return record(game.getEngine(), clock::now);
+    }
+
+    /**
+     * Start recording a headless game. The engine must not have been initialised yet.
+     * @param engine engine to record
+     * @param time gives the current time in ms
+     * @return the recorder
+     */
+    public static ReplayRecorder record(GameEngine engine, LongSupplier time) {
+        ReplayRecorder recorder;
+        if(engine.getPieceSource() instanceof SeededPieceSource seeded) {
+            recorder = new ReplayRecorder(engine.getCols(), engine.getRows(), seeded.getSeed(), time);
+        } else {
+            recorder = new ReplayRecorder(engine.getCols(), engine.getRows(), time);
+        }
+        engine.setActionListener(recorder);
+        return recorder;
+    }
+
+    @Override
+    public void placed(int piece, int rotation, int x, int y) {
+        writeTag(Replay.PLACE);
+        writeVarint(piece << 2 | rotation);
+        writeVarint(zigzag(x));
+        writeVarint(zigzag(y));
+    }
+
+    @Override
+    public void rotated(int rotations) {
+        writeTag(Replay.ROTATE);
+        writeVarint(zigzag(rotations));
+    }
+
+    @Override
+    public void swapped() {
+        writeTag(Replay.SWAP);
+    }
+
+    @Override
+    public void timedOut() {
+        writeTag(Replay.TIMEOUT);
+    }
+
+    @Override
+    public void pieceArrived(int piece) {
+        writeTag(Replay.PIECE);
+        writeVarint(piece);
+    }
+
+    /**
+     * Record the end of the game. Later actions are not recorded.
+     * @param score the final score
+     */
+    public void end(int score) {
+        if(!ended) {
+            writeTag(Replay.END);
+            writeVarint(score);
+            ended = true;
+        }
+    }
+
+    /**
+     * Get the replay recorded so far
+     * @return the replay
+     */
+    public Replay toReplay() {
+        return Replay.wrap(Arrays.copyOf(buffer, length));
+    }
+
+    /**
+     * Get the number of bytes recorded so far
+     * @return size in bytes
+     */
+    public int size() {
+        return length;
+    }
+
+    private void writeTag(int type) {
+        if(ended) {
+            return;
+        }
+        long now = time.getAsLong();
+        long delta = Math.max(0, now - last);
+        last = Math.max(last, now);
+        writeVarLong(delta << Replay.TYPE_BITS | type);
+    }
+
+    private void writeVarint(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    private void writeVarLong(long value) {
+        if(ended) {
+            return;
+        }
+        ensure(10);
+        while((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        ensure(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        ensure(4);
+        for(int shift = 24; shift >= 0; shift -= 8) {
+            buffer[length++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if(length + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+}
@@ -0,0 +1,403 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.PieceShape;
+import uk.ac.soton.comp1206.game.PieceSource;
+import uk.ac.soton.comp1206.game.SeededPieceSource;
+
+/**
+ * The ReplayVerifier checks a submitted score by playing the game's replay again, so a score server can reject scores
+ * that could not have been reached. A score is only accepted if the replay:
+ * <ul>
+ *     <li>is for the expected board size, and draws its pieces from the seed the server handed out</li>
+ *     <li>only places the current piece, in its current rotation, where it fits</li>
+ *     <li>never goes longer without a move than the turn timer allows, plus SLACK</li>
+ *     <li>ends with an END event whose score, and the claimed score, both match the score the game reaches</li>
+ * </ul>
+ *
+ * On boards of up to 64 blocks the game is played on a single board mask with the same rules as the GameEngine, so
+ * nothing is allocated per event and a typical game is verified in a few microseconds. Larger boards are played on a
+ * GameEngine.
+ *
+ * A verifier keeps its tables and the state of the game being checked, so each thread needs its own.
+ */
+public class ReplayVerifier {
+
+    /**
+     * The outcome of verifying a replay
+     */
+    public enum Verdict {
+        /**
+         * The replay is a possible game, and reaches the claimed score
+         */
+        VALID,
+        /**
+         * The replay could not be read
+         */
+        MALFORMED,
+        /**
+         * The replay is for a different board size
+         */
+        WRONG_BOARD,
+        /**
+         * The pieces were not drawn from the expected seed
+         */
+        WRONG_SEED,
+        /**
+         * A piece was placed which was not the current piece, or where it does not fit, or the game carried on after
+         * it was over
+         */
+        ILLEGAL_MOVE,
+        /**
+         * The turn timer was held back to take longer over a move than it allows
+         */
+        TOO_SLOW,
+        /**
+         * The replay stops before the end of the game was recorded
+         */
+        INCOMPLETE,
+        /**
+         * The recorded or claimed score is not the score the game reaches
+         */
+        WRONG_SCORE
+    }
+
+    /**
+     * How far past the turn timer an event may be, in ms, to allow for the delay between the timer firing and the game
+     * handling it
+     */
+    public static final int SLACK = 1000;
+
+    private final int cols;
+    private final int rows;
+
+    /**
+     * Placement mask of every shape at every position, or null on boards too large for a mask
+     */
+    private final long[][] placements;
+
+    /**
+     * The mask of each row, then each column
+     */
+    private final long[] lines;
+
+    //State of the game being verified, on a board mask
+    private long board;
+    private int current;
+    private int currentRotation;
+    private int following;
+    private int followingRotation;
+    private int score;
+    private int multiplier;
+    private int lives;
+    private int level;
+    private boolean over;
+
+    /**
+     * Index of the event which failed verification
+     */
+    private int failed;
+
+    /**
+     * Create a verifier for replays of the given board size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public ReplayVerifier(int cols, int rows) {
+        this(cols, rows, cols * rows <= 64);
+    }
+
+    /**
+     * Create a verifier, choosing whether to play on a board mask or a GameEngine, so the two can be checked against
+     * each other
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param masks whether to play on a board mask, which needs a board of up to 64 blocks
+     */
+    ReplayVerifier(int cols, int rows, boolean masks) {
+        if(masks && cols * rows > 64) {
+            throw new IllegalArgumentException("Board too large for a mask: " + cols + "x" + rows);
+        }
+        this.cols = cols;
+        this.rows = rows;
+        if(masks) {
+            placements = PieceShape.placementMasks(cols, rows);
+            lines = new long[rows + cols];
+            for(int y = 0; y < rows; y++) {
+                for(int x = 0; x < cols; x++) {
+                    lines[y] |= 1L << (y * cols + x);
+                    lines[rows + x] |= 1L << (y * cols + x);
+                }
+            }
+        } else {
+            placements = null;
+            lines = null;
+        }
+    }
+
+    /**
+     * Verify an encoded replay as received from a client. The bytes are read in place, and must not change while they
+     * are verified.
+     * @param data encoded replay
+     * @param seed the seed the game was given
+     * @param claimedScore the score the client claims
+     * @return the verdict
+     */
+    public Verdict verify(byte[] data, long seed, int claimedScore) {
+        Replay replay;
+        try {
+            replay = Replay.wrap(data);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            failed = -1;
+            return Verdict.MALFORMED;
+        }
+        return verify(replay, seed, claimedScore);
+    }
+
+    /**
+     * Verify a replay of a game whose pieces were drawn from the given seed
+     * @param replay the replay
+     * @param seed the seed the game was given
+     * @param claimedScore the score the client claims
+     * @return the verdict
+     */
+    public Verdict verify(Replay replay, long seed, int claimedScore) {
+        if(replay.hasRecordedPieces() || replay.getSeed() != seed) {
+            failed = -1;
+            return Verdict.WRONG_SEED;
+        }
+        return verify(replay, new SeededPieceSource(seed), claimedScore);
+    }
+
+    /**
+     * Verify a replay using the pieces it holds, either its own seed or its recorded pieces. This checks the game is
+     * possible with those pieces, but not that they were the pieces the game was really given.
+     * @param replay the replay
+     * @param claimedScore the score the client claims
+     * @return the verdict
+     */
+    public Verdict verify(Replay replay, int claimedScore) {
+        try {
+            return verify(replay, Replayer.pieces(replay), claimedScore);
+        } catch (IllegalArgumentException e) {
+            failed = -1;
+            return Verdict.MALFORMED;
+        }
+    }
+
+    /**
+     * Play a replay with the given pieces and check it
+     * @param replay the replay
+     * @param pieces the source of its pieces
+     * @param claimedScore the score the client claims
+     * @return the verdict
+     */
+    private Verdict verify(Replay replay, PieceSource pieces, int claimedScore) {
+        failed = -1;
+        if(replay.getCols() != cols || replay.getRows() != rows) {
+            return Verdict.WRONG_BOARD;
+        }
+        var cursor = replay.cursor();
+        Verdict verdict;
+        try {
+            verdict = placements != null ? playMask(cursor, pieces) : playEngine(cursor, pieces);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            //An unreadable event, or more pieces used than were recorded
+            verdict = Verdict.MALFORMED;
+        }
+        if(verdict != Verdict.VALID) {
+            failed = cursor.index;
+            return verdict;
+        }
+        if(score != claimedScore) {
+            return Verdict.WRONG_SCORE;
+        }
+        return Verdict.VALID;
+    }
+
+    /**
+     * Play the events on a board mask, following the same rules as GameEngine
+     * @param cursor cursor before the first event
+     * @param pieces the source of the pieces
+     * @return the verdict on the events alone
+     */
+    private Verdict playMask(Replay.Cursor cursor, PieceSource pieces) {
+        board = 0;
+        following = pieces.next();
+        current = following;
+        currentRotation = 0;
+        following = pieces.next();
+        followingRotation = 0;
+        score = 0;
+        multiplier = 1;
+        lives = GameEngine.STARTING_LIVES;
+        level = 0;
+        over = false;
+        long deadline = GameEngine.INITIAL_DELAY + SLACK;
+
+        while(cursor.next()) {
+            if(cursor.time > deadline) {
+                return Verdict.TOO_SLOW;
+            }
+            if(over && cursor.type != Replay.END) {
+                return Verdict.ILLEGAL_MOVE;
+            }
+            switch (cursor.type) {
+                case Replay.PLACE -> {
+                    if(!place(cursor, pieces)) {
+                        return Verdict.ILLEGAL_MOVE;
+                    }
+                    deadline = cursor.time + GameEngine.timerDelay(GameEngine.INITIAL_DELAY, level) + SLACK;
+                }
+                case Replay.TIMEOUT -> {
+                    current = following;
+                    currentRotation = followingRotation;
+                    following = pieces.next();
+                    followingRotation = 0;
+                    if(lives == 0) {
+                        over = true;
+                    } else {
+                        lives--;
+                        multiplier = 1;
+                    }
+                    deadline = cursor.time + GameEngine.timerDelay(GameEngine.INITIAL_DELAY, level) + SLACK;
+                }
+                case Replay.ROTATE -> currentRotation = (currentRotation + cursor.rotations) & 3;
+                case Replay.SWAP -> {
+                    int piece = current;
+                    int rotation = currentRotation;
+                    current = following;
+                    currentRotation = followingRotation;
+                    following = piece;
+                    followingRotation = rotation;
+                }
+                case Replay.END -> {
+                    return end(cursor);
+                }
+                default -> {
+                    //Pieces are already in the piece source
+                }
+            }
+        }
+        return Verdict.INCOMPLETE;
+    }
+
+    /**
+     * Place the current piece as given by a PLACE event, then clear lines and score as GameEngine.play does
+     * @param cursor the event
+     * @param pieces the source of the pieces
+     * @return whether the piece could be placed
+     */
+    private boolean place(Replay.Cursor cursor, PieceSource pieces) {
+        int x = cursor.x;
+        int y = cursor.y;
+        if(cursor.piece != current || cursor.rotation != currentRotation
+                || x < 0 || y < 0 || x >= cols || y >= rows) {
+            return false;
+        }
+        long mask = placements[current * PieceShape.ROTATIONS + currentRotation][y * cols + x];
+        if(mask == 0 || (board & mask) != 0) {
+            return false;
+        }
+        board |= mask;
+        current = following;
+        currentRotation = followingRotation;
+        following = pieces.next();
+        followingRotation = 0;
+
+        //Only the lines through the 3x3 area around the piece can have been completed
+        long cleared = 0;
+        int fullRows = 0;
+        int fullCols = 0;
+        for(int row = Math.max(y - 1, 0); row <= Math.min(y + 1, rows - 1); row++) {
+            long line = lines[row];
+            if((board & line) == line) {
+                cleared |= line;
+                fullRows++;
+            }
+        }
+        for(int col = Math.max(x - 1, 0); col <= Math.min(x + 1, cols - 1); col++) {
+            long line = lines[rows + col];
+            if((board & line) == line) {
+                cleared |= line;
+                fullCols++;
+            }
+        }
+        if(cleared != 0) {
+            board &= ~cleared;
+            int blocks = fullRows * cols + fullCols * rows - fullRows * fullCols;
+            score += GameEngine.scoreFor(fullRows + fullCols, blocks, multiplier);
+            level = score / 1000;
+            multiplier++;
+        } else {
+            multiplier = 1;
+        }
+        return true;
+    }
+
+    /**
+     * Play the events on a GameEngine, for boards too large for a mask
+     * @param cursor cursor before the first event
+     * @param pieces the source of the pieces
+     * @return the verdict on the events alone
+     */
+    private Verdict playEngine(Replay.Cursor cursor, PieceSource pieces) {
+        var engine = new GameEngine(new BitGrid(cols, rows), pieces);
+        engine.initialise();
+        long deadline = engine.getTimerDelay() + SLACK;
+        while(cursor.next()) {
+            score = engine.getScore();
+            if(cursor.time > deadline) {
+                return Verdict.TOO_SLOW;
+            }
+            if(engine.isGameOver() && cursor.type != Replay.END) {
+                return Verdict.ILLEGAL_MOVE;
+            }
+            if(cursor.type == Replay.END) {
+                return end(cursor);
+            }
+            try {
+                Replayer.apply(engine, cursor);
+            } catch (IllegalStateException e) {
+                return Verdict.ILLEGAL_MOVE;
+            }
+            if(cursor.type == Replay.PLACE || cursor.type == Replay.TIMEOUT) {
+                deadline = cursor.time + engine.getTimerDelay() + SLACK;
+            }
+        }
+        score = engine.getScore();
+        return Verdict.INCOMPLETE;
+    }
+
+    /**
+     * Check the END event, which must be the last
+     * @param cursor the END event
+     * @return the verdict on the events
+     */
+    private Verdict end(Replay.Cursor cursor) {
+        if(cursor.score != score) {
+            return Verdict.WRONG_SCORE;
+        }
+        if(cursor.next()) {
+            return Verdict.MALFORMED;
+        }
+        return Verdict.VALID;
+    }
+
+    /**
+     * Get the score the last replay verified reached, or had reached when it failed
+     * @return score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the event the last replay failed verification on
+     * @return event index, or -1 if it did not fail on a particular event
+     */
+    public int getFailedEvent() {
+        return failed;
+    }
+}
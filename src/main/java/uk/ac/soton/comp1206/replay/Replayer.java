@@ -0,0 +1,78 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.PieceSource;
+import uk.ac.soton.comp1206.game.SeededPieceSource;
+
+/**
+ * The Replayer plays a replay back on a headless GameEngine as fast as the CPU allows, ignoring the times of the
+ * events. As the rules and the pieces are deterministic, the engine ends in exactly the state the recorded game did.
+ */
+public final class Replayer {
+
+    private Replayer() {
+    }
+
+    /**
+     * Create the source of the pieces of a replay, either from its seed or from its recorded pieces
+     * @param replay the replay
+     * @return a new piece source
+     */
+    public static PieceSource pieces(Replay replay) {
+        if(replay.hasRecordedPieces()) {
+            return new RecordedPieceSource(replay.recordedPieces());
+        }
+        return new SeededPieceSource(replay.getSeed());
+    }
+
+    /**
+     * Play a replay on a new engine, and check it reproduces the recorded final score
+     * @param replay the replay
+     * @return the engine, in the state the game ended in
+     * @throws IllegalStateException if an event cannot be applied, or the final score does not match
+     */
+    public static GameEngine replay(Replay replay) {
+        var engine = new GameEngine(new BitGrid(replay.getCols(), replay.getRows()), pieces(replay));
+        engine.initialise();
+        var cursor = replay.cursor();
+        while(cursor.next()) {
+            apply(engine, cursor);
+        }
+        return engine;
+    }
+
+    /**
+     * Apply the event under a cursor to an engine
+     * @param engine the engine
+     * @param event the event to apply
+     * @throws IllegalStateException if the event does not match the state of the engine, or the final score does
+     * not match
+     */
+    public static void apply(GameEngine engine, Replay.Cursor event) {
+        switch (event.type) {
+            case Replay.PLACE -> {
+                var current = engine.getCurrentPiece();
+                if(current.getPiece() != event.piece || current.getRotation() != event.rotation) {
+                    throw new IllegalStateException("Event " + event.index + " places piece " + event.piece
+                            + " but the current piece is " + current.getPiece());
+                }
+                if(!engine.play(event.x, event.y)) {
+                    throw new IllegalStateException("Event " + event.index + " places a piece where it cannot go");
+                }
+            }
+            case Replay.ROTATE -> engine.rotateCurrentPiece(event.rotations);
+            case Replay.SWAP -> engine.swapCurrentPiece();
+            case Replay.TIMEOUT -> engine.timeout();
+            case Replay.END -> {
+                if(engine.getScore() != event.score) {
+                    throw new IllegalStateException("Replay ends on " + engine.getScore() + " but recorded "
+                            + event.score);
+                }
+            }
+            default -> {
+                //Pieces are already in the piece source
+            }
+        }
+    }
+}
@@ -2,7 +2,9 @@ package uk.ac.soton.comp1206.scene;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
+import javafx.animation.Animation;
 import javafx.animation.Timeline;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.geometry.Pos;
@@ -16,6 +18,11 @@ import javafx.util.Duration;
 import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.ai.Evaluator;
+import uk.ac.soton.comp1206.ai.ExpectimaxPlayer;
+import uk.ac.soton.comp1206.ai.SurvivalTable;
+import uk.ac.soton.comp1206.game.MoveGenerator;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
 import uk.ac.soton.comp1206.media.Multimedia;
 import uk.ac.soton.comp1206.component.GameBlock;
@@ -23,15 +30,25 @@ import uk.ac.soton.comp1206.component.GameBlockCoordinate;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.PieceShape;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayArchive;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Single Player challenge scene. Holds the UI for the single player challenge mode in the game.
@@ -40,8 +57,33 @@ public class ChallengeScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(ChallengeScene.class);
 
+    /**
+     * The board size of a standard challenge
+     */
+    public static final int DEFAULT_SIZE = 5;
+
+    /**
+     * The largest board size a marathon can be played on
+     */
+    public static final int MAX_SIZE = 256;
+
+    /**
+     * How often the computer plays a piece when it is playing, in ms
+     */
+    public static final int BOT_DELAY = 400;
+
     protected Game game;
 
+    /**
+     * Number of columns of the game board
+     */
+    protected final int cols;
+
+    /**
+     * Number of rows of the game board
+     */
+    protected final int rows;
+
     /**
      * Multimedia class is used to output both sounds and background music
      */
@@ -87,13 +129,60 @@ public class ChallengeScene extends BaseScene {
      */
     protected BorderPane mainPane;
 
+    /**
+     * Finds hints and plays for the player, or null if it is not available in this game
+     */
+    protected AutoPlayer autoPlayer;
+
+    /**
+     * Plays a piece every BOT_DELAY ms while the computer is playing, or null if it is not
+     */
+    protected Timeline botTimeline;
+
+    /**
+     * The strong computer player, which searches further ahead off the FX thread, or null if it has not been used
+     */
+    protected ExpectimaxPlayer strongPlayer;
+
+    /**
+     * Whether the computer playing is the strong player
+     */
+    protected boolean strongBot = false;
+
+    /**
+     * Whether the strong player is searching for its next move
+     */
+    protected boolean botSearching = false;
+
+    /**
+     * Records the game so it can be watched again, or null if it is not being recorded
+     */
+    protected ReplayRecorder recorder;
+
+    /**
+     * Whether the board shows where the current piece can be played, and how many lines each placement clears
+     */
+    protected boolean showPlacements = false;
+
     /**
      * Create a new Single Player challenge scene
      * @param gameWindow the Game Window
      */
     public ChallengeScene(GameWindow gameWindow) {
+        this(gameWindow, DEFAULT_SIZE, DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a new Single Player challenge scene played on a board of the given size, for example for a marathon
+     * @param gameWindow the Game Window
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public ChallengeScene(GameWindow gameWindow, int cols, int rows) {
         super(gameWindow);
-        logger.info("Creating Challenge Scene");
+        this.cols = cols;
+        this.rows = rows;
+        logger.info("Creating Challenge Scene: {} x {}", cols, rows);
     }
 
     /**
@@ -104,6 +193,8 @@ public class ChallengeScene extends BaseScene {
         logger.info("Building " + this.getClass().getName());
 
         setupGame();
+        autoPlayer = createAutoPlayer();
+        recorder = createRecorder();
 
         this.scene = gameWindow.getScene();
 
@@ -203,8 +294,8 @@ public class ChallengeScene extends BaseScene {
         //Setting Piece Listener
         game.setNextPieceListener(this::nextPiece);
 
-        //Setting LineClearedListener
-        game.setLineClearedListener(this::lineClear);
+        //Setting LineClearedListener, animating straight from the clear mask
+        game.setLineClearedListener((clearMask, cols, rows) -> lineClear(clearMask));
 
         //Setting GameLoopListener
         game.setOnGameLoop(this::gameLoop);
@@ -212,7 +303,7 @@ public class ChallengeScene extends BaseScene {
         //Setting GameEndListener
         game.setGameEndListener(game -> {
             gameEnd();
-            gameWindow.startScores(game);
+            showScores();
         });
 
         //Setting Right Clicked Listener
@@ -250,7 +341,61 @@ public class ChallengeScene extends BaseScene {
         logger.info("Starting a new challenge");
 
         //Start new game
-        game = new Game(5, 5);
+        game = new Game(cols, rows);
+    }
+
+    /**
+     * Create the autoplayer used for hints and for the computer playing. Only boards of up to 64 blocks are supported.
+     * @return a new autoplayer, or null if hints are not available
+     */
+    protected AutoPlayer createAutoPlayer() {
+        if(game.getCols() * game.getRows() > 64) {
+            logger.info("Board too large for hints");
+            return null;
+        }
+        var generator = new MoveGenerator(game.getCols(), game.getRows());
+        var survival = SurvivalTable.load(game.getCols(), game.getRows());
+        return new AutoPlayer(new Evaluator(generator, Evaluator.loadWeights(), survival));
+    }
+
+    /**
+     * Create the recorder which records this game into a replay
+     * @return a new recorder, or null if the game should not be recorded
+     */
+    protected ReplayRecorder createRecorder() {
+        return ReplayRecorder.record(game);
+    }
+
+    /**
+     * Get the directory of the archive this scene's replays are added to
+     * @return the archive directory
+     */
+    protected Path replayDirectory() {
+        return Path.of(Replay.DIRECTORY);
+    }
+
+    /**
+     * Finish recording the game, and add the replay to the replay archive off the FX thread
+     * @return the replay, or null if the game was not being recorded
+     */
+    protected Replay saveReplay() {
+        if(recorder == null) {
+            return null;
+        }
+        recorder.end(game.scoreProperty().get());
+        Replay replay = recorder.toReplay();
+        recorder = null;
+        long recorded = System.currentTimeMillis();
+        var directory = replayDirectory();
+        CompletableFuture.runAsync(() -> {
+            try(var archive = ReplayArchive.open(directory)) {
+                int number = archive.append(replay, recorded);
+                logger.info("Saved replay {}", number);
+            } catch (IOException | IllegalStateException e) {
+                logger.error("Unable to save replay: {}", e.getMessage());
+            }
+        });
+        return replay;
     }
 
     /**
@@ -272,8 +417,10 @@ public class ChallengeScene extends BaseScene {
      * @param followingGamePiece following GamePiece
      */
     protected void nextPiece(GamePiece gamePiece, GamePiece followingGamePiece) {
+        board.clearHint();
         pieceBoard.pieceToDisplay(gamePiece);
         followingPieceBoard.pieceToDisplay(followingGamePiece);
+        updatePlacements();
     }
 
     /**
@@ -285,21 +432,20 @@ public class ChallengeScene extends BaseScene {
     }
 
     /**
-     * Rotates the given piece counter-clockwise (by calling rotate 3 times)
+     * Rotates the given piece counter-clockwise
      */
     protected void rotateLeft() {
-        rotate(3);
+        rotate(-1);
     }
 
     /**
      * Uses the game's rotate method to rotate pieces and update pieceboards
-     * @param rotations Number of Rotations Clockwise
+     * @param rotations Number of Rotations Clockwise, negative values rotate counter-clockwise
      */
     protected void rotate(int rotations) {
-        for(int x = 0; x< rotations; x++) {
-            game.rotateCurrentPiece();
-        }
+        game.rotateCurrentPiece(rotations);
         pieceBoard.pieceToDisplay(game.getCurrentPiece());
+        updatePlacements();
         multimedia.playSound("rotate.wav");
     }
 
@@ -318,6 +464,7 @@ public class ChallengeScene extends BaseScene {
         game.swapCurrentPiece();
         pieceBoard.pieceToDisplay(game.getCurrentPiece());
         followingPieceBoard.pieceToDisplay(game.getFollowingPiece());
+        updatePlacements();
         multimedia.playSound("rotate.wav");
     }
 
@@ -343,6 +490,12 @@ public class ChallengeScene extends BaseScene {
             swapPieces();  //Swaps the current and following pieces
         } else if(keyEvent.getCode() == KeyCode.ENTER || keyEvent.getCode() == KeyCode.X) {
             blockClicked(board.getBlock(blockX, blockY)); //Clicks piece
+        } else if(keyEvent.getCode() == KeyCode.H) {
+            showHint(); //Shows where the best move is
+        } else if(keyEvent.getCode() == KeyCode.P) {
+            togglePlacements(); //Shows or hides where the current piece can be played
+        } else if(keyEvent.getCode() == KeyCode.B) {
+            toggleBot(keyEvent.isShiftDown()); //Starts or stops the computer playing, the strong player with shift
         } else if(keyEvent.getCode() == KeyCode.W || keyEvent.getCode() == KeyCode.UP) { // Moves cursor up
             if(blockY>0) {
                 blockY-=1;
@@ -351,14 +504,14 @@ public class ChallengeScene extends BaseScene {
                 multimedia.playSound("fail.wav");
             }
         } else if(keyEvent.getCode() == KeyCode.D || keyEvent.getCode() == KeyCode.RIGHT) { // Moves cursor right
-            if(blockX<4) {
+            if(blockX<game.getCols()-1) {
                 blockX+=1;
                 moved = true;
             } else {
                 multimedia.playSound("fail.wav");
             }
         } else if(keyEvent.getCode() == KeyCode.S || keyEvent.getCode() == KeyCode.DOWN) { // Moves cursor down
-            if(blockY<4) {
+            if(blockY<game.getRows()-1) {
                 blockY+=1;
                 moved = true;
             } else {
@@ -378,6 +531,124 @@ public class ChallengeScene extends BaseScene {
         }
     }
 
+    /**
+     * Shows the best move for the current and following pieces on the board
+     */
+    protected void showHint() {
+        if(autoPlayer == null) {
+            multimedia.playSound("fail.wav");
+            return;
+        }
+        int move = autoPlayer.bestMove(game.getEngine());
+        if(move == AutoPlayer.NO_MOVE) {
+            multimedia.playSound("fail.wav");
+            return;
+        }
+        logger.info("Hint: {}", MoveGenerator.toString(move));
+        board.showHint(PieceShape.get(MoveGenerator.piece(move), MoveGenerator.rotation(move)), MoveGenerator.x(move),
+                MoveGenerator.y(move));
+    }
+
+    /**
+     * Shows the placement heatmap on the board, or hides it if it is already shown
+     */
+    protected void togglePlacements() {
+        showPlacements = !showPlacements;
+        logger.info("Placement heatmap {}", showPlacements ? "shown" : "hidden");
+        updatePlacements();
+    }
+
+    /**
+     * Brings the placement heatmap up to date with the current piece and the board. Called whenever either changes;
+     * the board only builds a new map when the grid or the piece's shape is different.
+     */
+    protected void updatePlacements() {
+        if(showPlacements && game.getCurrentPiece() != null) {
+            board.showPlacements(game.getCurrentPiece().getShape());
+        } else {
+            board.clearPlacements();
+        }
+    }
+
+    /**
+     * Starts the computer playing, or stops it if it already is
+     * @param strong whether to start the strong player, which searches further ahead
+     */
+    protected void toggleBot(boolean strong) {
+        if(botTimeline != null) {
+            logger.info("Stopping the computer playing");
+            botTimeline.stop();
+            botTimeline = null;
+        } else if(autoPlayer != null) {
+            logger.info("Starting the computer playing, strong: {}", strong);
+            strongBot = strong;
+            if(strong && strongPlayer == null) {
+                strongPlayer = new ExpectimaxPlayer(autoPlayer.getEvaluator(), ExpectimaxPlayer.DEFAULT_DEPTH,
+                        ForkJoinPool.commonPool());
+            }
+            botTimeline = new Timeline(new KeyFrame(Duration.millis(BOT_DELAY), e -> botMove()));
+            botTimeline.setCycleCount(Animation.INDEFINITE);
+            botTimeline.play();
+        } else {
+            multimedia.playSound("fail.wav");
+        }
+    }
+
+    /**
+     * Has the computer play its best move. If there is no move, it waits for the turn to time out.
+     */
+    protected void botMove() {
+        if(strongBot) {
+            strongBotMove();
+            return;
+        }
+        playMove(autoPlayer.bestMove(game.getEngine()));
+    }
+
+    /**
+     * Starts the strong player searching for a move on the ForkJoin common pool, unless it already is. The move is
+     * played on the FX thread once found, as long as the board and pieces have not changed in the meantime.
+     */
+    protected void strongBotMove() {
+        var engine = game.getEngine();
+        if(botSearching || engine.isGameOver()) {
+            return;
+        }
+        botSearching = true;
+        long mask = engine.getGrid().getMask();
+        int current = engine.getCurrentPiece().getPiece();
+        int following = engine.getFollowingPiece().getPiece();
+        int multiplier = engine.getMultiplier();
+        CompletableFuture.supplyAsync(() -> strongPlayer.bestMove(mask, current, following, multiplier))
+                .whenComplete((move, e) -> Platform.runLater(() -> {
+                    botSearching = false;
+                    if(e != null) {
+                        logger.error("Strong player failed: {}", e.getMessage());
+                    } else if(botTimeline != null && engine.getGrid().getMask() == mask
+                            && engine.getCurrentPiece().getPiece() == current
+                            && engine.getFollowingPiece().getPiece() == following) {
+                        playMove(move);
+                    }
+                }));
+    }
+
+    /**
+     * Plays a move for the player, swapping and rotating first as it would be done by hand
+     * @param move packed move, or AutoPlayer.NO_MOVE to wait for the turn to time out
+     */
+    protected void playMove(int move) {
+        if(move == AutoPlayer.NO_MOVE) {
+            return;
+        }
+        if(MoveGenerator.slot(move) == MoveGenerator.FOLLOWING) {
+            game.swapCurrentPiece();
+            followingPieceBoard.pieceToDisplay(game.getFollowingPiece());
+        }
+        game.rotateCurrentPiece(MoveGenerator.rotation(move) - game.getCurrentPiece().getRotation());
+        pieceBoard.pieceToDisplay(game.getCurrentPiece());
+        blockClicked(board.getBlock(MoveGenerator.x(move), MoveGenerator.y(move)));
+    }
+
     /**
      * When a line has been cleared, an animation is played on a set of given GameBlockCoordinates
      * @param gameBlockCoordinates A Set of Coordinates for a grid
@@ -385,6 +656,36 @@ public class ChallengeScene extends BaseScene {
     protected void lineClear(Set<GameBlockCoordinate> gameBlockCoordinates) {
         multimedia.playSound("clear.wav");
         board.fadeOut(gameBlockCoordinates);
+        updatePlacements();
+    }
+
+    /**
+     * Turn a clear mask into the coordinates of every block in the lines cleared, for animations which work on a set
+     * of blocks
+     * @param clearMask mask of the lines cleared, with bit y set for row y and bit rows + x set for column x
+     * @param cols number of columns in the grid
+     * @param rows number of rows in the grid
+     * @return the coordinates of the blocks cleared
+     */
+    protected static Set<GameBlockCoordinate> clearedBlocks(BitSet clearMask, int cols, int rows) {
+        Set<GameBlockCoordinate> gameBlockCoordinateSet = new HashSet<>();
+        for(int line = clearMask.nextSetBit(0); line >= 0; line = clearMask.nextSetBit(line + 1)) {
+            for(int i = 0; i < (line < rows ? cols : rows); i++) {
+                gameBlockCoordinateSet.add(line < rows ? new GameBlockCoordinate(i, line)
+                        : new GameBlockCoordinate(line - rows, i));
+            }
+        }
+        return gameBlockCoordinateSet;
+    }
+
+    /**
+     * When a line has been cleared, an animation is played on every block in the lines cleared
+     * @param clearMask mask of the lines cleared
+     */
+    protected void lineClear(BitSet clearMask) {
+        multimedia.playSound("clear.wav");
+        board.fadeOut(clearMask);
+        updatePlacements();
     }
 
     /**
@@ -401,6 +702,11 @@ public class ChallengeScene extends BaseScene {
      * Ends the game
      */
     protected void gameEnd() {
+        saveReplay();
+        if(botTimeline != null) {
+            botTimeline.stop();
+            botTimeline = null;
+        }
         if(!(game instanceof MultiplayerGame)) { //Ends game only if the game is a challenge scene game
             logger.info("Game Over");
             timer.setVisible(false);
@@ -410,6 +716,21 @@ public class ChallengeScene extends BaseScene {
         }
     }
 
+    /**
+     * Show the scores once the game is over
+     */
+    protected void showScores() {
+        gameWindow.startScores(game);
+    }
+
+    /**
+     * Get the file holding the local scores, which the highscore is taken from
+     * @return scores file
+     */
+    protected File scoresFile() {
+        return new File(ScoresScene.SCORES_FILE);
+    }
+
     /**
      * Creates a new timer animation, which fades from green to yellow to red depending on time left
      * @param delay
@@ -445,7 +766,7 @@ public class ChallengeScene extends BaseScene {
      * higher
      */
     protected void initialHighscore() {
-        File file = new File("scores.txt");
+        File file = scoresFile();
         int highScore = 0;
         try {
             if (file.exists()) {
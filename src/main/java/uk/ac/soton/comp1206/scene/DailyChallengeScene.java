@@ -0,0 +1,90 @@
+package uk.ac.soton.comp1206.scene;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.DailyChallenge;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+/**
+ * The Daily Challenge scene is a standard challenge in which every player gets the same pieces on the same day. The
+ * finished game's replay is kept in the day's own archive, rather than with the other replays, and is handed to the
+ * scores scene with the score, so only a score the replay proves is added to the day's leaderboard.
+ */
+public class DailyChallengeScene extends ChallengeScene {
+
+    private static final Logger logger = LogManager.getLogger(DailyChallengeScene.class);
+
+    /**
+     * The day being played
+     */
+    protected final LocalDate date;
+
+    /**
+     * The replay of the finished game, submitted with its score
+     */
+    protected Replay submission;
+
+    /**
+     * Create a new scene playing the given day's challenge
+     * @param gameWindow the Game Window
+     * @param date the day
+     */
+    public DailyChallengeScene(GameWindow gameWindow, LocalDate date) {
+        super(gameWindow);
+        this.date = date;
+    }
+
+    /**
+     * Set up a game with the day's pieces
+     */
+    @Override
+    public void setupGame() {
+        logger.info("Starting the daily challenge for {}", date);
+        game = new Game(cols, rows, DailyChallenge.pieces(date));
+    }
+
+    /**
+     * Replays of the day's games are kept in the day's archive, next to its scores
+     * @return the day's directory
+     */
+    @Override
+    protected Path replayDirectory() {
+        return DailyChallenge.directory(date);
+    }
+
+    /**
+     * Finish recording the game, keeping the replay to submit with the score
+     * @return the replay, or null if the game was not being recorded
+     */
+    @Override
+    protected Replay saveReplay() {
+        var replay = super.saveReplay();
+        if(replay != null) {
+            submission = replay;
+        }
+        return replay;
+    }
+
+    /**
+     * Show the day's scores, submitting the score with the replay
+     */
+    @Override
+    protected void showScores() {
+        gameWindow.startDailyScores(game, date, submission);
+    }
+
+    /**
+     * The highscore is taken from the day's scores
+     * @return the day's scores file
+     */
+    @Override
+    protected File scoresFile() {
+        return DailyChallenge.directory(date).resolve(ScoresScene.SCORES_FILE).toFile();
+    }
+}
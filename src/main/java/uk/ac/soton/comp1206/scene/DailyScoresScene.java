@@ -0,0 +1,106 @@
+package uk.ac.soton.comp1206.scene;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.DailyChallenge;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayVerifier;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+
+/**
+ * The Daily Scores scene shows the leaderboard of a single day's challenge. A score is only added if the replay
+ * submitted with it is verified against the day's pieces. The challenge scene has already kept the replay in the day's
+ * own archive, next to its scores.
+ *
+ * The online server keeps a single leaderboard, so daily scores are not sent to it.
+ */
+public class DailyScoresScene extends ScoresScene {
+
+    private static final Logger logger = LogManager.getLogger(DailyScoresScene.class);
+
+    /**
+     * The day played
+     */
+    protected final LocalDate date;
+
+    /**
+     * The replay submitted with the score, or null if there is none
+     */
+    protected final Replay replay;
+
+    /**
+     * Create a new scene showing a day's scores, submitting the score of a game with its replay
+     * @param gameWindow the game window
+     * @param game the game played
+     * @param date the day played
+     * @param replay the replay of the game, or null if it was not recorded
+     */
+    public DailyScoresScene(GameWindow gameWindow, Game game, LocalDate date, Replay replay) {
+        super(gameWindow, game);
+        this.date = date;
+        this.replay = replay;
+    }
+
+    @Override
+    protected String getTitle() {
+        return "Daily Challenge " + date;
+    }
+
+    @Override
+    protected File scoresFile() {
+        return DailyChallenge.directory(date).resolve(SCORES_FILE).toFile();
+    }
+
+    /**
+     * Load the day's scores, creating the day's directory if it is the first game that day
+     */
+    @Override
+    protected void loadScores() {
+        try {
+            Files.createDirectories(DailyChallenge.directory(date));
+        } catch (IOException e) {
+            logger.error("Unable to create the daily scores directory: " + e.getMessage());
+        }
+        super.loadScores();
+    }
+
+    /**
+     * A new day starts with no scores
+     */
+    @Override
+    protected void writeScores() {
+    }
+
+    /**
+     * Add the score if the replay proves it
+     * @param name name of player
+     * @param score score of player
+     */
+    @Override
+    public void addScore(String name, int score) {
+        if(replay == null) {
+            logger.error("No replay submitted, score not added");
+            return;
+        }
+        var verifier = new ReplayVerifier(replay.getCols(), replay.getRows());
+        var verdict = verifier.verify(replay, DailyChallenge.seed(date), score);
+        if(verdict != ReplayVerifier.Verdict.VALID) {
+            logger.error("Replay rejected ({} at event {}), score not added", verdict, verifier.getFailedEvent());
+            return;
+        }
+        super.addScore(name, score);
+    }
+
+    /**
+     * Daily scores are not sent to the online leaderboard
+     */
+    @Override
+    protected void loadOnlineScores() {
+    }
+}
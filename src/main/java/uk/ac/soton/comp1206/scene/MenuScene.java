@@ -16,9 +16,21 @@ import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.media.Multimedia;
+import uk.ac.soton.comp1206.puzzle.PuzzlePack;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayArchive;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The main menu of the game. Provides a gateway to the rest of the game.
  */
@@ -26,8 +38,18 @@ public class MenuScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
 
+    /**
+     * The number of most recent replays offered to watch
+     */
+    private static final int RECENT_REPLAYS = 50;
+
     private Multimedia multimedia = new Multimedia();
 
+    /**
+     * Whether the puzzle pack is being opened
+     */
+    private boolean loadingPuzzles = false;
+
     /**
      * Create a new menu scene
      * @param gameWindow the Game Window this will be displayed in
@@ -78,12 +100,16 @@ public class MenuScene extends BaseScene {
 
         //Menu Buttons
         var singlePlayer = new Button("Single Player");
+        var daily = new Button("Daily Challenge");
+        var puzzles = new Button("Puzzles");
+        var marathon = new Button("Marathon");
         var multiPlayer = new Button("Multi Player");
+        var replays = new Button("Replays");
         var instructions = new Button("How to Play");
         var exit = new Button("Exit");
 
         //Vbox to store and display all buttons
-        var vbox = new VBox(10, singlePlayer, multiPlayer, instructions, exit);
+        var vbox = new VBox(10, singlePlayer, daily, puzzles, marathon, multiPlayer, replays, instructions, exit);
         menuPane.getChildren().add(vbox);
 
         //Styles buttons
@@ -91,13 +117,21 @@ public class MenuScene extends BaseScene {
         vbox.setAlignment(Pos.BOTTOM_CENTER);
 
         singlePlayer.setBackground(null);
+        daily.setBackground(null);
+        puzzles.setBackground(null);
+        marathon.setBackground(null);
         multiPlayer.setBackground(null);
+        replays.setBackground(null);
         instructions.setBackground(null);
         exit.setBackground(null);
 
         //Button Actions
         singlePlayer.setOnAction(this::startGame);
+        daily.setOnAction(this::startDaily);
+        puzzles.setOnAction(this::startPuzzles);
+        marathon.setOnAction(this::startMarathon);
         multiPlayer.setOnAction(this::startMultiplayer);
+        replays.setOnAction(this::startReplay);
         instructions.setOnAction(this::startInstructions);
         exit.setOnAction((ActionEvent event) -> {
             System.exit(0);
@@ -141,6 +175,93 @@ public class MenuScene extends BaseScene {
         this.multimedia.stopBackground();
     }
 
+    /**
+     * Handle when the Daily Challenge button is pressed
+     * @param event event
+     */
+    private void startDaily(ActionEvent event) {
+        gameWindow.startDailyChallenge();
+        multimedia.playSound("transition.wav");
+        this.multimedia.stopBackground();
+    }
+
+    /**
+     * Handle when the Puzzles button is pressed, opening the puzzle pack off the FX thread, as it is generated the
+     * first time, then asking which puzzle to play
+     * @param event event
+     */
+    private void startPuzzles(ActionEvent event) {
+        if(loadingPuzzles) {
+            return;
+        }
+        loadingPuzzles = true;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return PuzzlePack.openDefault();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((pack, e) -> Platform.runLater(() -> {
+            loadingPuzzles = false;
+            if(e != null) {
+                logger.error("Unable to open the puzzle pack: " + e.getMessage());
+                multimedia.playSound("fail.wav");
+            } else if(pack.size() == 0) {
+                logger.info("No puzzles to play");
+                multimedia.playSound("fail.wav");
+            } else {
+                choosePuzzle(pack);
+            }
+        }));
+    }
+
+    /**
+     * Ask which puzzle of a pack to play, listing them from the pack's index
+     * @param pack the puzzle pack
+     */
+    private void choosePuzzle(PuzzlePack pack) {
+        var choices = new ArrayList<String>();
+        for(int i = 0; i < pack.size(); i++) {
+            choices.add((i + 1) + ": " + pack.getMoves(i) + " moves" + (pack.isUnique(i) ? ", one solution" : ""));
+        }
+        var dialog = new ChoiceDialog<>(choices.get(0), choices);
+        dialog.setTitle("Puzzles");
+        dialog.setContentText("Play Puzzle");
+        Optional<String> result = dialog.showAndWait();
+        if(result.isEmpty()) {
+            return;
+        }
+        int number = Integer.parseInt(result.get().substring(0, result.get().indexOf(':'))) - 1;
+        gameWindow.startPuzzle(pack, number);
+        multimedia.playSound("transition.wav");
+        this.multimedia.stopBackground();
+    }
+
+    /**
+     * Handle when the Marathon button is pressed, asking for the size of board to play on
+     * @param event event
+     */
+    private void startMarathon(ActionEvent event) {
+        var sizeDialog = new TextInputDialog(String.valueOf(ChallengeScene.DEFAULT_SIZE * 2));
+        sizeDialog.setTitle("Marathon");
+        sizeDialog.setContentText("Board Size (" + ChallengeScene.DEFAULT_SIZE + " - " + ChallengeScene.MAX_SIZE + ")");
+        Optional<String> result = sizeDialog.showAndWait();
+        if(result.isEmpty()) {
+            return;
+        }
+        int size;
+        try {
+            size = Integer.parseInt(result.get().trim());
+        } catch (NumberFormatException e) {
+            logger.error("Invalid marathon size: " + result.get());
+            return;
+        }
+        size = Math.max(ChallengeScene.DEFAULT_SIZE, Math.min(size, ChallengeScene.MAX_SIZE));
+        gameWindow.startMarathon(size);
+        multimedia.playSound("transition.wav");
+        this.multimedia.stopBackground();
+    }
+
     /**
      * Handle when the Multiplayer button is pressed
      * @param event
@@ -151,6 +272,42 @@ public class MenuScene extends BaseScene {
         multimedia.stopBackground();
     }
 
+    /**
+     * Handle when the Replays button is pressed, asking which of the most recent replays in the archive to watch
+     * @param event event
+     */
+    private void startReplay(ActionEvent event) {
+        Replay replay;
+        try(var archive = ReplayArchive.open()) {
+            if(archive.size() == 0) {
+                logger.info("No replays to watch");
+                multimedia.playSound("fail.wav");
+                return;
+            }
+            var format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+            var choices = new ArrayList<String>();
+            for(int i = archive.size() - 1; i >= Math.max(0, archive.size() - RECENT_REPLAYS); i--) {
+                var recorded = Instant.ofEpochMilli(archive.getRecorded(i)).atZone(ZoneId.systemDefault());
+                choices.add((i + 1) + ": " + format.format(recorded) + "  Score " + archive.getScore(i));
+            }
+            var dialog = new ChoiceDialog<>(choices.get(0), choices);
+            dialog.setTitle("Replays");
+            dialog.setContentText("Watch Replay");
+            Optional<String> result = dialog.showAndWait();
+            if(result.isEmpty()) {
+                return;
+            }
+            int number = Integer.parseInt(result.get().substring(0, result.get().indexOf(':'))) - 1;
+            replay = archive.get(number).getReplay();
+        } catch (IOException e) {
+            logger.error("Unable to open replay: " + e.getMessage());
+            return;
+        }
+        gameWindow.startReplay(replay);
+        multimedia.playSound("transition.wav");
+        multimedia.stopBackground();
+    }
+
     /**
      * Handle when the Instructions button is pressed
      * @param event
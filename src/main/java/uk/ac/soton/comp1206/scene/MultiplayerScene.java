@@ -14,6 +14,7 @@ import javafx.scene.text.TextAlignment;
 import javafx.util.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ai.AutoPlayer;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.ScoresList;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
@@ -149,7 +150,16 @@ public class MultiplayerScene extends ChallengeScene{
     public void setupGame() {
         logger.info("Starting a new multiplayer game");
 
-        game = new MultiplayerGame(5,  5, this.gameWindow);
+        game = new MultiplayerGame(cols, rows, this.gameWindow);
+    }
+
+    /**
+     * Hints and the computer playing are not available against other players
+     * @return null
+     */
+    @Override
+    protected AutoPlayer createAutoPlayer() {
+        return null;
     }
 
     /**
@@ -260,7 +270,7 @@ public class MultiplayerScene extends ChallengeScene{
     public void initialisePlayerBoards() {
         playerToGameboard = new HashMap<>();
         for (String player: players) {
-            GameBoard gameBoard = new GameBoard(5,5, 75,75);
+            GameBoard gameBoard = new GameBoard(game.getCols(), game.getRows(), 75,75);
             Text name = new Text(player);
             name.getStyleClass().add("heading");
             name.setTextAlignment(TextAlignment.CENTER);
@@ -0,0 +1,256 @@
+package uk.ac.soton.comp1206.scene;
+
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.text.Text;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.component.GameBlock;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+import uk.ac.soton.comp1206.game.PieceShape;
+import uk.ac.soton.comp1206.game.VirtualGameClock;
+import uk.ac.soton.comp1206.puzzle.Puzzle;
+import uk.ac.soton.comp1206.puzzle.PuzzlePack;
+import uk.ac.soton.comp1206.puzzle.PuzzleSolver;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+/**
+ * The Puzzle scene plays one puzzle from a pack: the board starts partly filled, and the puzzle's pieces must clear it
+ * in as many moves as there are pieces. The puzzle is only read from the pack when the scene is built.
+ *
+ * There is no time limit, so the game is given a virtual clock which is never advanced. Once the last piece of the
+ * puzzle is current, the following piece is not part of the puzzle, so it is not shown and cannot be swapped in.
+ * Hints come from solving the puzzle from the current position, and the computer cannot play.
+ */
+public class PuzzleScene extends ChallengeScene {
+
+    private static final Logger logger = LogManager.getLogger(PuzzleScene.class);
+
+    /**
+     * The value the blocks filled at the start are shown with
+     */
+    public static final int PREFILLED = 14;
+
+    /**
+     * The pack being played
+     */
+    protected final PuzzlePack pack;
+
+    /**
+     * The number of the puzzle in the pack
+     */
+    protected final int number;
+
+    /**
+     * The puzzle being played
+     */
+    protected Puzzle puzzle;
+
+    /**
+     * Finds hints, or null if none have been asked for
+     */
+    protected PuzzleSolver solver;
+
+    /**
+     * Shows which puzzle is being played and the moves left
+     */
+    protected Text progress;
+
+    /**
+     * Whether the puzzle has been solved or failed
+     */
+    protected boolean finished = false;
+
+    /**
+     * Create a new scene playing a puzzle from a pack
+     * @param gameWindow the Game Window
+     * @param pack the pack
+     * @param number the number of the puzzle in the pack
+     */
+    public PuzzleScene(GameWindow gameWindow, PuzzlePack pack, int number) {
+        super(gameWindow, pack.getCols(), pack.getRows());
+        this.pack = pack;
+        this.number = number;
+    }
+
+    /**
+     * Read the puzzle, and set up a game with its board and pieces
+     */
+    @Override
+    public void setupGame() {
+        puzzle = pack.get(number);
+        logger.info("Starting puzzle {} of {}: {} moves", number + 1, pack.size(), puzzle.getMoves());
+        game = new Game(cols, rows, puzzle.pieceSource(), new VirtualGameClock(), Platform::runLater);
+        long board = puzzle.getBoard();
+        for(int index = 0; index < cols * rows; index++) {
+            if((board & 1L << index) != 0) {
+                game.getGrid().set(index % cols, index / cols, PREFILLED);
+            }
+        }
+    }
+
+    /**
+     * The computer does not play puzzles, and hints come from the solver
+     * @return null
+     */
+    @Override
+    protected AutoPlayer createAutoPlayer() {
+        return null;
+    }
+
+    /**
+     * Puzzles are not recorded
+     * @return null
+     */
+    @Override
+    protected ReplayRecorder createRecorder() {
+        return null;
+    }
+
+    /**
+     * Build the scene, showing the puzzle's progress under the board
+     */
+    @Override
+    public void build() {
+        super.build();
+        progress = new Text();
+        progress.getStyleClass().add("heading");
+        mainPane.setBottom(progress);
+        BorderPane.setAlignment(progress, Pos.CENTER);
+        updateProgress();
+    }
+
+    /**
+     * Start the game, without a turn timer
+     */
+    @Override
+    public void initialise() {
+        super.initialise();
+        timer.setVisible(false);
+    }
+
+    /**
+     * Show the pieces, leaving out a following piece which is not part of the puzzle
+     * @param gamePiece current GamePiece
+     * @param followingGamePiece following GamePiece
+     */
+    @Override
+    protected void nextPiece(GamePiece gamePiece, GamePiece followingGamePiece) {
+        super.nextPiece(gamePiece, followingGamePiece);
+        if(!followingInPuzzle()) {
+            followingPieceBoard.getGrid().clearGrid();
+        }
+    }
+
+    /**
+     * Swap the current and following pieces, as long as the following piece is part of the puzzle
+     */
+    @Override
+    protected void swapPieces() {
+        if(!followingInPuzzle()) {
+            multimedia.playSound("fail.wav");
+            return;
+        }
+        super.swapPieces();
+    }
+
+    /**
+     * Play a piece, then check whether the puzzle is solved or has run out of pieces
+     * @param gameBlock the Game Block that was clicked
+     */
+    @Override
+    protected void blockClicked(GameBlock gameBlock) {
+        if(finished) {
+            return;
+        }
+        super.blockClicked(gameBlock);
+        updateProgress();
+        var engine = game.getEngine();
+        if(engine.getGrid().getMask() == 0) {
+            finish(true);
+        } else if(engine.getPiecesPlayed() >= puzzle.getMoves()) {
+            finish(false);
+        }
+    }
+
+    /**
+     * Show the next move of a solution from the current position, if there still is one
+     */
+    @Override
+    protected void showHint() {
+        if(finished) {
+            return;
+        }
+        if(solver == null) {
+            solver = new PuzzleSolver(new MoveGenerator(cols, rows));
+        }
+        var engine = game.getEngine();
+        int next = engine.getPiecesPlayed() + 1;
+        int current = engine.getCurrentPiece().getPiece();
+        if(next < puzzle.getMoves() && engine.getFollowingPiece().getPiece() != puzzle.getPiece(next)) {
+            //The pieces have been swapped, and the solver can play either piece anyway
+            current = engine.getFollowingPiece().getPiece();
+        }
+        var solution = solver.solve(engine.getGrid().getMask(), current, puzzle.getPieces(), next);
+        if(!solution.solved()) {
+            logger.info("No solution left from here");
+            multimedia.playSound("fail.wav");
+            return;
+        }
+        int move = solution.solution()[0];
+        logger.info("Hint: {}", MoveGenerator.toString(move));
+        board.showHint(PieceShape.get(MoveGenerator.piece(move), MoveGenerator.rotation(move)), MoveGenerator.x(move),
+                MoveGenerator.y(move));
+    }
+
+    /**
+     * Whether the following piece is one of the puzzle's pieces
+     * @return whether it can be played
+     */
+    protected boolean followingInPuzzle() {
+        return game.getEngine().getPiecesPlayed() + 1 < puzzle.getMoves();
+    }
+
+    /**
+     * Show which puzzle this is and how many moves are left
+     */
+    protected void updateProgress() {
+        int left = puzzle.getMoves() - game.getEngine().getPiecesPlayed();
+        progress.setText("Puzzle " + (number + 1) + " of " + pack.size() + ": " + left
+                + (left == 1 ? " move left" : " moves left"));
+    }
+
+    /**
+     * End the puzzle, and offer the next puzzle if it was solved, or another try if it was not
+     * @param solved whether the board was cleared
+     */
+    protected void finish(boolean solved) {
+        finished = true;
+        logger.info("Puzzle {} {}", number + 1, solved ? "solved" : "failed");
+        gameEnd();
+        Platform.runLater(() -> {
+            var again = new ButtonType(solved ? "Next Puzzle" : "Retry", ButtonBar.ButtonData.OK_DONE);
+            var menu = new ButtonType("Menu", ButtonBar.ButtonData.CANCEL_CLOSE);
+            boolean last = solved && number + 1 >= pack.size();
+            var alert = last ? new Alert(Alert.AlertType.INFORMATION, "Every puzzle in the pack is solved!", menu)
+                    : new Alert(Alert.AlertType.INFORMATION, solved ? "Puzzle solved!" : "The board was not cleared.",
+                    again, menu);
+            alert.setTitle("Puzzle " + (number + 1));
+            alert.setHeaderText(null);
+            var result = alert.showAndWait();
+            if(result.isPresent() && result.get() == again) {
+                gameWindow.startPuzzle(pack, solved ? number + 1 : number);
+            } else {
+                gameWindow.startMenu();
+            }
+        });
+    }
+}
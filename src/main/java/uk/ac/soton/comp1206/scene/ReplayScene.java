@@ -0,0 +1,190 @@
+package uk.ac.soton.comp1206.scene;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.util.Duration;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.GameBlock;
+import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.VirtualGameClock;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
+import uk.ac.soton.comp1206.replay.Replayer;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+/**
+ * The Replay scene plays a recorded game back through the challenge scene in real time, as it was played. The player
+ * cannot play, only leave with Escape.
+ *
+ * The game is given a virtual clock, so its own turn timer never runs out; timeouts happen when the replay says they
+ * did.
+ */
+public class ReplayScene extends ChallengeScene {
+
+    private static final Logger logger = LogManager.getLogger(ReplayScene.class);
+
+    /**
+     * The replay being played
+     */
+    protected final Replay replay;
+
+    /**
+     * Reads the events of the replay
+     */
+    protected Replay.Cursor cursor;
+
+    /**
+     * Whether the cursor holds an event that has not been played yet
+     */
+    protected boolean waiting = false;
+
+    /**
+     * Plays each event once its time has come, every frame
+     */
+    protected AnimationTimer player;
+
+    /**
+     * Create a new scene playing back a replay
+     * @param gameWindow the Game Window
+     * @param replay the replay to play
+     */
+    public ReplayScene(GameWindow gameWindow, Replay replay) {
+        super(gameWindow, replay.getCols(), replay.getRows());
+        this.replay = replay;
+    }
+
+    /**
+     * Set up a game with the pieces of the replay
+     */
+    @Override
+    public void setupGame() {
+        logger.info("Starting a replay");
+        game = new Game(cols, rows, Replayer.pieces(replay), new VirtualGameClock(), Platform::runLater);
+    }
+
+    /**
+     * A replay is not recorded again
+     * @return null
+     */
+    @Override
+    protected ReplayRecorder createRecorder() {
+        return null;
+    }
+
+    /**
+     * Build the scene, and leave when the replayed game ends rather than asking for a name for the score
+     */
+    @Override
+    public void build() {
+        super.build();
+        game.setGameEndListener(game -> finish());
+    }
+
+    /**
+     * Start the game and the playback
+     */
+    @Override
+    public void initialise() {
+        super.initialise();
+        cursor = replay.cursor();
+        long start = System.nanoTime();
+        player = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                playUntil((now - start) / 1_000_000);
+            }
+        };
+        player.start();
+    }
+
+    /**
+     * Play every event up to the given time
+     * @param time ms since the playback started
+     */
+    protected void playUntil(long time) {
+        while(player != null && (waiting || cursor.next())) {
+            if(cursor.time > time) {
+                waiting = true;
+                return;
+            }
+            waiting = false;
+            play();
+            if(cursor.type == Replay.END) {
+                break;
+            }
+        }
+        finish();
+    }
+
+    /**
+     * Play the event under the cursor through the scene, as if the player had done it
+     */
+    protected void play() {
+        switch (cursor.type) {
+            case Replay.PLACE -> {
+                if(game.play(cursor.x, cursor.y)) {
+                    multimedia.playSound("place.wav");
+                    game.restartLoop();
+                } else {
+                    logger.error("Replay event {} does not fit, stopping", cursor.index);
+                    finish();
+                }
+            }
+            case Replay.ROTATE -> rotate(cursor.rotations);
+            case Replay.SWAP -> swapPieces();
+            case Replay.TIMEOUT -> game.gameLoop();
+            default -> {
+                //Pieces are already in the piece source, and the end is handled by the caller
+            }
+        }
+    }
+
+    /**
+     * Stop the playback, and go back to the menu after a moment
+     */
+    protected void finish() {
+        if(player == null) {
+            return;
+        }
+        player.stop();
+        player = null;
+        var pause = new PauseTransition(Duration.seconds(2));
+        pause.setOnFinished(e -> {
+            gameEnd();
+            gameWindow.startMenu();
+        });
+        pause.play();
+    }
+
+    /**
+     * Only Escape does anything while watching, which leaves the replay
+     * @param keyEvent Keyboard Input
+     */
+    @Override
+    protected void keyboardInput(KeyEvent keyEvent) {
+        if(keyEvent.getCode() == KeyCode.ESCAPE) {
+            if(player != null) {
+                player.stop();
+                player = null;
+            }
+            gameEnd();
+            gameWindow.startMenu();
+        }
+    }
+
+    @Override
+    protected void blockClicked(GameBlock gameBlock) {
+    }
+
+    @Override
+    protected void rotate(GameBlock gameBlock) {
+    }
+
+    @Override
+    protected void swapPieces(GameBlock gameBlock) {
+    }
+}
@@ -38,6 +38,11 @@ public class ScoresScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(ScoresScene.class);
 
+    /**
+     * The file the local scores are kept in
+     */
+    public static final String SCORES_FILE = "scores.txt";
+
     private Multimedia multimedia = new Multimedia();
 
     /**
@@ -178,7 +183,7 @@ public class ScoresScene extends BaseScene {
         scores.getChildren().add(onlineScores);
 
         //Game over title text
-        Text highScores = new Text("Game Over - High Scores");
+        Text highScores = new Text(getTitle());
         highScores.setTextAlignment(TextAlignment.CENTER);
         highScores.getStyleClass().add("title");
         scorePane.getChildren().add(highScores);
@@ -239,11 +244,27 @@ public class ScoresScene extends BaseScene {
         exit.setStyle("-fx-text-fill: white");
     }
 
+    /**
+     * Get the title shown above the scores
+     * @return title
+     */
+    protected String getTitle() {
+        return "Game Over - High Scores";
+    }
+
+    /**
+     * Get the file holding the local scores
+     * @return scores file
+     */
+    protected File scoresFile() {
+        return new File(SCORES_FILE);
+    }
+
     /**
      * Loads scores from a local file if available, otherwise it will generate a new file of scores
      */
     protected void loadScores() {
-        File file = new File("scores.txt");
+        File file = scoresFile();
         try {
             var fileCreate = file.createNewFile();
             if (fileCreate) {
@@ -267,9 +288,9 @@ public class ScoresScene extends BaseScene {
     /**
      * Generates a preset file of new scores
      */
-    private void writeScores() {
+    protected void writeScores() {
         ArrayList<Pair<String, Integer>> scores = new ArrayList<>();
-        File file = new File("scores.txt");
+        File file = scoresFile();
         try {
             file.createNewFile(); // creates a new file
 
@@ -305,7 +326,7 @@ public class ScoresScene extends BaseScene {
      * @param score score of player
      */
     public void addScore(String name, int score) {
-        File file = new File("scores.txt");
+        File file = scoresFile();
         try{
             FileWriter fileWriter = new FileWriter(file, true);
             BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
@@ -10,10 +10,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.App;
 import uk.ac.soton.comp1206.event.GameEndListener;
+import uk.ac.soton.comp1206.game.DailyChallenge;
 import uk.ac.soton.comp1206.game.Game;
 import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.puzzle.PuzzlePack;
+import uk.ac.soton.comp1206.replay.Replay;
 import uk.ac.soton.comp1206.scene.*;
 
+import java.time.LocalDate;
+
 /**
  * The GameWindow is the single window for the game where everything takes place. To move between screens in the game,
  * we simply change the scene.
@@ -90,6 +95,38 @@ public class GameWindow {
         loadScene(new ChallengeScene(this));
     }
 
+    /**
+     * Display a single player marathon on a larger board
+     * @param size number of rows and columns of the board
+     */
+    public void startMarathon(int size) {
+        loadScene(new ChallengeScene(this, size, size));
+    }
+
+    /**
+     * Display today's daily challenge, which gives every player the same pieces
+     */
+    public void startDailyChallenge() {
+        loadScene(new DailyChallengeScene(this, DailyChallenge.today()));
+    }
+
+    /**
+     * Play a puzzle from a pack
+     * @param pack the pack
+     * @param number the number of the puzzle in the pack
+     */
+    public void startPuzzle(PuzzlePack pack, int number) {
+        loadScene(new PuzzleScene(this, pack, number));
+    }
+
+    /**
+     * Play back a recorded game
+     * @param replay the replay to watch
+     */
+    public void startReplay(Replay replay) {
+        loadScene(new ReplayScene(this, replay));
+    }
+
     /**
      * Display the Instructions Scene
      */
@@ -104,6 +141,16 @@ public class GameWindow {
         loadScene(new ScoresScene(this, game));
     }
 
+    /**
+     * Display a day's daily challenge scores, submitting the score of a game with its replay
+     * @param game the game played
+     * @param date the day played
+     * @param replay the replay of the game, or null if it was not recorded
+     */
+    public void startDailyScores(Game game, LocalDate date, Replay replay) {
+        loadScene(new DailyScoresScene(this, game, date, replay));
+    }
+
     /**
      * Starts the Lobby Scene
      */
@@ -0,0 +1,96 @@
+package uk.ac.soton.comp1206.ai;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the transposition table never changes the result of a search, only how long it takes
+ */
+class ExpectimaxPlayerTest {
+
+    private static final int DEPTH = 3;
+
+    /**
+     * A position in a game: the board, the two pieces and the multiplier
+     */
+    private record Position(long board, int current, int following, int multiplier) {
+    }
+
+    @Test
+    void tableGivesTheSameValue() {
+        var evaluator = new Evaluator(new MoveGenerator(5, 5));
+        var pool = new ForkJoinPool(2);
+        var table = new TranspositionTable(16);
+        try {
+            for(long seed = 0; seed < 2; seed++) {
+                var positions = positions(seed, evaluator);
+                //Searched from the last position back, so the table holds boards from later in the game, stored
+                //fewer placements from the end of the search than they are found at now
+                var cached = new ExpectimaxPlayer(evaluator, DEPTH, pool, table);
+                var uncached = new ExpectimaxPlayer(evaluator, DEPTH, pool, null);
+                for(int i = positions.size() - 1; i >= 0; i--) {
+                    check(cached, uncached, positions.get(i), "game " + seed + " position " + i);
+                }
+                //A shallower search on the same table finds every chance node it needs stored a placement deeper
+                cached = new ExpectimaxPlayer(evaluator, DEPTH - 1, pool, table);
+                uncached = new ExpectimaxPlayer(evaluator, DEPTH - 1, pool, null);
+                for(int i = 0; i < positions.size(); i++) {
+                    check(cached, uncached, positions.get(i), "game " + seed + " position " + i + " shallower");
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Check that a player with a table finds the same best value as one without, and picks a move which is worth it.
+     * Values are cached as floats, so they can differ in the last bits, and the move can differ between near ties.
+     * @param cached the player with a table
+     * @param uncached the player without
+     * @param position the position to search
+     * @param name the position, for failures
+     */
+    private static void check(ExpectimaxPlayer cached, ExpectimaxPlayer uncached, Position position, String name) {
+        double expected = uncached.value(position.board, position.current, position.following, position.multiplier);
+        double tolerance = Math.abs(expected) * 1e-5;
+        assertEquals(expected, cached.value(position.board, position.current, position.following,
+                position.multiplier), tolerance, name);
+        int move = cached.bestMove(position.board, position.current, position.following, position.multiplier);
+        assertEquals(expected, uncached.value(position.board, position.current, position.following,
+                position.multiplier, move), tolerance, name + " move");
+    }
+
+    /**
+     * Play a game with the autoplayer, collecting positions once a few pieces are on the board
+     * @param seed the game's seed
+     * @param evaluator evaluator for the autoplayer
+     * @return the positions
+     */
+    private static ArrayList<Position> positions(long seed, Evaluator evaluator) {
+        var player = new AutoPlayer(evaluator);
+        player.setBudget(0);
+        var engine = new GameEngine(5, 5, seed);
+        engine.initialise();
+        var positions = new ArrayList<Position>();
+        for(int move = 0; move < 8 && !engine.isGameOver(); move++) {
+            if(move >= 3) {
+                positions.add(new Position(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                        engine.getFollowingPiece().getPiece(), engine.getMultiplier()));
+            }
+            int best = player.bestMove(engine);
+            if(best == AutoPlayer.NO_MOVE) {
+                engine.timeout();
+            } else {
+                AutoPlayer.play(engine, best);
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,37 @@
+package uk.ac.soton.comp1206.ai;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.soton.comp1206.game.MoveGenerator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that evaluating with a survival table gives the same values as working the features out, on a 4x4 board so
+ * the whole table is quick to build and check
+ */
+class SurvivalTableTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tableMatchesComputedFeatures() throws IOException {
+        var file = directory.resolve("survival.bin");
+        SurvivalTable.generate(file, 4, 4);
+        var table = SurvivalTable.open(file);
+        assertEquals(4, table.getCols());
+        assertEquals(4, table.getRows());
+
+        var generator = new MoveGenerator(4, 4);
+        var computed = new Evaluator(generator);
+        var lookedUp = new Evaluator(generator, Evaluator.defaultWeights(), table);
+        for(long board = 0; board < 1 << 16; board++) {
+            assertEquals(computed.survivalFeatures(board), table.get(board), "board " + board);
+            assertEquals(computed.evaluate(board), lookedUp.evaluate(board), "board " + board);
+        }
+    }
+}
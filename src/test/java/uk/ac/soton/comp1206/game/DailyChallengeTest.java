@@ -0,0 +1,37 @@
+package uk.ac.soton.comp1206.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the daily seeds, and that the ring buffered source deals the same pieces as the seeded source
+ */
+class DailyChallengeTest {
+
+    @Test
+    void everyDayOfAYearHasItsOwnSeed() {
+        var first = LocalDate.of(2026, 1, 1);
+        var seeds = new HashSet<Long>();
+        for(int day = 0; day < 365; day++) {
+            seeds.add(DailyChallenge.seed(first.plusDays(day)));
+        }
+        assertEquals(365, seeds.size());
+        assertEquals(DailyChallenge.seed(first), DailyChallenge.seed(LocalDate.of(2026, 1, 1)));
+    }
+
+    @Test
+    void ringSourceDealsTheSeededPieces() {
+        for(long seed : new long[]{0, 1, DailyChallenge.seed(LocalDate.of(2026, 10, 17))}) {
+            var ring = new RingPieceSource(seed);
+            var seeded = new SeededPieceSource(seed);
+            //Several times round the ring, so it is refilled
+            for(int i = 0; i < 1 << 18; i++) {
+                assertEquals(seeded.next(), ring.next(), "piece " + i + " of seed " + seed);
+            }
+        }
+    }
+}
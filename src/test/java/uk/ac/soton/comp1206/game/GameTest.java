@@ -0,0 +1,56 @@
+package uk.ac.soton.comp1206.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that commands submitted to a game from many threads are all run, one at a time, on its owner
+ */
+class GameTest {
+
+    @Test
+    void commandsFromManyThreadsAreAllApplied() throws InterruptedException {
+        int threads = 4;
+        int commands = 50_000;
+        var owner = Executors.newSingleThreadExecutor();
+        try {
+            var game = new Game(5, 5, new SeededPieceSource(0), new VirtualGameClock(), owner);
+            game.getEngine().setSoundListener(null);
+            game.initialiseGame();
+            int start = game.getCurrentPiece().getRotation();
+            int[] applied = new int[1];
+
+            var producers = new ArrayList<Thread>();
+            for(int t = 0; t < threads; t++) {
+                int rotation = t + 1;
+                var producer = new Thread(() -> {
+                    for(int i = 0; i < commands; i++) {
+                        game.submit(() -> {
+                            game.rotateCurrentPiece(rotation);
+                            applied[0] += rotation;
+                        });
+                    }
+                });
+                producers.add(producer);
+                producer.start();
+            }
+            for(var producer : producers) {
+                producer.join();
+            }
+            var done = new CountDownLatch(1);
+            game.submit(done::countDown);
+            done.await();
+
+            int expected = commands * threads * (threads + 1) / 2;
+            assertEquals(expected, applied[0]);
+            assertEquals((start + expected) % 4, game.getCurrentPiece().getRotation());
+        } finally {
+            owner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package uk.ac.soton.comp1206.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that one timer runs the turn timers of 10,000 games at once, with every timeout running in the tick its
+ * deadline falls in, and that a running timer uses a single thread of its own
+ */
+class HashedWheelTimerTest {
+
+    private static final int GAMES = 10_000;
+
+    private static final long TICK = HashedWheelTimer.DEFAULT_TICK;
+
+    @Test
+    void runsManyGamesInTheTickTheyAreDue() {
+        var timer = HashedWheelTimer.manual(TICK, HashedWheelTimer.DEFAULT_WHEEL);
+        var generator = new MoveGenerator(5, 5);
+        int[] moves = new int[generator.maxMoves()];
+        var random = new SplittableRandom(0);
+        long[] counts = new long[3];
+
+        //Every game is played by a task on the wheel, every 100 to 500 ms, so its turn timer restarts each move
+        for(int seed = 0; seed < GAMES; seed++) {
+            var game = new Game(5, 5, new SeededPieceSource(seed), timer);
+            game.getEngine().setSoundListener(null);
+            game.start();
+            var player = new Runnable() {
+                long due;
+
+                @Override
+                public void run() {
+                    long late = timer.now() - due;
+                    counts[0]++;
+                    if(late < 0 || late > TICK) {
+                        counts[1]++;
+                    }
+                    var engine = game.getEngine();
+                    if(engine.isGameOver()) {
+                        return;
+                    }
+                    int count = generator.generate(engine.getGrid().getMask(), engine.getCurrentPiece().getPiece(),
+                            engine.getFollowingPiece().getPiece(), moves);
+                    if(count > 0 && play(game, moves[random.nextInt(count)])) {
+                        counts[2]++;
+                    }
+                    long delay = 100 + random.nextInt(400);
+                    due = timer.now() + delay;
+                    timer.schedule(this, delay);
+                }
+            };
+            long delay = random.nextInt(500);
+            player.due = timer.now() + delay;
+            timer.schedule(player, delay);
+        }
+
+        timer.advance(4_000);
+
+        assertEquals(0, counts[1], counts[1] + " of " + counts[0] + " moves ran outside their tick");
+        //Random moves end some games within a few seconds, but every game gets well past its first moves
+        assertTrue(counts[2] >= GAMES * 2L, counts[2] + " moves played");
+    }
+
+    @Test
+    void unplayedGameTimesOutInTheTickItIsDue() {
+        var timer = HashedWheelTimer.manual(TICK, 64);
+        var game = new Game(5, 5, new SeededPieceSource(0), timer);
+        game.getEngine().setSoundListener(null);
+        game.start();
+        int delay = game.getTimerDelay();
+
+        //The turn outlasts the wheel, so the timeout waits its rounds, then runs within a tick of its deadline
+        timer.advance(delay - 1);
+        assertEquals(GameEngine.STARTING_LIVES, game.getEngine().getLives());
+        timer.advance(TICK + 1);
+        assertEquals(GameEngine.STARTING_LIVES - 1, game.getEngine().getLives());
+        assertEquals(1, timer.pending());
+        game.endGame();
+    }
+
+    @Test
+    void runsEveryTimeoutOnOneTimerThread() throws InterruptedException {
+        var timer = new HashedWheelTimer();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        var done = new CountDownLatch(1_000);
+        try {
+            for(int i = 0; i < 1_000; i++) {
+                timer.schedule(() -> {
+                    threads.add(Thread.currentThread());
+                    done.countDown();
+                }, i % 50);
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS), "timeouts did not run");
+        } finally {
+            timer.shutdown();
+        }
+        assertEquals(1, threads.size());
+        assertEquals("game-timer", threads.iterator().next().getName());
+    }
+
+    /**
+     * Play a packed move through a game, as a player would: swap and rotate to the piece, click, and restart the turn
+     * timer if the piece was played
+     * @param game the game
+     * @param move the move
+     * @return whether the piece was played
+     */
+    private static boolean play(Game game, int move) {
+        if(MoveGenerator.slot(move) == MoveGenerator.FOLLOWING) {
+            game.swapCurrentPiece();
+        }
+        game.rotateCurrentPiece(MoveGenerator.rotation(move) - game.getCurrentPiece().getRotation());
+        if(!game.play(MoveGenerator.x(move), MoveGenerator.y(move))) {
+            return false;
+        }
+        game.restartLoop();
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.soton.comp1206.game;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the placement heatmap against playing each shape at each block of a copy of the grid
+ */
+class PlacementMapTest {
+
+    @Test
+    void matchesPlayingEveryPlacement() {
+        var random = new SplittableRandom(1);
+        var clearMask = new BitSet();
+        //70 columns puts rows across two words, and across word boundaries in the grid
+        for(int size : new int[]{5, 8, 13, 64, 70}) {
+            for(int board = 0; board < 4; board++) {
+                var grid = randomGrid(size, random);
+                for(int index = 0; index < GamePiece.PIECES * PieceShape.ROTATIONS; index++) {
+                    var shape = PieceShape.get(index);
+                    var map = new PlacementMap(grid, shape);
+                    int count = 0;
+                    for(int y = 0; y < size; y++) {
+                        for(int x = 0; x < size; x++) {
+                            int lines = -1;
+                            if(grid.canPlayShape(shape, x, y)) {
+                                var copy = copy(grid);
+                                copy.playShape(shape, x, y);
+                                copy.clearLines(shape, x, y, clearMask);
+                                lines = clearMask.cardinality();
+                                count++;
+                            }
+                            assertEquals(lines, map.getLines(x, y), shape + " at " + x + "," + y + " on " + size);
+                        }
+                    }
+                    assertEquals(count, map.getCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    void goesOutOfDateWhenTheGridChanges() {
+        var grid = new BitGrid(5, 5);
+        var shape = PieceShape.get(0, 0);
+        var map = new PlacementMap(grid, shape);
+        assertTrue(map.isFor(grid, shape));
+        assertFalse(map.isFor(grid, shape.rotate(1)));
+
+        grid.set(2, 2, 1);
+        assertFalse(map.isFor(grid, shape));
+        assertFalse(new PlacementMap(grid, shape).isValid(2, 2));
+    }
+
+    /**
+     * Make a grid with roughly half its blocks filled and a few lines nearly full, but none full, as a game never
+     * leaves a line full
+     * @param size number of rows and columns
+     * @param random source of the blocks
+     * @return the grid
+     */
+    static BitGrid randomGrid(int size, SplittableRandom random) {
+        var grid = new BitGrid(size, size);
+        for(int y = 0; y < size; y++) {
+            boolean nearlyFull = random.nextInt(4) == 0;
+            for(int x = 0; x < size; x++) {
+                if(nearlyFull ? random.nextInt(size) > 2 : random.nextBoolean()) {
+                    grid.set(x, y, 1);
+                }
+            }
+        }
+        for(int x = 0; x < size; x += 1 + random.nextInt(4)) {
+            for(int y = 0; y < size; y++) {
+                if(random.nextInt(size) > 2) {
+                    grid.set(x, y, 1);
+                }
+            }
+        }
+        for(int i = 0; i < size; i++) {
+            if(grid.getRowFill(i) == size) {
+                grid.set(random.nextInt(size), i, 0);
+            }
+            if(grid.getColFill(i) == size) {
+                grid.set(i, random.nextInt(size), 0);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Copy the filled blocks of a grid
+     * @param grid the grid
+     * @return a new grid with the same blocks filled
+     */
+    private static BitGrid copy(BitGrid grid) {
+        var copy = new BitGrid(grid.getCols(), grid.getRows());
+        for(int y = 0; y < grid.getRows(); y++) {
+            for(int x = 0; x < grid.getCols(); x++) {
+                copy.set(x, y, grid.get(x, y));
+            }
+        }
+        return copy;
+    }
+}
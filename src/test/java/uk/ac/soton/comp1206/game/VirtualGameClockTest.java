@@ -0,0 +1,43 @@
+package uk.ac.soton.comp1206.game;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a game on a virtual clock runs its turn timer without waiting for it
+ */
+class VirtualGameClockTest {
+
+    @Test
+    void unplayedGameTimesOutUntilItIsLost() {
+        for(int seed = 0; seed < 100; seed++) {
+            var clock = new VirtualGameClock();
+            var game = new Game(5, 5, new SeededPieceSource(seed), clock);
+            game.getEngine().setSoundListener(null);
+            game.start();
+            int timeouts = 0;
+            while(!game.getEngine().isGameOver() && clock.runNext()) {
+                timeouts++;
+            }
+            game.endGame();
+
+            assertTrue(game.getEngine().isGameOver());
+            assertEquals(GameEngine.STARTING_LIVES + 1, timeouts);
+            assertEquals(timeouts * (long) game.getEngine().getTimerDelay(), clock.now());
+        }
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() {
+        var clock = new VirtualGameClock();
+        int[] runs = new int[1];
+        var timeout = clock.schedule(() -> runs[0]++, 100);
+        clock.schedule(() -> runs[0] += 10, 200);
+        timeout.cancel();
+        clock.advance(1000);
+        assertEquals(10, runs[0]);
+        assertEquals(1000, clock.now());
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.soton.comp1206.replay;
+
+import uk.ac.soton.comp1206.ai.AutoPlayer;
+import uk.ac.soton.comp1206.game.GameEngine;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays whole games with the autoplayer and records them, for the replay tests
+ */
+final class RecordedGames {
+
+    /**
+     * A recorded game, and the engine it was played on as it was at the end
+     * @param replay the replay
+     * @param engine the engine
+     */
+    record Recorded(Replay replay, GameEngine engine) {
+    }
+
+    private RecordedGames() {
+    }
+
+    /**
+     * Play a 5x5 game to the end. Each move takes a random 200 to 2200 ms, and when no piece fits the player waits
+     * for the turn timer.
+     * @param seed the game's seed
+     * @param player plays the moves
+     * @param random chooses how long each move takes
+     * @return the recorded game
+     */
+    static Recorded play(long seed, AutoPlayer player, SplittableRandom random) {
+        var engine = new GameEngine(5, 5, seed);
+        long[] time = {0};
+        var recorder = ReplayRecorder.record(engine, () -> time[0]);
+        engine.initialise();
+        while(!engine.isGameOver()) {
+            int move = player.bestMove(engine);
+            if(move == AutoPlayer.NO_MOVE) {
+                time[0] += engine.getTimerDelay();
+                engine.timeout();
+            } else {
+                time[0] += 200 + random.nextInt(2000);
+                AutoPlayer.play(engine, move);
+            }
+        }
+        recorder.end(engine.getScore());
+        return new Recorded(recorder.toReplay(), engine);
+    }
+
+    /**
+     * Create the autoplayer the tests play with, which only looks at the move in hand so games are quick
+     * @return the player
+     */
+    static AutoPlayer player() {
+        var player = new AutoPlayer(5, 5);
+        player.setBudget(0);
+        return player;
+    }
+}
@@ -0,0 +1,174 @@
+package uk.ac.soton.comp1206.replay;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.GameEngine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that archived replays read back, and that seeking to any event gives the same game as playing up to it
+ */
+class ReplayArchiveTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void seekMatchesReplayingFromTheStart() throws IOException {
+        var player = RecordedGames.player();
+        var random = new SplittableRandom(0);
+        var replays = new ArrayList<Replay>();
+        try(var archive = ReplayArchive.open(directory)) {
+            for(int seed = 0; seed < 20; seed++) {
+                var replay = RecordedGames.play(seed, player, random).replay();
+                replays.add(replay);
+                assertEquals(seed, archive.append(replay, seed * 1000L));
+            }
+        }
+
+        try(var archive = ReplayArchive.open(directory)) {
+            assertEquals(replays.size(), archive.size());
+            for(int i = 0; i < archive.size(); i++) {
+                var replay = replays.get(i);
+                assertEquals(replay.getFinalScore(), archive.getScore(i));
+                assertEquals(replay.getSeed(), archive.getSeed(i));
+                assertEquals(i * 1000L, archive.getRecorded(i));
+
+                var indexed = archive.get(i);
+                for(int event = 0; event <= indexed.getEvents(); event += 1 + random.nextInt(40)) {
+                    assertEquals(playTo(replay, event).snapshot(), indexed.seek(event).snapshot(),
+                            "replay " + i + " event " + event);
+                }
+                assertEquals(playTo(replay, indexed.getEvents()).snapshot(),
+                        indexed.seek(indexed.getEvents()).snapshot());
+            }
+        }
+    }
+
+    @Test
+    void concurrentSavesAreAllKept() throws Exception {
+        int threads = 4;
+        int saves = 10;
+        var replays = new ArrayList<Replay>();
+        var random = new SplittableRandom(1);
+        for(int seed = 0; seed < threads * saves; seed++) {
+            replays.add(RecordedGames.play(seed, RecordedGames.player(), random).replay());
+        }
+
+        //Each save opens the archive for itself, as the scenes do, while it is opened and closed again alongside them
+        var pool = Executors.newFixedThreadPool(threads + 1);
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+            for(int t = 0; t < threads; t++) {
+                int first = t * saves;
+                tasks.add(() -> {
+                    for(int i = first; i < first + saves; i++) {
+                        try(var archive = ReplayArchive.open(directory)) {
+                            archive.append(replays.get(i), i);
+                        }
+                    }
+                    return null;
+                });
+            }
+            tasks.add(() -> {
+                for(int i = 0; i < threads * saves; i++) {
+                    try(var archive = ReplayArchive.open(directory.resolve("..").resolve(directory.getFileName()))) {
+                        archive.size();
+                    }
+                }
+                return null;
+            });
+            for(var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        try(var archive = ReplayArchive.open(directory); var again = ReplayArchive.open(directory)) {
+            assertSame(archive, again);
+            assertEquals(threads * saves, archive.size());
+            var saved = new HashSet<Long>();
+            for(int i = 0; i < archive.size(); i++) {
+                int number = (int) archive.getRecorded(i);
+                saved.add(archive.getRecorded(i));
+                assertEquals(replays.get(number).getSeed(), archive.getSeed(i));
+                assertEquals(replays.get(number).getFinalScore(), archive.get(i).getReplay().getFinalScore());
+            }
+            assertEquals(threads * saves, saved.size());
+        }
+    }
+
+    @Test
+    void indexedReplayReadsBackFromItsBytes() {
+        var replay = RecordedGames.play(3, RecordedGames.player(), new SplittableRandom(3)).replay();
+        var indexed = IndexedReplay.build(replay, 16);
+        var read = IndexedReplay.of(indexed.toBytes());
+        assertEquals(indexed.getEvents(), read.getEvents());
+        assertEquals(indexed.getKeyframes(), read.getKeyframes());
+        for(int event = 0; event <= read.getEvents(); event += 5) {
+            assertEquals(playTo(replay, event).snapshot(), read.seek(event).snapshot());
+        }
+    }
+
+    @Test
+    void largeBoardKeyframesArePacked() {
+        int size = 128;
+        var engine = new GameEngine(size, size, 5);
+        long[] time = {0};
+        var recorder = ReplayRecorder.record(engine, () -> time[0]);
+        engine.initialise();
+        var random = new SplittableRandom(5);
+        for(int move = 0; move < 2000 && !engine.isGameOver(); move++) {
+            time[0] += 500;
+            engine.play(1 + random.nextInt(size - 2), 1 + random.nextInt(size - 2));
+        }
+        recorder.end(engine.getScore());
+        var replay = recorder.toReplay();
+
+        var indexed = IndexedReplay.build(replay);
+        var read = IndexedReplay.of(indexed.toBytes());
+        long perKeyframe = (indexed.toBytes().length - replay.size()) / indexed.getKeyframes();
+        //A bit per block for the mask, with a few thousand blocks filled, is far less than a byte per block
+        assertTrue(perKeyframe < size * size / 4, perKeyframe + " bytes per keyframe");
+        for(int event = 0; event <= read.getEvents(); event += 97) {
+            var expected = playTo(replay, event);
+            var sought = read.seek(event);
+            for(int block = 0; block < size * size; block++) {
+                assertEquals(expected.getGrid().get(block % size, block / size),
+                        sought.getGrid().get(block % size, block / size), "event " + event + " block " + block);
+            }
+            assertEquals(expected.getScore(), sought.getScore());
+            assertEquals(expected.getCurrentPiece().getPiece(), sought.getCurrentPiece().getPiece());
+            assertEquals(expected.getFollowingPiece().getPiece(), sought.getFollowingPiece().getPiece());
+        }
+    }
+
+    /**
+     * Play a replay from the start up to an event
+     * @param replay the replay
+     * @param events number of events to play
+     * @return the engine after them
+     */
+    private static GameEngine playTo(Replay replay, int events) {
+        var engine = new GameEngine(new BitGrid(replay.getCols(), replay.getRows()), Replayer.pieces(replay));
+        engine.initialise();
+        var cursor = replay.cursor();
+        for(int event = 0; event < events && cursor.next(); event++) {
+            Replayer.apply(engine, cursor);
+        }
+        return engine;
+    }
+}
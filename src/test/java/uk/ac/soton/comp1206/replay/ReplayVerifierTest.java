@@ -0,0 +1,189 @@
+package uk.ac.soton.comp1206.replay;
+
+import org.junit.jupiter.api.Test;
+import uk.ac.soton.comp1206.game.BitGrid;
+import uk.ac.soton.comp1206.game.GameEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Checks that honest games are accepted with the score they reach, and games tampered with in different ways are not
+ */
+class ReplayVerifierTest {
+
+    private static final int GAMES = 200;
+
+    /**
+     * Record the games every test verifies
+     * @return the replays, the replay of seed i at index i
+     */
+    static List<Replay> games() {
+        var player = RecordedGames.player();
+        var random = new SplittableRandom(1);
+        var replays = new ArrayList<Replay>();
+        for(int seed = 0; seed < GAMES; seed++) {
+            replays.add(RecordedGames.play(seed, player, random).replay());
+        }
+        return replays;
+    }
+
+    @Test
+    void acceptsHonestGames() {
+        var verifier = new ReplayVerifier(5, 5);
+        var replays = games();
+        for(int seed = 0; seed < GAMES; seed++) {
+            var replay = replays.get(seed);
+            int score = Replayer.replay(replay).getScore();
+            assertEquals(ReplayVerifier.Verdict.VALID, verifier.verify(replay.toBytes(), seed, score), "game " + seed);
+            assertEquals(score, verifier.getScore());
+        }
+    }
+
+    @Test
+    void rejectsTamperedGames() {
+        var verifier = new ReplayVerifier(5, 5);
+        var random = new SplittableRandom(2);
+        var replays = games();
+        for(int seed = 0; seed < GAMES; seed++) {
+            var replay = replays.get(seed);
+            int score = replay.getFinalScore();
+            assertEquals(ReplayVerifier.Verdict.WRONG_SCORE, verifier.verify(replay, seed, score + 10));
+            assertNotEquals(ReplayVerifier.Verdict.VALID, verifier.verify(replay, seed + 1, score));
+            var overlap = tamper(replay, Tampering.OVERLAP, random);
+            assertEquals(ReplayVerifier.Verdict.ILLEGAL_MOVE, verifier.verify(overlap, seed, score), "game " + seed);
+            var delayed = tamper(replay, Tampering.DELAY, random);
+            assertEquals(ReplayVerifier.Verdict.TOO_SLOW, verifier.verify(delayed, seed, score), "game " + seed);
+            var raised = tamper(replay, Tampering.SCORE, random);
+            assertEquals(ReplayVerifier.Verdict.WRONG_SCORE, verifier.verify(raised, seed, raised.getFinalScore()));
+        }
+    }
+
+    @Test
+    void masksAndEngineGiveTheSameVerdicts() {
+        var masks = new ReplayVerifier(5, 5, true);
+        var engine = new ReplayVerifier(5, 5, false);
+        var random = new SplittableRandom(3);
+        var replays = games();
+        for(int seed = 0; seed < GAMES; seed++) {
+            var replay = replays.get(seed);
+            int score = replay.getFinalScore();
+            String game = "game " + seed;
+            assertSameVerdict(masks, engine, replay, seed, score, game);
+            assertSameVerdict(masks, engine, replay, seed, score + 10, game + " claiming more");
+            for(var kind : Tampering.values()) {
+                var tampered = tamper(replay, kind, random);
+                assertSameVerdict(masks, engine, tampered, seed, tampered.getFinalScore(), game + " " + kind);
+                assertSameVerdict(masks, engine, tampered, seed, score, game + " " + kind + " claiming the score");
+            }
+        }
+    }
+
+    /**
+     * Check that two verifiers give a replay the same verdict, score and failed event
+     * @param masks verifier playing on a board mask
+     * @param engine verifier playing on a GameEngine
+     * @param replay the replay
+     * @param seed the seed it was given
+     * @param claimed the claimed score
+     * @param name the replay, for failures
+     */
+    private static void assertSameVerdict(ReplayVerifier masks, ReplayVerifier engine, Replay replay, long seed,
+                                          int claimed, String name) {
+        assertEquals(engine.verify(replay, seed, claimed), masks.verify(replay, seed, claimed), name);
+        assertEquals(engine.getScore(), masks.getScore(), name);
+        assertEquals(engine.getFailedEvent(), masks.getFailedEvent(), name);
+    }
+
+    /**
+     * The ways a replay is tampered with
+     */
+    enum Tampering {
+        /**
+         * Centre the first placement from a random event on that can overlap a block, on a filled block
+         */
+        OVERLAP,
+        /**
+         * Hold the timer for 20 s before a random event
+         */
+        DELAY,
+        /**
+         * Record a higher final score
+         */
+        SCORE,
+        /**
+         * Move the first placement from a random event on by one column, which may still be a legal game
+         */
+        MOVE,
+        /**
+         * Stop the replay before a random event, without its END
+         */
+        TRUNCATE
+    }
+
+    /**
+     * Copy a replay, tampering with it
+     * @param replay the replay
+     * @param kind how to tamper with it
+     * @param random chooses the event
+     * @return the tampered replay
+     */
+    static Replay tamper(Replay replay, Tampering kind, SplittableRandom random) {
+        int count = 0;
+        var cursor = replay.cursor();
+        while(cursor.next()) {
+            count++;
+        }
+        int target = random.nextInt(Math.max(count - 1, 1));
+        long[] time = {0};
+        long delay = 0;
+        boolean moved = false;
+        //Follows the game, to find a filled block to place on
+        var engine = new GameEngine(new BitGrid(replay.getCols(), replay.getRows()), Replayer.pieces(replay));
+        engine.initialise();
+        var recorder = new ReplayRecorder(replay.getCols(), replay.getRows(), replay.getSeed(), () -> time[0]);
+        cursor = replay.cursor();
+        while(cursor.next()) {
+            if(kind == Tampering.TRUNCATE && cursor.index == target) {
+                break;
+            }
+            if(kind == Tampering.DELAY && cursor.index == target) {
+                delay = 20_000;
+            }
+            time[0] = cursor.time + delay;
+            int x = cursor.x;
+            int y = cursor.y;
+            if(kind == Tampering.OVERLAP && cursor.type == Replay.PLACE && cursor.index >= target && !moved) {
+                var grid = engine.getGrid();
+                for(int block = 0; block < grid.getCols() * grid.getRows() && !moved; block++) {
+                    if(grid.isOccupied(block % grid.getCols(), block / grid.getCols())) {
+                        x = block % grid.getCols();
+                        y = block / grid.getCols();
+                        moved = true;
+                    }
+                }
+            }
+            if(kind == Tampering.MOVE && cursor.type == Replay.PLACE && cursor.index >= target && !moved) {
+                x ^= 1;
+                moved = true;
+            }
+            if(!moved) {
+                Replayer.apply(engine, cursor);
+            }
+            switch (cursor.type) {
+                case Replay.PLACE -> recorder.placed(cursor.piece, cursor.rotation, x, y);
+                case Replay.ROTATE -> recorder.rotated(cursor.rotations);
+                case Replay.SWAP -> recorder.swapped();
+                case Replay.TIMEOUT -> recorder.timedOut();
+                case Replay.END -> recorder.end(kind == Tampering.SCORE ? cursor.score + 40 : cursor.score);
+                default -> {
+                }
+            }
+        }
+        return recorder.toReplay();
+    }
+}
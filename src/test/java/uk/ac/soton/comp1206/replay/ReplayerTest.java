@@ -0,0 +1,35 @@
+package uk.ac.soton.comp1206.replay;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that replaying a recorded game reproduces it exactly
+ */
+class ReplayerTest {
+
+    @Test
+    void replayEndsInTheSameState() {
+        var player = RecordedGames.player();
+        var random = new SplittableRandom(0);
+        for(int seed = 0; seed < 100; seed++) {
+            var game = RecordedGames.play(seed, player, random);
+            var replayed = Replayer.replay(game.replay());
+            assertEquals(game.engine().snapshot(), replayed.snapshot(), "game " + seed);
+            assertEquals(game.engine().getScore(), game.replay().getFinalScore());
+        }
+    }
+
+    @Test
+    void replayReadsBackFromItsBytes() {
+        var game = RecordedGames.play(7, RecordedGames.player(), new SplittableRandom(7));
+        var bytes = game.replay().toBytes();
+        var read = Replay.of(bytes);
+        assertArrayEquals(bytes, read.toBytes());
+        assertEquals(game.engine().snapshot(), Replayer.replay(read).snapshot());
+    }
+}